@@ -1,11 +1,14 @@
 package com.example.demo;
 
+import com.example.demo.aot.NativeRuntimeHints;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @SpringBootApplication
+@ImportRuntimeHints(NativeRuntimeHints.class)
 public class DemoprojectApplication {
 
 	private static final Logger log = LoggerFactory.getLogger(DemoprojectApplication.class);
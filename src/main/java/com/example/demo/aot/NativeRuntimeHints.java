@@ -0,0 +1,61 @@
+package com.example.demo.aot;
+
+import com.alibaba.dashscope.aigc.generation.GenerationParam;
+import com.alibaba.dashscope.aigc.generation.GenerationResult;
+import com.alibaba.dashscope.common.Message;
+import com.alibaba.dashscope.common.Role;
+import com.example.demo.bo.ExportPriority;
+import com.example.demo.bo.ExportTaskRequest;
+import com.example.demo.bo.TaskProgress;
+import com.example.demo.journal.TaskJournal;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+import java.util.List;
+
+/**
+ * GraalVM 原生镜像的运行时提示（Spring AOT 处理时写入 reflect-config.json）
+ * <p>
+ * 控制器入参 / 返回值的 Jackson 绑定提示由 Spring 自动生成，这里只补充自动推断不到的部分：
+ * - TaskProgress：由 ProgressFrameEncoder、TaskJournal、NetworkProgressBroker 直接用 ObjectMapper 序列化 / 反序列化；
+ * - ExportTaskRequest：紧凑构造器校验 + 可选字段，显式登记以免依赖推断；
+ * - DashScope SDK：请求与响应模型经 Gson 反射读写字段，需要字段与构造器的反射权限。
+ */
+public class NativeRuntimeHints implements RuntimeHintsRegistrar {
+
+    /**
+     * DashScope 响应中的嵌套模型（按类名登记，SDK 升级后缺失的类型在构建时被忽略）
+     */
+    private static final List<String> DASHSCOPE_MODEL_TYPES = List.of(
+            "com.alibaba.dashscope.aigc.generation.GenerationOutput",
+            "com.alibaba.dashscope.aigc.generation.GenerationOutput$Choice",
+            "com.alibaba.dashscope.aigc.generation.GenerationUsage",
+            "com.alibaba.dashscope.common.DashScopeResult"
+    );
+
+    private static final MemberCategory[] GSON_MEMBERS = {
+            MemberCategory.DECLARED_FIELDS,
+            MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+            MemberCategory.INVOKE_PUBLIC_METHODS
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                TaskProgress.class, TaskProgress[].class, ExportTaskRequest.class, ExportPriority.class,
+                TaskJournal.TaskRecord.class);
+
+        hints.reflection()
+                .registerType(GenerationParam.class, GSON_MEMBERS)
+                .registerType(GenerationParam.ResultFormat.class, GSON_MEMBERS)
+                .registerType(GenerationResult.class, GSON_MEMBERS)
+                .registerType(Message.class, GSON_MEMBERS)
+                .registerType(Role.class, GSON_MEMBERS);
+        for (String type : DASHSCOPE_MODEL_TYPES) {
+            hints.reflection().registerType(TypeReference.of(type), GSON_MEMBERS);
+        }
+    }
+}
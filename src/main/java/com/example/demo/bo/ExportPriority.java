@@ -0,0 +1,23 @@
+package com.example.demo.bo;
+
+/**
+ * 导出任务优先级
+ * <p>
+ * 各优先级按权重分配执行槽位（加权公平，而不是严格优先），低优先级任务不会被饿死
+ */
+public enum ExportPriority {
+
+    HIGH(4),
+    NORMAL(2),
+    LOW(1);
+
+    private final int weight;
+
+    ExportPriority(int weight) {
+        this.weight = weight;
+    }
+
+    public int weight() {
+        return weight;
+    }
+}
@@ -22,8 +22,17 @@ public record ExportTaskRequest(
         /**
          * 总记录数（用于模拟进度）
          */
-        int totalRecords
+        int totalRecords,
+
+        /**
+         * 优先级（可选，默认 NORMAL）
+         */
+        ExportPriority priority
 ) {
+    public ExportTaskRequest(String userId, String fileType, String dataScope, int totalRecords) {
+        this(userId, fileType, dataScope, totalRecords, ExportPriority.NORMAL);
+    }
+
     public ExportTaskRequest {
         if (userId == null || userId.isBlank()) {
             throw new IllegalArgumentException("用户ID不能为空");
@@ -34,5 +43,8 @@ public record ExportTaskRequest(
         if (totalRecords <= 0) {
             throw new IllegalArgumentException("总记录数必须大于0");
         }
+        if (priority == null) {
+            priority = ExportPriority.NORMAL;
+        }
     }
 }
\ No newline at end of file
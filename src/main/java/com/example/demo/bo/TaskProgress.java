@@ -1,5 +1,6 @@
 package com.example.demo.bo;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
 /**
@@ -14,6 +15,7 @@ import lombok.Data;
  *                    - "processing"：正在处理中
  *                    - "completed"：已成功完成
  *                    - "failed"：处理失败
+ *                    - "cancelled"：已被用户取消（按失败事件推送）
  * @param currentStep 当前执行到的步骤编号（从 1 开始）；
  *                    若状态为 completed/failed，则为 -1。
  * @param totalSteps  任务总步数；若状态为 completed/failed，则为 -1。
@@ -24,7 +26,7 @@ import lombok.Data;
 public record TaskProgress(
         String taskId,
         String userId,      // ← 新增
-        String status,      // processing / completed / failed
+        String status,      // processing / completed / failed / cancelled
         int currentStep,
         int totalSteps,
         String message,
@@ -42,4 +44,16 @@ public record TaskProgress(
     public static TaskProgress failed(String taskId, String userId, String errorMsg) {
         return new TaskProgress(taskId, userId, "failed", -1, -1, errorMsg, null);
     }
+
+    public static TaskProgress cancelled(String taskId, String userId) {
+        return new TaskProgress(taskId, userId, "cancelled", -1, -1, "任务已取消", null);
+    }
+
+    /**
+     * 是否为终态（completed / failed / cancelled），终态事件不可丢弃或合并
+     */
+    @JsonIgnore
+    public boolean isTerminal() {
+        return !"processing".equals(status);
+    }
 }
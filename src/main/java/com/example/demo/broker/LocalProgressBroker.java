@@ -0,0 +1,38 @@
+package com.example.demo.broker;
+
+import com.example.demo.bo.TaskProgress;
+import com.example.demo.sink.OverflowPolicy;
+import com.example.demo.sink.ProgressEvent;
+import com.example.demo.sink.UserSinkRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+/**
+ * 单机进度路由：直接写入本地用户 Sink 注册表
+ */
+public class LocalProgressBroker implements ProgressBroker {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalProgressBroker.class);
+
+    private final UserSinkRegistry userSinkRegistry;
+
+    public LocalProgressBroker(UserSinkRegistry userSinkRegistry) {
+        this.userSinkRegistry = userSinkRegistry;
+    }
+
+    @Override
+    public void publish(TaskProgress progress) {
+        Sinks.EmitResult result = userSinkRegistry.emit(progress.userId(), progress);
+        if (result.isFailure()) {
+            log.warn("进度推送失败 | userId: {}, taskId: {}, status: {}, reason: {}",
+                    progress.userId(), progress.taskId(), progress.status(), result);
+        }
+    }
+
+    @Override
+    public Flux<ProgressEvent> subscribe(String userId, long lastEventId, OverflowPolicy overflowPolicy) {
+        return userSinkRegistry.stream(userId, lastEventId, overflowPolicy);
+    }
+}
@@ -0,0 +1,395 @@
+package com.example.demo.broker;
+
+import com.example.demo.bo.TaskProgress;
+import com.example.demo.sink.OverflowPolicy;
+import com.example.demo.sink.ProgressEvent;
+import com.example.demo.sink.UserSinkRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多节点进度路由：本地推送 + 按批转发到其他节点
+ * <p>
+ * 设计说明：
+ * - 发布时先推送给本节点订阅者，再放入每个对端各自的发送队列；每个对端有独立的发送线程，
+ *   每 flush-interval 或攒满 batch-size 条即发送一批，某个对端不可达（连接超时、重试）不会拖慢其他对端；
+ * - 事件跨网络的次数只与节点数有关，与订阅者数量无关；
+ * - 接收端只把事件交给本地已存在的用户 Sink（即本节点有该用户的连接或回放环），由本地再扇出到各订阅者；
+ * - 收到的事件不再转发，避免环路；
+ * - 发送失败的批次不丢弃，断开后按指数退避重连并重发整批（至少一次，重复的进度对客户端无害）；
+ * - 发送队列只限制中间进度的数量：超过 queue-capacity 时丢弃新的中间进度（可由后续事件覆盖），
+ *   终态事件始终入队，保持与同一任务中间进度的先后顺序；
+ * - 连接建立后先做共享密钥的挑战-应答认证（服务端发随机数，客户端回 HMAC-SHA256），未通过认证的连接直接关闭；
+ * - 帧长度超过 max-frame-bytes 视为非法输入，关闭连接，不按对端声明的长度分配内存；
+ * - 事件序号由各节点的注册表分配，每帧携带发送端当前序号，接收端先把本地序号推进到不小于该值
+ *   （Lamport 时钟），空闲时每秒发送一次空批次同步序号。因此某节点分配的序号总是大于它已获知的其他节点序号，
+ *   客户端带着 A 节点的 Last-Event-ID 切换到 B 节点后，B 之后分配的序号仍更大，不会被客户端当作旧事件过滤；
+ *   但 B 只有该用户已有连接时才保留回放环，且同步有最多一个空闲周期的延迟，切换节点时的补发是尽力而为，
+ *   需要完整断点续传时应在负载均衡层按 userId 粘性路由。
+ * <p>
+ * 线路格式：[int 长度][long 发送端序号][TaskProgress JSON 数组]（长度不含序号），使用普通 TCP 连接。
+ * 共享密钥只用于认证，不加密传输内容，应部署在内网并只监听内网网卡。
+ */
+public class NetworkProgressBroker implements ProgressBroker, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(NetworkProgressBroker.class);
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int NONCE_BYTES = 16;
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+    private static final int AUTH_OK = 1;
+    private static final int CONNECT_TIMEOUT_MILLIS = 3000;
+    private static final long MIN_RETRY_BACKOFF_MILLIS = 100;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 2000;
+    private static final byte[] EMPTY_BATCH = "[]".getBytes(StandardCharsets.US_ASCII);
+
+    private final String nodeId;
+    private final UserSinkRegistry userSinkRegistry;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final int queueCapacity;
+    private final SecretKeySpec secret;
+    private final int maxFrameBytes;
+    private final SecureRandom random = new SecureRandom();
+
+    private final List<Peer> peers = new CopyOnWriteArrayList<>();
+    private final ServerSocket serverSocket;
+
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong eventsSent = new AtomicLong();
+    private final AtomicLong eventsReceived = new AtomicLong();
+    private final AtomicLong eventsDropped = new AtomicLong();
+
+    private volatile boolean closed;
+
+    public NetworkProgressBroker(String nodeId,
+                                 UserSinkRegistry userSinkRegistry,
+                                 ObjectMapper objectMapper,
+                                 InetSocketAddress listenAddress,
+                                 int batchSize,
+                                 long flushIntervalMillis,
+                                 int queueCapacity,
+                                 byte[] secret,
+                                 int maxFrameBytes) throws IOException {
+        if (secret == null || secret.length == 0) {
+            throw new IllegalArgumentException("progress.broker.secret 不能为空");
+        }
+        this.nodeId = nodeId;
+        this.userSinkRegistry = userSinkRegistry;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.queueCapacity = queueCapacity;
+        this.secret = new SecretKeySpec(secret, HMAC_ALGORITHM);
+        this.maxFrameBytes = maxFrameBytes;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(listenAddress);
+
+        startThread("progress-broker-accept-" + nodeId, this::acceptLoop);
+        log.info("进度路由节点 {} 监听 {}", nodeId, serverSocket.getLocalSocketAddress());
+    }
+
+    /**
+     * 添加对端节点并启动其发送线程（连接在首次发送时建立）
+     */
+    public void addPeer(InetSocketAddress address) {
+        Peer peer = new Peer(address);
+        peer.sender = startThread("progress-broker-send-" + nodeId + "-" + address.getPort(), peer::sendLoop);
+        peers.add(peer);
+    }
+
+    /**
+     * 本节点实际监听的端口（监听端口配置为 0 时由系统分配）
+     */
+    public int localPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void publish(TaskProgress progress) {
+        userSinkRegistry.emit(progress.userId(), progress);
+        for (Peer peer : peers) {
+            peer.enqueue(progress);
+        }
+    }
+
+    @Override
+    public Flux<ProgressEvent> subscribe(String userId, long lastEventId, OverflowPolicy overflowPolicy) {
+        return userSinkRegistry.stream(userId, lastEventId, overflowPolicy);
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                startThread("progress-broker-recv-" + nodeId, () -> receiveLoop(socket));
+            } catch (IOException e) {
+                if (!closed) {
+                    log.error("节点 {} 接受连接失败", nodeId, e);
+                }
+            }
+        }
+    }
+
+    private void receiveLoop(Socket socket) {
+        try (socket; DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            if (!authenticate(socket, in)) {
+                log.warn("节点 {} 拒绝未通过认证的入站连接: {}", nodeId, socket.getRemoteSocketAddress());
+                return;
+            }
+            while (!closed) {
+                int length = in.readInt();
+                if (length < 0 || length > maxFrameBytes) {
+                    log.warn("节点 {} 收到非法帧长度 {}，关闭连接: {}", nodeId, length, socket.getRemoteSocketAddress());
+                    return;
+                }
+                long senderSequence = in.readLong();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                TaskProgress[] batch = objectMapper.readValue(payload, TaskProgress[].class);
+                // 先同步序号，本批事件在本节点分配的序号都大于发送端已分配的序号
+                userSinkRegistry.advanceSequence(senderSequence);
+                for (TaskProgress progress : batch) {
+                    // 只投递给本节点已有的用户 Sink，避免为无连接的用户创建 Sink
+                    userSinkRegistry.emitIfPresent(progress.userId(), progress);
+                }
+                eventsReceived.addAndGet(batch.length);
+            }
+        } catch (EOFException | SocketException e) {
+            log.debug("节点 {} 的入站连接已关闭: {}", nodeId, socket.getRemoteSocketAddress());
+        } catch (IOException e) {
+            log.warn("节点 {} 读取进度批次失败", nodeId, e);
+        }
+    }
+
+    /**
+     * 服务端认证：发送随机数，校验对端回复的 HMAC；握手阶段限时，防止空连接长期占用线程
+     */
+    private boolean authenticate(Socket socket, DataInputStream in) throws IOException {
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+        byte[] nonce = new byte[NONCE_BYTES];
+        random.nextBytes(nonce);
+        OutputStream out = socket.getOutputStream();
+        out.write(nonce);
+        out.flush();
+        byte[] expected = sign(nonce);
+        byte[] actual = new byte[expected.length];
+        in.readFully(actual);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            return false;
+        }
+        out.write(AUTH_OK);
+        out.flush();
+        socket.setSoTimeout(0);
+        return true;
+    }
+
+    /**
+     * 客户端认证：用共享密钥对服务端的随机数签名，并等待服务端确认
+     */
+    private void authenticateTo(Socket socket, DataOutputStream out) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+        byte[] nonce = new byte[NONCE_BYTES];
+        in.readFully(nonce);
+        out.write(sign(nonce));
+        out.flush();
+        if (in.read() != AUTH_OK) {
+            throw new IOException("对端拒绝认证，请检查 progress.broker.secret 是否一致");
+        }
+        socket.setSoTimeout(0);
+    }
+
+    private byte[] sign(byte[] nonce) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(secret);
+            return mac.doFinal(nonce);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("初始化 " + HMAC_ALGORITHM + " 失败", e);
+        }
+    }
+
+    private static Thread startThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * 已发送的批次数 / 事件数（按对端累计）、已接收的事件数、因发送队列已满丢弃的中间进度数
+     */
+    public BrokerStats stats() {
+        return new BrokerStats(nodeId, peers.size(), batchesSent.get(), eventsSent.get(), eventsReceived.get(),
+                eventsDropped.get());
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Peer peer : peers) {
+            peer.sender.interrupt();
+            peer.disconnect();
+        }
+    }
+
+    public record BrokerStats(String nodeId, int peers, long batchesSent, long eventsSent, long eventsReceived,
+                              long eventsDropped) {
+    }
+
+    /**
+     * 对端节点：独立的发送队列、发送线程与出站连接（连接仅由该对端的发送线程使用）
+     */
+    private final class Peer {
+        final InetSocketAddress address;
+        // 无界队列，只对中间进度计数限流；终态事件不受限，保证不丢
+        final BlockingQueue<TaskProgress> queue = new LinkedBlockingQueue<>();
+        final AtomicInteger pendingProgress = new AtomicInteger();
+        volatile Thread sender;
+        Socket socket;
+        DataOutputStream out;
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        void enqueue(TaskProgress progress) {
+            if (!progress.isTerminal() && pendingProgress.incrementAndGet() > queueCapacity) {
+                pendingProgress.decrementAndGet();
+                eventsDropped.incrementAndGet();
+                log.debug("节点 {} 发往 {} 的队列已满，丢弃中间进度 | userId: {}, taskId: {}",
+                        nodeId, address, progress.userId(), progress.taskId());
+                return;
+            }
+            queue.offer(progress);
+        }
+
+        void sendLoop() {
+            List<TaskProgress> batch = new ArrayList<>(batchSize);
+            while (!closed) {
+                try {
+                    TaskProgress first = queue.poll(1, TimeUnit.SECONDS);
+                    if (first == null) {
+                        heartbeat();
+                        continue;
+                    }
+                    batch.add(first);
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                    while (batch.size() < batchSize) {
+                        long remaining = deadline - System.nanoTime();
+                        TaskProgress next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    sendWithRetry(objectMapper.writeValueAsBytes(batch));
+                    int progressCount = 0;
+                    for (TaskProgress progress : batch) {
+                        if (!progress.isTerminal()) {
+                            progressCount++;
+                        }
+                    }
+                    pendingProgress.addAndGet(-progressCount);
+                    batchesSent.incrementAndGet();
+                    eventsSent.addAndGet(batch.size());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    log.error("节点 {} 序列化发往 {} 的进度批次失败", nodeId, address, e);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        /**
+         * 发送一批，失败时断开并按指数退避重连重发，直到成功或节点关闭
+         */
+        private void sendWithRetry(byte[] payload) throws InterruptedException {
+            long backoff = MIN_RETRY_BACKOFF_MILLIS;
+            while (!closed) {
+                try {
+                    send(payload);
+                    return;
+                } catch (IOException e) {
+                    log.warn("节点 {} 向 {} 转发进度失败，{}ms 后重连重发: {}", nodeId, address, backoff, e.getMessage());
+                    disconnect();
+                    Thread.sleep(backoff);
+                    backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MILLIS);
+                }
+            }
+        }
+
+        /**
+         * 空闲时发送空批次，把本节点序号同步给对端；失败不重试，下次空闲或有事件时再连
+         */
+        private void heartbeat() {
+            try {
+                send(EMPTY_BATCH);
+            } catch (IOException e) {
+                log.debug("节点 {} 向 {} 同步序号失败: {}", nodeId, address, e.getMessage());
+                disconnect();
+            }
+        }
+
+        private void send(byte[] payload) throws IOException {
+            if (socket == null) {
+                socket = new Socket();
+                socket.setTcpNoDelay(true);
+                socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                authenticateTo(socket, out);
+            }
+            out.writeInt(payload.length);
+            out.writeLong(userSinkRegistry.currentSequence());
+            out.write(payload);
+            out.flush();
+        }
+
+        void disconnect() {
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+            } catch (IOException ignored) {
+                // 关闭失败无需处理
+            }
+            socket = null;
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.demo.broker;
+
+import com.example.demo.bo.TaskProgress;
+import com.example.demo.sink.OverflowPolicy;
+import com.example.demo.sink.ProgressEvent;
+import reactor.core.publisher.Flux;
+
+/**
+ * 任务进度路由抽象
+ * <p>
+ * 导出线程只负责 publish，SSE 连接只负责 subscribe，二者可以位于不同节点：
+ * - {@link LocalProgressBroker}：单机实现，进度只在本 JVM 内分发；
+ * - {@link NetworkProgressBroker}：多节点实现，进度按批在节点间转发，每个节点再向本地订阅者扇出。
+ */
+public interface ProgressBroker {
+
+    /**
+     * 发布一条任务进度（不阻塞调用线程）
+     */
+    void publish(TaskProgress progress);
+
+    /**
+     * 订阅指定用户的进度流
+     *
+     * @param lastEventId 客户端最后收到的事件序号，小于 0 表示新连接
+     */
+    default Flux<ProgressEvent> subscribe(String userId, long lastEventId) {
+        return subscribe(userId, lastEventId, null);
+    }
+
+    /**
+     * 订阅指定用户的进度流，并指定该连接发送队列满时的处理策略
+     *
+     * @param overflowPolicy 为 null 时使用默认策略
+     */
+    Flux<ProgressEvent> subscribe(String userId, long lastEventId, OverflowPolicy overflowPolicy);
+}
@@ -0,0 +1,62 @@
+package com.example.demo.broker;
+
+import com.example.demo.sink.UserSinkRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 进度路由配置：progress.broker.mode = local（默认）/ network
+ * <p>
+ * network 模式默认只监听回环地址，多节点部署时需把 listen-host 显式配置为内网网卡地址，
+ * 并为所有节点配置相同的 progress.broker.secret。
+ */
+@Configuration
+public class ProgressBrokerConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "progress.broker.mode", havingValue = "local", matchIfMissing = true)
+    public ProgressBroker localProgressBroker(UserSinkRegistry userSinkRegistry) {
+        return new LocalProgressBroker(userSinkRegistry);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "progress.broker.mode", havingValue = "network")
+    public NetworkProgressBroker networkProgressBroker(UserSinkRegistry userSinkRegistry,
+                                                       ObjectMapper objectMapper,
+                                                       @Value("${progress.broker.node-id:}") String nodeId,
+                                                       @Value("${progress.broker.listen-host:127.0.0.1}") String listenHost,
+                                                       @Value("${progress.broker.listen-port:10011}") int listenPort,
+                                                       @Value("${progress.broker.peers:}") List<String> peers,
+                                                       @Value("${progress.broker.batch-size:256}") int batchSize,
+                                                       @Value("${progress.broker.flush-interval-ms:10}") long flushIntervalMillis,
+                                                       @Value("${progress.broker.queue-capacity:100000}") int queueCapacity,
+                                                       @Value("${progress.broker.secret:}") String secret,
+                                                       @Value("${progress.broker.max-frame-bytes:4194304}") int maxFrameBytes)
+            throws IOException {
+        String id = nodeId.isBlank() ? UUID.randomUUID().toString().substring(0, 8) : nodeId;
+        NetworkProgressBroker broker = new NetworkProgressBroker(id, userSinkRegistry, objectMapper,
+                new InetSocketAddress(listenHost, listenPort), batchSize, flushIntervalMillis, queueCapacity,
+                secret.getBytes(StandardCharsets.UTF_8), maxFrameBytes);
+        for (String peer : peers) {
+            if (peer.isBlank()) {
+                continue;
+            }
+            int colon = peer.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("progress.broker.peers 格式应为 host:port，实际: " + peer);
+            }
+            broker.addPeer(new InetSocketAddress(peer.substring(0, colon).trim(),
+                    Integer.parseInt(peer.substring(colon + 1).trim())));
+        }
+        return broker;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.demo.controller;
+
+import com.example.demo.export.ExportStorage;
+import com.example.demo.export.RowEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 导出文件下载
+ * <p>
+ * 返回 {@link FileSystemResource}，由 WebFlux 的 ResourceHttpMessageWriter 负责：
+ * - 整个文件或单个 Range 区间通过零拷贝（sendfile / FileChannel.transferTo）发送；
+ * - 自动处理 Range 请求（206 Partial Content / 多区间 multipart/byteranges），支持断点续传。
+ */
+@RestController
+public class DownloadController {
+
+    private static final Logger log = LoggerFactory.getLogger(DownloadController.class);
+
+    private final ExportStorage storage;
+
+    public DownloadController(ExportStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * GET /download/{fileName}，如 /download/export-1a2b3c4d.csv
+     */
+    @GetMapping("/download/{fileName:.+}")
+    public Mono<ResponseEntity<Resource>> download(@PathVariable String fileName) {
+        Path path = storage.resolve(fileName);
+        if (path == null || !Files.isRegularFile(path)) {
+            log.warn("下载文件不存在: {}", fileName);
+            return Mono.just(ResponseEntity.notFound().build());
+        }
+        String extension = fileName.substring(fileName.lastIndexOf('.') + 1);
+        MediaType contentType;
+        try {
+            contentType = MediaType.parseMediaType(RowEncoder.forFileType(extension).contentType());
+        } catch (IllegalArgumentException e) {
+            contentType = MediaType.APPLICATION_OCTET_STREAM;
+        }
+        return Mono.just(ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(fileName).build().toString())
+                .body(new FileSystemResource(path)));
+    }
+}
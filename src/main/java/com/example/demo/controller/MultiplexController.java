@@ -0,0 +1,203 @@
+package com.example.demo.controller;
+
+import com.example.demo.metrics.SseMetrics;
+import com.example.demo.mux.MultiplexFrameEncoder;
+import com.example.demo.mux.MultiplexRegistry;
+import com.example.demo.mux.MultiplexSession;
+import com.example.demo.qwen.UpstreamAdmission;
+import com.example.demo.service.ExportTaskService;
+import com.example.demo.service.QwenService;
+import com.example.demo.sink.ProgressFrameEncoder;
+import com.example.demo.sink.SharedClock;
+import com.example.demo.sink.SseFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * 多路复用 SSE：一个连接承载任务进度、具名 Qwen 回答与时钟，避免浏览器每源 6 个 HTTP/1.1 连接的上限
+ * <p>
+ * 用法：
+ * 1. GET /api/mux/stream?userId=xxx[&topics=progress,clock] 建立连接，首个事件 session 携带 sessionId；
+ * 2. POST /api/mux/{sessionId}/topics?userId=xxx 订阅主题：
+ * {"type":"progress","lastEventId":12} / {"type":"clock"} / {"type":"qwen","name":"q1","question":"...","conversationId":"..."}；
+ * 3. DELETE /api/mux/{sessionId}/topics/{topic}?userId=xxx 退订。
+ * 每个事件的 data 为 {"topic":...,"data":...}，主题结束时收到 end 事件。连接断开后会话失效，重连后需重新订阅
+ * （进度主题可带 lastEventId 续传）。
+ */
+@RestController
+@RequestMapping("/api/mux")
+public class MultiplexController {
+
+    private static final Logger log = LoggerFactory.getLogger(MultiplexController.class);
+
+    private static final String PROGRESS = "progress";
+    private static final String CLOCK = "clock";
+    private static final String QWEN = "qwen";
+
+    private final MultiplexRegistry registry;
+
+    private final MultiplexFrameEncoder encoder;
+
+    private final ExportTaskService taskService;
+
+    private final QwenService qwenService;
+
+    private final SharedClock sharedClock;
+
+    private final SseMetrics sseMetrics;
+
+    public MultiplexController(MultiplexRegistry registry, MultiplexFrameEncoder encoder,
+                               ExportTaskService taskService, QwenService qwenService,
+                               SharedClock sharedClock, SseMetrics sseMetrics) {
+        this.registry = registry;
+        this.encoder = encoder;
+        this.taskService = taskService;
+        this.qwenService = qwenService;
+        this.sharedClock = sharedClock;
+        this.sseMetrics = sseMetrics;
+    }
+
+    /**
+     * 建立多路复用连接
+     *
+     * @param topics 连接建立时直接订阅的主题（仅支持 progress / clock）
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<DataBuffer> stream(@RequestParam String userId,
+                                   @RequestParam(required = false) List<String> topics,
+                                   ServerHttpResponse response) {
+        if (userId == null || userId.isBlank()) {
+            return Flux.error(new IllegalArgumentException("userId 不能为空"));
+        }
+        List<String> initialTopics = topics == null ? List.of() : topics;
+        for (String topic : initialTopics) {
+            if (!PROGRESS.equals(topic) && !CLOCK.equals(topic)) {
+                return Flux.error(new IllegalArgumentException("连接时只能订阅 progress / clock: " + topic));
+            }
+        }
+
+        DataBufferFactory bufferFactory = response.bufferFactory();
+        Flux<SseFrame> frames = Flux.defer(() -> {
+            MultiplexSession session = registry.open(userId);
+            log.info("用户 {} 建立多路复用连接 {}, 初始主题: {}", userId, session.id(), initialTopics);
+            for (String topic : initialTopics) {
+                session.subscribe(topic, source(session, new TopicRequest(topic, null, null, null, null)));
+            }
+            return session.frames();
+        }).startWith(ProgressFrameEncoder.RETRY_FRAME);
+        // 所有主题都空闲时插入注释心跳
+        return sseMetrics.track("/api/mux/stream", sharedClock.withHeartbeat(frames, SharedClock.HEARTBEAT_FRAME)
+                .map(frame -> frame.toDataBuffer(bufferFactory)));
+    }
+
+    /**
+     * 订阅主题
+     * <p>
+     * 200：已订阅；400：参数错误；404：会话不存在或不属于该用户；409：主题已订阅或超出数量上限；
+     * 429：Qwen 请求被限流（带 Retry-After）
+     */
+    @PostMapping("/{sessionId}/topics")
+    public Mono<ResponseEntity<TopicResponse>> subscribe(@PathVariable String sessionId,
+                                                         @RequestParam String userId,
+                                                         @RequestBody TopicRequest request) {
+        MultiplexSession session = registry.get(sessionId, userId);
+        if (session == null) {
+            return Mono.just(ResponseEntity.notFound().build());
+        }
+        String topic;
+        Flux<SseFrame> source;
+        try {
+            topic = topicName(request);
+            source = source(session, request);
+        } catch (UpstreamAdmission.AdmissionRejectedException e) {
+            log.warn("多路连接 {} 的 Qwen 主题被拒绝, 原因: {}", sessionId, e.getMessage());
+            return Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.retryAfterSeconds()))
+                    .body(new TopicResponse(null, e.getMessage())));
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().body(new TopicResponse(null, e.getMessage())));
+        }
+        return Mono.just(switch (session.subscribe(topic, source)) {
+            case SUBSCRIBED -> ResponseEntity.ok(new TopicResponse(topic, "已订阅"));
+            case DUPLICATE -> ResponseEntity.status(HttpStatus.CONFLICT).body(new TopicResponse(topic, "主题已订阅"));
+            case LIMIT_EXCEEDED -> ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new TopicResponse(topic, "超出单连接主题数上限"));
+            case CLOSED -> ResponseEntity.notFound().build();
+        });
+    }
+
+    /**
+     * 退订主题：204 已退订；404 会话或主题不存在
+     */
+    @DeleteMapping("/{sessionId}/topics/{topic}")
+    public Mono<ResponseEntity<Void>> unsubscribe(@PathVariable String sessionId,
+                                                  @PathVariable String topic,
+                                                  @RequestParam String userId) {
+        MultiplexSession session = registry.get(sessionId, userId);
+        boolean removed = session != null && session.unsubscribe(topic);
+        return Mono.just(removed ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build());
+    }
+
+    private static String topicName(TopicRequest request) {
+        if (request.type() == null) {
+            throw new IllegalArgumentException("type 不能为空");
+        }
+        return switch (request.type()) {
+            case PROGRESS, CLOCK -> request.type();
+            case QWEN -> {
+                if (request.name() == null || !MultiplexFrameEncoder.TOPIC_NAME.matcher(request.name()).matches()) {
+                    throw new IllegalArgumentException("qwen 主题需要 name（字母、数字、_.:-，最长 64）");
+                }
+                yield QWEN + ":" + request.name();
+            }
+            default -> throw new IllegalArgumentException("不支持的主题类型: " + request.type());
+        };
+    }
+
+    /**
+     * 构造主题的帧流；Qwen 主题在这里完成限流检查（被拒绝时抛出 AdmissionRejectedException）
+     */
+    private Flux<SseFrame> source(MultiplexSession session, TopicRequest request) {
+        String topic = topicName(request);
+        return switch (request.type()) {
+            case PROGRESS -> taskService.getProgressStreamForUser(session.userId(),
+                            request.lastEventId() != null ? request.lastEventId() : -1, null)
+                    .map(event -> encoder.progress(topic, event));
+            case CLOCK -> sharedClock.ticks().map(tick -> encoder.clock(topic, tick));
+            default -> {
+                if (request.question() == null || request.question().isBlank()) {
+                    throw new IllegalArgumentException("问题不能为空");
+                }
+                yield qwenService.askQuestionStreamSSE(request.question(), request.conversationId(), session.userId())
+                        // 跳过注释事件（无数据）
+                        .filter(event -> event.data() != null)
+                        .map(event -> encoder.qwen(topic, event));
+            }
+        };
+    }
+
+    /**
+     * 订阅请求
+     *
+     * @param type           progress / clock / qwen
+     * @param name           qwen 主题名（同一连接内唯一）
+     * @param question       qwen 问题
+     * @param conversationId qwen 多轮会话ID，可选
+     * @param lastEventId    progress 主题续传的起点，可选
+     */
+    public record TopicRequest(String type, String name, String question, String conversationId, Long lastEventId) {}
+
+    public record TopicResponse(String topic, String message) {}
+}
@@ -1,12 +1,27 @@
 package com.example.demo.controller;
 
+import com.example.demo.metrics.SseMetrics;
+import com.example.demo.qwen.ChunkBatcher;
+import com.example.demo.qwen.ConversationStore;
+import com.example.demo.qwen.QwenResponseCache;
+import com.example.demo.qwen.UpstreamAdmission;
 import com.example.demo.service.QwenService;
+import com.example.demo.sink.SharedClock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/api/qwen")
@@ -14,42 +29,151 @@ public class QwenController {
 
     private static final Logger log = LoggerFactory.getLogger(QwenController.class);
 
+    private static final ServerSentEvent<String> HEARTBEAT = ServerSentEvent.<String>builder().comment("ping").build();
+
     private final QwenService qwenService;
 
-    public QwenController(QwenService qwenService) {
+    private final SharedClock sharedClock;
+
+    private final SseMetrics sseMetrics;
+
+    public QwenController(QwenService qwenService, SharedClock sharedClock, SseMetrics sseMetrics) {
         this.qwenService = qwenService;
+        this.sharedClock = sharedClock;
+        this.sseMetrics = sseMetrics;
     }
 
+    /**
+     * 同步问答：阻塞调用在专用调度器上执行，不占用事件循环线程
+     * <p>
+     * 用户限流、上游排队已满或调度器已满返回 429（带 Retry-After），超时返回 504
+     */
     @PostMapping("/ask")
-    public AnswerResponse ask(@RequestBody QuestionRequest request) throws Exception {
-        String answer = qwenService.askQuestionSync(request.question());
-        return new AnswerResponse(answer);
+    public Mono<ResponseEntity<AnswerResponse>> ask(@RequestBody QuestionRequest request,
+                                                    @RequestParam(required = false) String userId,
+                                                    ServerHttpRequest httpRequest) {
+        String rateKey = rateKey(userId, httpRequest);
+        return qwenService.askQuestion(request.question(), request.sessionId(), rateKey)
+                .map(answer -> ResponseEntity.ok(new AnswerResponse(answer)))
+                .onErrorResume(RejectedExecutionException.class, e -> {
+                    log.warn("Qwen 同步调用被拒绝，用户: {}, 原因: {}", rateKey, e.getMessage());
+                    return Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                            .header(HttpHeaders.RETRY_AFTER, retryAfter(e))
+                            .body(new AnswerResponse("服务繁忙，请稍后重试")));
+                })
+                .onErrorResume(TimeoutException.class, e -> {
+                    log.warn("Qwen 同步调用超时");
+                    return Mono.just(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                            .body(new AnswerResponse("模型响应超时")));
+                });
     }
 
     /**
      * GET 接口，用于流式获取 Qwen 的回答
      *
      * @param question 用户的问题
-     * @return Flux<ServerSentEvent<String>> SSE 流
+     * @return SSE 流；排队时先收到 "queued" 事件，被限流时返回 429
      */
     @GetMapping(value = "/ask/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<ServerSentEvent<String>> streamAnswer(@RequestParam String question) {
-        log.info("收到流式问答请求，问题: {}", question);
+    public ResponseEntity<Flux<ServerSentEvent<String>>> streamAnswer(@RequestParam String question,
+                                                                      @RequestParam(required = false) String sessionId,
+                                                                      @RequestParam(required = false) String userId,
+                                                                      ServerHttpRequest httpRequest) {
+        String rateKey = rateKey(userId, httpRequest);
+        log.info("收到流式问答请求，用户: {}, 问题: {}", rateKey, question);
 
         // 参数校验
         if (question == null || question.trim().isEmpty()) {
             log.warn("请求参数 'question' 为空");
             // 返回一个错误事件流
-            return Flux.just(ServerSentEvent.<String>builder()
-                    .event("error")
-                    .data("问题不能为空")
-                    .build());
+            return ResponseEntity.ok(Flux.just(errorEvent("问题不能为空")));
         }
 
         // 调用 Service 层获取流式响应
-        return qwenService.askQuestionStreamSSE(question);
+        try {
+            // 排队或模型思考较久时连接可能长时间无数据，空闲超过阈值时插入注释心跳
+            return ResponseEntity.ok(sseMetrics.track("/api/qwen/ask/stream", sharedClock.withHeartbeat(
+                    qwenService.askQuestionStreamSSE(question, sessionId, rateKey), HEARTBEAT)));
+        } catch (UpstreamAdmission.AdmissionRejectedException e) {
+            log.warn("Qwen 流式请求被拒绝，用户: {}, 原因: {}", rateKey, e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, retryAfter(e))
+                    .body(Flux.just(errorEvent(e.getMessage())));
+        }
+    }
+
+    /**
+     * 回答缓存的命中 / 未命中 / 淘汰统计
+     */
+    @GetMapping("/cache/stats")
+    public QwenResponseCache.CacheStats cacheStats() {
+        return qwenService.getCacheStats();
+    }
+
+    /**
+     * 流式片段合并统计：节省的帧数与引入的额外延迟
+     */
+    @GetMapping("/batch/stats")
+    public ChunkBatcher.BatchStats batchStats() {
+        return qwenService.getBatchStats();
+    }
+
+    /**
+     * 上游准入统计：在途数、排队数、限流与排队已满次数
+     */
+    @GetMapping("/admission/stats")
+    public UpstreamAdmission.AdmissionStats admissionStats() {
+        return qwenService.getAdmissionStats();
+    }
+
+    /**
+     * 会话存储统计：会话数、每会话内存占用、历史截断节省的 token
+     */
+    @GetMapping("/sessions/stats")
+    public ConversationStore.StoreStats sessionStats() {
+        return qwenService.getSessionStats();
+    }
+
+    /**
+     * 单个会话统计
+     */
+    @GetMapping("/sessions/{sessionId}")
+    public ResponseEntity<ConversationStore.SessionStats> sessionStats(@PathVariable String sessionId) {
+        ConversationStore.SessionStats stats = qwenService.getSessionStats(sessionId);
+        return stats == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(stats);
+    }
+
+    /**
+     * 限流桶的键：未提供 userId 的匿名调用方按客户端地址区分，不共用同一个桶
+     * <p>
+     * 部署在反向代理之后时需开启 server.forward-headers-strategy，客户端地址才取自 X-Forwarded-For / Forwarded
+     */
+    private static String rateKey(String userId, ServerHttpRequest request) {
+        if (userId != null && !userId.isBlank()) {
+            return userId;
+        }
+        InetSocketAddress remote = request.getRemoteAddress();
+        return remote == null ? QwenService.ANONYMOUS_USER : QwenService.ANONYMOUS_USER + "@" + remote.getHostString();
+    }
+
+    /**
+     * 429 响应的 Retry-After（秒）：准入拒绝时取建议的等待时间，调度器已满时为 1
+     */
+    private static String retryAfter(RejectedExecutionException e) {
+        return e instanceof UpstreamAdmission.AdmissionRejectedException rejected
+                ? String.valueOf(rejected.retryAfterSeconds()) : "1";
+    }
+
+    private static ServerSentEvent<String> errorEvent(String message) {
+        return ServerSentEvent.<String>builder()
+                .event("error")
+                .data(message)
+                .build();
     }
 
-    public record QuestionRequest(String question) {}
+    /**
+     * @param sessionId 可选，不为空时按多轮对话处理
+     */
+    public record QuestionRequest(String question, String sessionId) {}
     public record AnswerResponse(String answer) {}
 }
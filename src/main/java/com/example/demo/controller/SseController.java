@@ -1,27 +1,41 @@
 package com.example.demo.controller;
 
+import com.example.demo.metrics.SseMetrics;
+import com.example.demo.sink.SharedClock;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
 import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 
 import java.time.Duration;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
 
 @RestController
 @RequestMapping("/sseApi")
 public class SseController {
 
+    private final SharedClock sharedClock;
+
+    private final SseMetrics sseMetrics;
+
+    public SseController(SharedClock sharedClock, SseMetrics sseMetrics) {
+        this.sharedClock = sharedClock;
+        this.sseMetrics = sseMetrics;
+    }
+
     /**
      * 简单 SSE 接口：每秒推送当前服务器时间
+     * <p>
+     * 所有连接共用一个时钟，时间字符串与 SSE 帧每秒只生成一次，这里直接写出共享的字节
      */
     @GetMapping(value = "/time-stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<String> streamServerTime() {
-        return Flux.interval(Duration.ofSeconds(1))
-                .map(sequence -> LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")))
-                .map(time -> "data: 当前服务器时间: " + time + "\n\n");
+    public Flux<DataBuffer> streamServerTime(ServerHttpResponse response) {
+        DataBufferFactory bufferFactory = response.bufferFactory();
+        return sseMetrics.track("/sseApi/time-stream", sharedClock.ticks()
+                .map(tick -> tick.timeFrame().toDataBuffer(bufferFactory)));
     }
 
     /**
@@ -1,18 +1,34 @@
 package com.example.demo.controller;
 
 import com.example.demo.bo.ExportTaskRequest;
-import com.example.demo.bo.TaskProgress;
+import com.example.demo.export.ExportResultCache;
+import com.example.demo.journal.TaskJournal;
+import com.example.demo.metrics.SseMetrics;
 import com.example.demo.service.ExportTaskService;
+import com.example.demo.sink.OverflowPolicy;
+import com.example.demo.sink.ProgressEvent;
+import com.example.demo.sink.ProgressFrameEncoder;
+import com.example.demo.sink.SharedClock;
+import com.example.demo.sink.SseFrame;
+import com.example.demo.sink.UserSinkRegistry;
+import com.example.demo.thread.FairExportScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
 
 @RestController
 @RequestMapping("/api/tasks")
@@ -20,59 +36,187 @@ public class TaskController {
 
     private static final Logger log = LoggerFactory.getLogger(TaskController.class);
 
+    // 导出容量已满时建议客户端的重试间隔（秒）
+    private static final int RETRY_AFTER_SECONDS = 5;
+
     @Autowired
     private ExportTaskService taskService;
 
+    // 共享时钟：空闲连接的心跳
+    @Autowired
+    private SharedClock sharedClock;
+
+    // 活跃连接数指标
+    @Autowired
+    private SseMetrics sseMetrics;
+
     /**
      * 提交文件导出任务
      * POST /api/tasks/export
+     * <p>
+     * 200：已开始执行，或命中近期完成的相同导出（带 downloadUrl）；202：已受理、排队等待执行，
+     * 或相同导出正在执行（返回该任务的 taskId）；429：执行容量已满（带 Retry-After）
+     * <p>
+     * 带 ?cache=false 或请求头 Cache-Control: no-cache 时不复用，总是重新导出
      */
     @PostMapping("/export")
-    public Mono<TaskSubmissionResponse> submitExportTask(@RequestBody ExportTaskRequest request) {
+    public Mono<ResponseEntity<TaskSubmissionResponse>> submitExportTask(
+            @RequestBody ExportTaskRequest request,
+            @RequestParam(value = "cache", defaultValue = "true") boolean cache,
+            @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl) {
+        boolean useCache = cache && (cacheControl == null || !cacheControl.toLowerCase(Locale.ROOT).contains("no-cache"));
         // 提交导出任务到服务层处理
-        String taskId = taskService.submitExportTask(request);
-        log.info("任务受理成功: userId={}, taskId={}", request.userId(), taskId);
-        // 返回任务提交成功的响应信息
-        return Mono.just(new TaskSubmissionResponse(taskId, "任务已受理"));
+        ExportTaskService.SubmitResult result = taskService.submitExportTask(request, useCache);
+        if (result.reuse() == ExportTaskService.Reuse.CACHED) {
+            log.info("导出命中缓存: userId={}, taskId={}", request.userId(), result.taskId());
+            return Mono.just(ResponseEntity.ok(
+                    new TaskSubmissionResponse(result.taskId(), "已有相同导出结果，可直接下载", result.downloadUrl())));
+        }
+        if (result.reuse() == ExportTaskService.Reuse.IN_FLIGHT) {
+            log.info("导出关联到执行中的任务: userId={}, taskId={}", request.userId(), result.taskId());
+            return Mono.just(ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(new TaskSubmissionResponse(result.taskId(), "相同导出正在执行，已关联到该任务", null)));
+        }
+        return Mono.just(switch (result.admission()) {
+            case ACCEPTED -> {
+                log.info("任务受理成功: userId={}, taskId={}", request.userId(), result.taskId());
+                yield ResponseEntity.ok(new TaskSubmissionResponse(result.taskId(), "任务已受理", null));
+            }
+            case QUEUED -> {
+                log.info("任务已排队: userId={}, taskId={}", request.userId(), result.taskId());
+                yield ResponseEntity.status(HttpStatus.ACCEPTED)
+                        .body(new TaskSubmissionResponse(result.taskId(), "任务已排队", null));
+            }
+            case REJECTED -> ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS))
+                    .body(new TaskSubmissionResponse(null, "导出任务繁忙，请稍后重试", null));
+        });
     }
 
     /**
      * 监听用户任务进度（GET + query param）
-     * 兼容浏览器 EventSource
+     * 兼容浏览器 EventSource：事件 id 为全局单调序号（跨重启不回退），浏览器自动重连时携带 Last-Event-ID，
+     * 服务端据此补发断线期间遗漏的事件（也可通过 lastEventId 参数手动指定）
+     * <p>
+     * 每个事件在推送时已编码为完整 SSE 帧，这里直接写出共享的字节，不再逐订阅者做 JSON 序列化
+     * <p>
+     * overflow 指定本连接发送队列满时的策略：drop-oldest / latest-per-task / disconnect（缺省取配置）；
+     * 连接积压过久会收到 reconnect 事件后被断开，重连即可续传
      */
     @GetMapping(value = "/progress/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<ServerSentEvent<TaskProgress>> streamUserTaskProgress(
-            @RequestParam String userId) {
+    public Flux<DataBuffer> streamUserTaskProgress(
+            @RequestParam String userId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @RequestParam(value = "lastEventId", required = false) String lastEventIdParam,
+            @RequestParam(value = "overflow", required = false) String overflow,
+            ServerHttpResponse response) {
 
         if (userId == null || userId.isBlank()) {
             return Flux.error(new IllegalArgumentException("userId 不能为空"));
         }
 
-        log.info("用户 {} 开始监听任务进度流（SSE 连接建立）", userId);
+        OverflowPolicy overflowPolicy;
+        try {
+            overflowPolicy = OverflowPolicy.parse(overflow, null);
+        } catch (IllegalArgumentException e) {
+            return Flux.error(e);
+        }
+        long lastEventId = parseLastEventId(lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam);
+        log.info("用户 {} 开始监听任务进度流（SSE 连接建立）, lastEventId: {}", userId, lastEventId);
 
-        return taskService.getProgressStreamForUser(userId)
-                .map(progress -> ServerSentEvent.<TaskProgress>builder()
-                        .id(progress.taskId() + "-" + System.currentTimeMillis())
-                        .event(getEventName(progress.status()))
-                        .data(progress)
-                        .build())
+        DataBufferFactory bufferFactory = response.bufferFactory();
+        Flux<SseFrame> frames = taskService.getProgressStreamForUser(userId, lastEventId, overflowPolicy)
+                .map(ProgressEvent::frame)
+                .startWith(ProgressFrameEncoder.RETRY_FRAME);
+        // 空闲超过阈值时插入注释心跳，防止代理断开长时间无事件的连接
+        return sseMetrics.track("/api/tasks/progress/stream", sharedClock.withHeartbeat(frames, SharedClock.HEARTBEAT_FRAME)
+                .map(frame -> frame.toDataBuffer(bufferFactory))
                 // ⏱️ 自动断开：20 分钟超时
                 .take(Duration.ofMinutes(5))
-                .doOnCancel(() -> log.info("用户 {} 的 SSE 连接已断开", userId));
+                .doOnCancel(() -> log.info("用户 {} 的 SSE 连接已断开", userId)));
+    }
+
+    /**
+     * 查询用户进度 Sink 注册表的占用与回收统计
+     * GET /api/tasks/sinks/stats
+     */
+    @GetMapping("/sinks/stats")
+    public Mono<UserSinkRegistry.RegistryStats> sinkRegistryStats() {
+        return Mono.just(taskService.getSinkRegistryStats());
+    }
+
+    /**
+     * 查询单个任务的最新状态
+     * GET /api/tasks/{taskId}
+     * <p>
+     * 直接读取内存索引；服务重启后由任务日志恢复，已完成任务的下载地址仍然有效
+     */
+    @GetMapping("/{taskId}")
+    public Mono<ResponseEntity<TaskJournal.TaskRecord>> getTask(@PathVariable String taskId) {
+        TaskJournal.TaskRecord record = taskService.getTask(taskId);
+        return Mono.just(record == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(record));
+    }
+
+    /**
+     * 查询用户的全部任务（按更新时间倒序）
+     * GET /api/tasks?userId=xxx
+     */
+    @GetMapping
+    public Mono<List<TaskJournal.TaskRecord>> listTasks(@RequestParam String userId) {
+        return Mono.just(taskService.getTasksForUser(userId));
+    }
+
+    /**
+     * 取消导出任务
+     * DELETE /api/tasks/{taskId}?userId=xxx
+     * <p>
+     * 排队中的任务直接出队，执行中的任务中断工作线程；随后推送 status=cancelled 的 error 事件。
+     * 204：已取消；404：任务不存在、已结束或不属于该用户
+     */
+    @DeleteMapping("/{taskId}")
+    public Mono<ResponseEntity<Void>> cancelExportTask(@PathVariable String taskId, @RequestParam String userId) {
+        boolean cancelled = taskService.cancelExportTask(userId, taskId);
+        return Mono.just(cancelled ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build());
+    }
+
+    /**
+     * 查询导出结果去重缓存的占用与命中统计
+     * GET /api/tasks/cache/stats
+     */
+    @GetMapping("/cache/stats")
+    public Mono<ExportResultCache.CacheStats> resultCacheStats() {
+        return Mono.just(taskService.getResultCacheStats());
+    }
+
+    /**
+     * 查询导出公平调度器的运行与排队统计
+     * GET /api/tasks/scheduler/stats
+     */
+    @GetMapping("/scheduler/stats")
+    public Mono<FairExportScheduler.SchedulerStats> schedulerStats() {
+        return Mono.just(taskService.getSchedulerStats());
     }
 
-    private String getEventName(String status) {
-        return switch (status) {
-            case "completed" -> "complete";
-            case "failed" -> "error";
-            default -> "progress";
-        };
+    /**
+     * 解析 Last-Event-ID，缺失或非法（如旧版本的非数字 id）时视为新连接
+     */
+    private long parseLastEventId(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     /**
      * 任务提交响应
+     *
+     * @param downloadUrl 命中缓存时的下载地址，其余情况为 null（完成后从进度流获取）
      */
-    public record TaskSubmissionResponse(String taskId, String message) {}
+    public record TaskSubmissionResponse(String taskId, String message, String downloadUrl) {}
 
 
 }
\ No newline at end of file
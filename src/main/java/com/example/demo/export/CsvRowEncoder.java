@@ -0,0 +1,68 @@
+package com.example.demo.export;
+
+/**
+ * CSV 编码器（RFC 4180，含逗号/引号/换行的字段加双引号转义）
+ */
+public class CsvRowEncoder implements RowEncoder {
+
+    @Override
+    public String extension() {
+        return "csv";
+    }
+
+    @Override
+    public String contentType() {
+        return "text/csv;charset=UTF-8";
+    }
+
+    @Override
+    public void header(String[] columns, StringBuilder out) {
+        // UTF-8 BOM，避免 Excel 打开中文乱码
+        out.append('\uFEFF');
+        row(columns, out);
+    }
+
+    @Override
+    public void row(Object[] row, StringBuilder out) {
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendField(row[i], out);
+        }
+        out.append("\r\n");
+    }
+
+    @Override
+    public void footer(StringBuilder out) {
+    }
+
+    private void appendField(Object value, StringBuilder out) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Number) {
+            out.append(value);
+            return;
+        }
+        String text = value.toString();
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(text);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+}
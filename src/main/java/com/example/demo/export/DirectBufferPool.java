@@ -0,0 +1,48 @@
+package com.example.demo.export;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 直接内存缓冲池
+ * <p>
+ * 导出写盘使用固定大小的 DirectByteBuffer，避免每个任务重复申请堆外内存；
+ * 池空时临时分配，归还时超出池容量的缓冲直接丢弃交给 GC 回收。
+ */
+@Component
+public class DirectBufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> pool;
+
+    public DirectBufferPool(@Value("${export.buffer.size:65536}") int bufferSize,
+                            @Value("${export.buffer.pool-size:16}") int poolSize) {
+        this.bufferSize = bufferSize;
+        this.pool = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = pool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        pool.offer(buffer);
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * 当前池中空闲的缓冲数量
+     */
+    public int available() {
+        return pool.size();
+    }
+}
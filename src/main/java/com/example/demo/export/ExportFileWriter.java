@@ -0,0 +1,444 @@
+package com.example.demo.export;
+
+import com.example.demo.bo.ExportTaskRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 流式导出引擎：按批次拉取数据行，编码后经直接内存缓冲写入 FileChannel
+ * <p>
+ * 内存占用只与批次大小和缓冲大小有关，与总行数无关：
+ * - 每批最多 batch-size 行，逐行编码到可复用的 StringBuilder；
+ * - StringBuilder 超过缓冲大小即转码为 UTF-8 写入直接内存缓冲，缓冲满则写盘；
+ * - 先写入 .part 临时文件，全部完成后原子重命名，下载端不会读到半成品。
+ * <p>
+ * 大导出按行号范围切分为分区并行执行：
+ * - 分区在工作窃取线程池（exportPartitionPool）上执行，单个任务最多同时执行 max-parallelism 个分区，
+ *   执行者按分区序号依次认领，先完成的执行者继续认领下一个分区；
+ * - 每个分区写入独立的临时文件，导出线程按分区顺序依次把已完成的分区拼接（transferTo）到最终文件，
+ *   拼接与后续分区的写入重叠进行；
+ * - 各分区只累加共享计数，由导出线程定期汇总后回调进度，回调始终在同一线程中、数值单调递增。
+ */
+@Component
+public class ExportFileWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportFileWriter.class);
+
+    private final ExportRowSource rowSource;
+    private final DirectBufferPool bufferPool;
+    private final ExportStorage storage;
+    private final int batchSize;
+
+    // 分区导出：线程池为 null 或并行度 <= 1 时只走单线程路径
+    private final ForkJoinPool partitionPool;
+    private final long partitionRows;
+    private final int maxParallelism;
+
+    // 分区导出时汇总进度的间隔
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * 单线程导出（不分区）
+     */
+    public ExportFileWriter(ExportRowSource rowSource,
+                            DirectBufferPool bufferPool,
+                            ExportStorage storage,
+                            int batchSize) {
+        this(rowSource, bufferPool, storage, batchSize, null, Long.MAX_VALUE, 1);
+    }
+
+    @Autowired
+    public ExportFileWriter(ExportRowSource rowSource,
+                            DirectBufferPool bufferPool,
+                            ExportStorage storage,
+                            @Value("${export.batch-size:1000}") int batchSize,
+                            @Qualifier("exportPartitionPool") ForkJoinPool partitionPool,
+                            @Value("${export.partition.rows:200000}") long partitionRows,
+                            @Value("${export.partition.max-parallelism:4}") int maxParallelism) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("export.batch-size 必须大于0");
+        }
+        if (partitionRows <= 0) {
+            throw new IllegalArgumentException("export.partition.rows 必须大于0");
+        }
+        this.rowSource = rowSource;
+        this.bufferPool = bufferPool;
+        this.storage = storage;
+        this.batchSize = batchSize;
+        this.partitionPool = partitionPool;
+        // 分区行数取 batch-size 的整数倍，各分区批次数之和与不分区时一致
+        this.partitionRows = partitionRows >= Long.MAX_VALUE - batchSize
+                ? Long.MAX_VALUE : (partitionRows + batchSize - 1) / batchSize * batchSize;
+        this.maxParallelism = maxParallelism;
+    }
+
+    /**
+     * 批次进度回调（在导出线程中同步调用）
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onBatch(int batch, int totalBatches, long rowsWritten, long bytesWritten);
+    }
+
+    /**
+     * 导出结果
+     *
+     * @param fileName     文件名（用于拼接下载地址）
+     * @param path         文件路径
+     * @param rowsWritten  写入的数据行数
+     * @param bytesWritten 文件字节数
+     */
+    public record ExportResult(String fileName, Path path, long rowsWritten, long bytesWritten) {
+    }
+
+    public int totalBatches(ExportTaskRequest request) {
+        return (int) Math.max(1, (request.totalRecords() + (long) batchSize - 1) / batchSize);
+    }
+
+    /**
+     * 执行导出
+     *
+     * @throws InterruptedException 导出线程被中断（任务取消）时抛出，临时文件会被删除
+     */
+    public ExportResult write(String taskId, ExportTaskRequest request, ProgressListener listener)
+            throws IOException, InterruptedException {
+        RowEncoder encoder = RowEncoder.forFileType(request.fileType());
+        String fileName = storage.fileName(taskId, encoder);
+        Path target = storage.resolve(fileName);
+        Path temp = target.resolveSibling(fileName + ".part");
+
+        if (partitionPool != null && maxParallelism > 1 && request.totalRecords() > partitionRows) {
+            return writePartitioned(taskId, request, encoder, fileName, target, temp, listener);
+        }
+
+        int totalBatches = totalBatches(request);
+        ByteBuffer buffer = bufferPool.acquire();
+        boolean success = false;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            BatchWriter writer = new BatchWriter(channel, buffer);
+            StringBuilder text = writer.text;
+
+            encoder.header(rowSource.columns(request), text);
+            long rows = 0;
+            for (int batch = 1; batch <= totalBatches; batch++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("导出任务被中断: " + taskId);
+                }
+                int fetched = rowSource.fetch(request, rows, batchSize, row -> {
+                    encoder.row(row, text);
+                    writer.flushIfFull();
+                });
+                rows += fetched;
+                if (batch == totalBatches) {
+                    encoder.footer(text);
+                }
+                writer.flush();
+                listener.onBatch(batch, totalBatches, rows, writer.bytesWritten);
+                if (fetched < batchSize) {
+                    break;
+                }
+            }
+            writer.finish();
+            channel.force(false);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            success = true;
+            log.debug("导出文件写入完成 | taskId: {}, file: {}, rows: {}, bytes: {}",
+                    taskId, target, rows, writer.bytesWritten);
+            return new ExportResult(fileName, target, rows, writer.bytesWritten);
+        } finally {
+            bufferPool.release(buffer);
+            if (!success) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * 分区并行导出：导出线程写表头、按序拼接分区、写表尾，并汇总回调进度
+     */
+    private ExportResult writePartitioned(String taskId, ExportTaskRequest request, RowEncoder encoder,
+                                          String fileName, Path target, Path temp, ProgressListener listener)
+            throws IOException, InterruptedException {
+        PartitionRun run = new PartitionRun(taskId, request, encoder, temp,
+                (int) ((request.totalRecords() + partitionRows - 1) / partitionRows));
+        int workers = Math.min(maxParallelism, run.results.length);
+        for (int i = 0; i < workers; i++) {
+            partitionPool.execute(() -> runPartitions(run));
+        }
+        log.debug("分区导出开始 | taskId: {}, partitions: {}, parallelism: {}", taskId, run.results.length, workers);
+
+        int totalBatches = totalBatches(request);
+        int[] reportedBatches = {0};
+        Runnable report = () -> {
+            int batches = run.batches.get();
+            if (batches > reportedBatches[0]) {
+                reportedBatches[0] = batches;
+                listener.onBatch(batches, totalBatches, run.rows.sum(), run.bytes.sum());
+            }
+        };
+
+        ByteBuffer buffer = bufferPool.acquire();
+        boolean success = false;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            BatchWriter header = new BatchWriter(channel, buffer);
+            encoder.header(rowSource.columns(request), header.text);
+            header.finish();
+
+            long rows = 0;
+            for (int i = 0; i < run.results.length; i++) {
+                PartitionResult part = await(run, i, report);
+                try (FileChannel in = FileChannel.open(part.path, StandardOpenOption.READ)) {
+                    long size = in.size();
+                    for (long position = 0; position < size; ) {
+                        position += in.transferTo(position, size - position, channel);
+                    }
+                }
+                Files.delete(part.path);
+                rows += part.rows;
+                report.run();
+            }
+
+            BatchWriter footer = new BatchWriter(channel, buffer);
+            encoder.footer(footer.text);
+            footer.finish();
+            channel.force(false);
+            long bytes = channel.size();
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            success = true;
+            log.debug("分区导出写入完成 | taskId: {}, file: {}, partitions: {}, rows: {}, bytes: {}",
+                    taskId, target, run.results.length, rows, bytes);
+            return new ExportResult(fileName, target, rows, bytes);
+        } finally {
+            bufferPool.release(buffer);
+            if (!success) {
+                // 通知仍在执行的分区停止，并清理已完成但未拼接的分区文件
+                run.cancelled = true;
+                for (int i = 0; i < run.results.length; i++) {
+                    Files.deleteIfExists(run.partPath(i));
+                }
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * 等待分区完成，等待期间定期汇总进度；分区失败时抛出最先发生的那个异常
+     */
+    private static PartitionResult await(PartitionRun run, int index, Runnable report)
+            throws IOException, InterruptedException {
+        while (true) {
+            try {
+                return run.results[index].get(PROGRESS_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                report.run();
+            } catch (ExecutionException | CancellationException e) {
+                Throwable cause = run.failure != null ? run.failure : e.getCause();
+                if (cause instanceof IOException io) {
+                    throw io;
+                }
+                if (cause instanceof InterruptedException interrupted) {
+                    throw interrupted;
+                }
+                if (cause instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new IOException("导出分区失败", cause);
+            }
+        }
+    }
+
+    /**
+     * 分区执行者：按序号认领分区直到全部认领完；任一分区失败时其余执行者停止认领
+     */
+    private void runPartitions(PartitionRun run) {
+        int index;
+        while ((index = run.next.getAndIncrement()) < run.results.length) {
+            if (run.cancelled) {
+                run.results[index].cancel(false);
+                continue;
+            }
+            try {
+                run.results[index].complete(writePartition(run, index));
+            } catch (Throwable e) {
+                // 因其他分区失败而停止的分区不覆盖最初的失败原因
+                if (!run.cancelled) {
+                    run.failure = e;
+                    run.cancelled = true;
+                }
+                run.results[index].completeExceptionally(e);
+            }
+        }
+    }
+
+    private PartitionResult writePartition(PartitionRun run, int index) throws IOException, InterruptedException {
+        ExportTaskRequest request = run.request;
+        long from = index * partitionRows;
+        long to = Math.min(request.totalRecords(), from + partitionRows);
+        Path part = run.partPath(index);
+        ByteBuffer buffer = bufferPool.acquire();
+        boolean success = false;
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            BatchWriter writer = new BatchWriter(channel, buffer);
+            StringBuilder text = writer.text;
+            long rows = 0;
+            long reportedBytes = 0;
+            for (long offset = from; offset < to; offset += batchSize) {
+                if (run.cancelled || Thread.interrupted()) {
+                    throw new InterruptedException("导出分区被取消: " + run.taskId + "#" + index);
+                }
+                int limit = (int) Math.min(batchSize, to - offset);
+                int fetched = rowSource.fetch(request, offset, limit, row -> {
+                    run.encoder.row(row, text);
+                    writer.flushIfFull();
+                });
+                rows += fetched;
+                writer.flush();
+                run.rows.add(fetched);
+                run.bytes.add(writer.bytesWritten - reportedBytes);
+                reportedBytes = writer.bytesWritten;
+                run.batches.incrementAndGet();
+                if (fetched < limit) {
+                    break;
+                }
+            }
+            writer.finish();
+            run.bytes.add(writer.bytesWritten - reportedBytes);
+            success = true;
+            return new PartitionResult(part, rows);
+        } finally {
+            bufferPool.release(buffer);
+            if (!success) {
+                Files.deleteIfExists(part);
+            }
+        }
+    }
+
+    /**
+     * 一次分区导出的共享状态
+     */
+    private static final class PartitionRun {
+        final String taskId;
+        final ExportTaskRequest request;
+        final RowEncoder encoder;
+        final Path temp;
+        final CompletableFuture<PartitionResult>[] results;
+        // 下一个待认领的分区序号
+        final AtomicInteger next = new AtomicInteger();
+        // 各分区累加的计数，由导出线程汇总
+        final AtomicInteger batches = new AtomicInteger();
+        final LongAdder rows = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        volatile boolean cancelled;
+        volatile Throwable failure;
+
+        @SuppressWarnings("unchecked")
+        PartitionRun(String taskId, ExportTaskRequest request, RowEncoder encoder, Path temp, int partitions) {
+            this.taskId = taskId;
+            this.request = request;
+            this.encoder = encoder;
+            this.temp = temp;
+            this.results = new CompletableFuture[partitions];
+            for (int i = 0; i < partitions; i++) {
+                results[i] = new CompletableFuture<>();
+            }
+        }
+
+        Path partPath(int index) {
+            return temp.resolveSibling(temp.getFileName() + "-" + index);
+        }
+    }
+
+    private record PartitionResult(Path path, long rows) {
+    }
+
+    /**
+     * 文本 -> UTF-8 -> 直接内存缓冲 -> FileChannel
+     */
+    private static final class BatchWriter {
+        final StringBuilder text;
+        final FileChannel channel;
+        final ByteBuffer buffer;
+        final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder();
+        final int flushThreshold;
+        long bytesWritten;
+
+        BatchWriter(FileChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.flushThreshold = Math.max(1024, buffer.capacity() / 2);
+            this.text = new StringBuilder(flushThreshold + 1024);
+        }
+
+        void flushIfFull() {
+            if (text.length() >= flushThreshold) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (text.isEmpty()) {
+                return;
+            }
+            CharBuffer chars = CharBuffer.wrap(text);
+            while (true) {
+                CoderResult result = utf8.encode(chars, buffer, false);
+                if (result.isOverflow()) {
+                    drain();
+                } else if (result.isUnderflow()) {
+                    break;
+                } else {
+                    throw new IllegalStateException("导出内容编码失败: " + result);
+                }
+            }
+            // 末尾可能残留半个代理对，留到下一次编码
+            text.delete(0, chars.position());
+        }
+
+        void finish() throws IOException {
+            flush();
+            utf8.encode(CharBuffer.wrap(text), buffer, true);
+            utf8.flush(buffer);
+            drain();
+        }
+
+        private void drain() {
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    bytesWritten += channel.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package com.example.demo.export;
+
+import com.example.demo.bo.ExportTaskRequest;
+import com.example.demo.journal.TaskJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 导出结果去重缓存（按请求指纹：userId + fileType + dataScope + totalRecords）
+ * <p>
+ * 设计说明：
+ * - 在途去重：相同指纹的任务执行期间，新的提交直接关联到该任务的 taskId 与进度；
+ * - 结果复用：任务成功后导出文件被改名为 {任务ID}.{指纹摘要}.{扩展名} 并交由缓存管理（不复制、不链接，磁盘上只有一份），
+ *   相同指纹的提交直接返回该文件的下载地址；
+ * - 文件的删除由缓存负责：超过 TTL、超出容量或被新结果替换的条目移出索引后不再复用，
+ *   但任务日志中仍有任务（原任务或命中缓存的任务）指向它时保留文件，日志按保留期丢弃这些任务后才删除，
+ *   因此已发出的下载地址在日志保留期内（含重启后）始终有效；
+ * - 容量按缓存管理的全部文件的实际字节数计算（含已移出索引、仍被日志引用的文件），超出时按 LRU 把条目移出索引，
+ *   不再被引用的文件立即删除；
+ * - 文件名带指纹摘要，重启后扫描目录即可恢复索引。
+ */
+@Component
+public class ExportResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportResultCache.class);
+
+    // 指纹摘要长度（SHA-256 前 128 位的十六进制）
+    private static final int DIGEST_LENGTH = 32;
+
+    // 缓存管理的文件名：{任务ID}.{指纹摘要}.{扩展名}
+    private static final Pattern CACHED_FILE = Pattern.compile("[^.]+\\.[0-9a-f]{" + DIGEST_LENGTH + "}\\.[^.]+");
+
+    private final ExportStorage storage;
+    private final TaskJournal taskJournal;
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long ttlMillis;
+
+    // 指纹 -> 执行中的任务ID；任务ID -> 指纹
+    private final Map<Fingerprint, String> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Fingerprint> inFlightTasks = new ConcurrentHashMap<>();
+
+    // 以下状态由 this 锁保护
+    // 指纹摘要 -> 可复用的文件；accessOrder = true：迭代顺序即 LRU 顺序
+    private final LinkedHashMap<String, Artifact> entries = new LinkedHashMap<>(64, 0.75f, true);
+    // 已移出索引、仍被任务日志引用的文件：文件名 -> 条目
+    private final Map<String, Artifact> retained = new HashMap<>();
+    // entries + retained 的实际磁盘字节数
+    private long currentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong inFlightHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bypasses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ExportResultCache(ExportStorage storage,
+                             TaskJournal taskJournal,
+                             @Value("${export.cache.enabled:true}") boolean enabled,
+                             @Value("${export.cache.max-bytes:1073741824}") long maxBytes,
+                             @Value("${export.cache.ttl:10m}") Duration ttl) {
+        this.storage = storage;
+        this.taskJournal = taskJournal;
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttl.toMillis();
+        if (enabled) {
+            recover();
+        }
+    }
+
+    /**
+     * 请求指纹（fileType 不区分大小写）
+     */
+    public record Fingerprint(String userId, String fileType, String dataScope, int totalRecords) {
+
+        public static Fingerprint of(ExportTaskRequest request) {
+            return new Fingerprint(request.userId(), request.fileType().trim().toUpperCase(Locale.ROOT),
+                    request.dataScope(), request.totalRecords());
+        }
+
+        /**
+         * 指纹摘要（SHA-256 前 128 位），写入缓存文件名
+         */
+        String digest() {
+            try {
+                MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+                String text = userId + '\0' + fileType + '\0' + dataScope + '\0' + totalRecords;
+                return HexFormat.of().formatHex(sha256.digest(text.getBytes(StandardCharsets.UTF_8)), 0, DIGEST_LENGTH / 2);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * 缓存管理的导出文件
+     *
+     * @param fileName      文件名 {任务ID}.{指纹摘要}.{扩展名}（用于拼接下载地址）
+     * @param bytes         文件字节数
+     * @param createdMillis 登记时间
+     */
+    public record Artifact(String fileName, long bytes, long createdMillis) {
+
+        String digest() {
+            int extension = fileName.lastIndexOf('.');
+            return fileName.substring(extension - DIGEST_LENGTH, extension);
+        }
+    }
+
+    /**
+     * 查找结果
+     *
+     * @param taskId   命中在途任务时为该任务ID
+     * @param artifact 命中缓存文件时不为 null
+     */
+    public record Lookup(String taskId, Artifact artifact) {
+
+        static final Lookup MISS = new Lookup(null, null);
+
+        public boolean isMiss() {
+            return taskId == null && artifact == null;
+        }
+    }
+
+    /**
+     * 提交前查找：先查缓存文件，再尝试把 taskId 登记为该指纹的在途任务
+     * <p>
+     * 返回 MISS 时 taskId 已登记为在途任务，调用方必须在任务结束或未被受理时调用 {@link #release}。
+     * 命中的文件至少被原任务的完成记录引用，在日志丢弃该记录之前不会被删除。
+     * 只查内存索引、不访问文件系统（在 WebFlux 请求线程上调用），被外部删除的文件由 {@link #evictExpired} 定时移出索引。
+     *
+     * @param bypass 为 true 时不复用（仍登记在途任务，结束后刷新缓存）
+     */
+    public Lookup lookupOrRegister(ExportTaskRequest request, String taskId, boolean bypass) {
+        if (!enabled) {
+            return Lookup.MISS;
+        }
+        Fingerprint fingerprint = Fingerprint.of(request);
+        if (bypass) {
+            bypasses.incrementAndGet();
+        } else {
+            Artifact artifact = get(fingerprint);
+            if (artifact != null) {
+                hits.incrementAndGet();
+                return new Lookup(null, artifact);
+            }
+        }
+        String existing = bypass ? null : inFlight.putIfAbsent(fingerprint, taskId);
+        if (existing != null) {
+            inFlightHits.incrementAndGet();
+            return new Lookup(existing, null);
+        }
+        if (bypass) {
+            // 绕过时不覆盖已有的在途登记，本任务只在结束时刷新缓存
+            inFlight.putIfAbsent(fingerprint, taskId);
+        } else {
+            misses.incrementAndGet();
+        }
+        inFlightTasks.put(taskId, fingerprint);
+        return Lookup.MISS;
+    }
+
+    /**
+     * 任务成功：把导出文件改名后交由缓存管理
+     *
+     * @return 应发布的文件名；未登记、缓存关闭或文件超过容量上限时为原文件名（文件不由缓存管理）
+     */
+    public String store(String taskId, Path exportFile) {
+        String name = exportFile.getFileName().toString();
+        Fingerprint fingerprint = inFlightTasks.get(taskId);
+        if (!enabled || fingerprint == null) {
+            return name;
+        }
+        try {
+            long size = Files.size(exportFile);
+            if (size > maxBytes) {
+                return name;
+            }
+            int extension = name.lastIndexOf('.');
+            String fileName = name.substring(0, extension) + "." + fingerprint.digest() + name.substring(extension);
+            Files.move(exportFile, storage.resolve(fileName), StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                put(new Artifact(fileName, size, System.currentTimeMillis()));
+                trim();
+            }
+            return fileName;
+        } catch (IOException e) {
+            log.warn("登记导出缓存失败 | taskId: {}, file: {}", taskId, exportFile, e);
+            return name;
+        }
+    }
+
+    /**
+     * 任务结束（成功 / 失败 / 取消）或未被受理：解除在途登记
+     */
+    public void release(String taskId) {
+        Fingerprint fingerprint = inFlightTasks.remove(taskId);
+        if (fingerprint != null) {
+            inFlight.remove(fingerprint, taskId);
+        }
+    }
+
+    private synchronized Artifact get(Fingerprint fingerprint) {
+        Artifact artifact = entries.get(fingerprint.digest());
+        if (artifact == null) {
+            return null;
+        }
+        if (isExpired(artifact, System.currentTimeMillis())) {
+            entries.remove(artifact.digest());
+            retire(artifact);
+            return null;
+        }
+        return artifact;
+    }
+
+    /**
+     * 定时把过期条目与文件已被外部删除的条目移出索引，并删除不再被任务日志引用的文件
+     */
+    @Scheduled(fixedDelayString = "${export.cache.sweep-interval-ms:60000}")
+    public synchronized void evictExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Artifact> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Artifact artifact = iterator.next();
+            if (isExpired(artifact, now)) {
+                iterator.remove();
+                retire(artifact);
+            } else if (!Files.isRegularFile(storage.resolve(artifact.fileName()))) {
+                iterator.remove();
+                currentBytes -= artifact.bytes();
+            }
+        }
+        reclaim(taskJournal.referencedResults());
+    }
+
+    private boolean isExpired(Artifact artifact, long now) {
+        return now - artifact.createdMillis() > ttlMillis;
+    }
+
+    /**
+     * 加入索引；同一指纹的旧文件（绕过缓存重新导出时）移出索引
+     */
+    private void put(Artifact artifact) {
+        Artifact previous = entries.put(artifact.digest(), artifact);
+        currentBytes += artifact.bytes();
+        if (previous != null) {
+            retire(previous);
+        }
+    }
+
+    private void retire(Artifact artifact) {
+        retained.put(artifact.fileName(), artifact);
+        evictions.incrementAndGet();
+    }
+
+    /**
+     * 超出容量时先删除不再被引用的文件，仍超出则按 LRU 把条目移出索引（保留最新的一个）
+     */
+    private void trim() {
+        if (currentBytes <= maxBytes) {
+            return;
+        }
+        Set<String> referenced = taskJournal.referencedResults();
+        reclaim(referenced);
+        Iterator<Artifact> lru = entries.values().iterator();
+        while (currentBytes > maxBytes && entries.size() > 1 && lru.hasNext()) {
+            Artifact eldest = lru.next();
+            lru.remove();
+            retire(eldest);
+            reclaim(eldest, referenced);
+        }
+    }
+
+    private void reclaim(Set<String> referenced) {
+        for (Artifact artifact : List.copyOf(retained.values())) {
+            reclaim(artifact, referenced);
+        }
+    }
+
+    /**
+     * 已移出索引且没有任务指向的文件：删除
+     */
+    private void reclaim(Artifact artifact, Set<String> referenced) {
+        if (referenced.contains(storage.downloadUrl(artifact.fileName()))) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(storage.resolve(artifact.fileName()));
+            retained.remove(artifact.fileName());
+            currentBytes -= artifact.bytes();
+        } catch (IOException e) {
+            log.warn("删除导出缓存文件失败: {}", artifact.fileName(), e);
+        }
+    }
+
+    /**
+     * 启动时扫描导出目录恢复索引（按修改时间作为登记时间与 LRU 顺序），过期或被替换的文件按日志引用决定保留或删除
+     */
+    private synchronized void recover() {
+        List<Artifact> found = new ArrayList<>();
+        try (Stream<Path> files = Files.list(storage.baseDir())) {
+            files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return CACHED_FILE.matcher(name).matches() && Files.isRegularFile(path);
+                    })
+                    .forEach(path -> {
+                        try {
+                            found.add(new Artifact(path.getFileName().toString(), Files.size(path),
+                                    Files.getLastModifiedTime(path).toMillis()));
+                        } catch (IOException e) {
+                            log.warn("读取导出缓存文件失败: {}", path, e);
+                        }
+                    });
+        } catch (IOException e) {
+            log.warn("扫描导出缓存目录失败: {}", storage.baseDir(), e);
+            return;
+        }
+        found.sort(Comparator.comparingLong(Artifact::createdMillis));
+        found.forEach(this::put);
+        evictExpired();
+        trim();
+        if (!entries.isEmpty() || !retained.isEmpty()) {
+            log.info("恢复导出缓存 | 可复用: {}, 保留中: {}, 共 {} 字节", entries.size(), retained.size(), currentBytes);
+        }
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long inFlightHitCount() {
+        return inFlightHits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    public long bypassCount() {
+        return bypasses.get();
+    }
+
+    public synchronized CacheStats stats() {
+        long reused = hits.get() + inFlightHits.get();
+        long total = reused + misses.get();
+        return new CacheStats(entries.size(), retained.size(), currentBytes, maxBytes, hits.get(), inFlightHits.get(),
+                misses.get(), bypasses.get(), evictions.get(), total == 0 ? 0 : (double) reused / total);
+    }
+
+    /**
+     * @param entries  可复用的文件数
+     * @param retained 已移出索引、仍被任务日志引用的文件数
+     * @param bytes    缓存管理的全部文件的磁盘字节数
+     * @param hitRate  复用率：（缓存命中 + 在途命中）/（命中 + 未命中），不含绕过缓存的提交
+     */
+    public record CacheStats(int entries, int retained, long bytes, long maxBytes, long hits, long inFlightHits,
+                             long misses, long bypasses, long evictions, double hitRate) {
+    }
+}
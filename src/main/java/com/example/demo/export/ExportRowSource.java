@@ -0,0 +1,33 @@
+package com.example.demo.export;
+
+import com.example.demo.bo.ExportTaskRequest;
+
+import java.util.function.Consumer;
+
+/**
+ * 导出数据行来源（可插拔）
+ * <p>
+ * 导出引擎按批次拉取数据：每次只请求 [offset, offset + limit) 范围内的行，
+ * 行通过回调逐条交给编码器，实现方不应一次性把全部数据加载到内存。
+ * <p>
+ * 分区并行导出时同一请求的不同范围会在多个线程中同时拉取，实现须线程安全。
+ */
+public interface ExportRowSource {
+
+    /**
+     * 导出文件的列名
+     */
+    String[] columns(ExportTaskRequest request);
+
+    /**
+     * 拉取指定范围内的行
+     * <p>
+     * 为避免每行分配对象，实现方可以在一次调用内复用同一个行数组，调用方不得在回调之外持有它。
+     *
+     * @param offset      起始行号（从 0 开始）
+     * @param limit       最多返回的行数
+     * @param rowConsumer 行回调，数组长度与 {@link #columns} 一致
+     * @return 实际返回的行数；小于 limit 表示数据已取完
+     */
+    int fetch(ExportTaskRequest request, long offset, int limit, Consumer<Object[]> rowConsumer);
+}
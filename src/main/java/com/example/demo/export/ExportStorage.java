@@ -0,0 +1,54 @@
+package com.example.demo.export;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 导出文件存储目录
+ */
+@Component
+public class ExportStorage {
+
+    private final Path baseDir;
+
+    public ExportStorage(@Value("${export.storage.dir:${java.io.tmpdir}/demoproject-exports}") Path baseDir) {
+        this.baseDir = baseDir.toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(this.baseDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法创建导出目录: " + this.baseDir, e);
+        }
+    }
+
+    public String fileName(String taskId, RowEncoder encoder) {
+        return taskId + "." + encoder.extension();
+    }
+
+    /**
+     * 文件的下载地址（由 DownloadController 提供）
+     */
+    public String downloadUrl(String fileName) {
+        return "/download/" + fileName;
+    }
+
+    /**
+     * 解析文件名对应的路径；文件名非法（含路径分隔符等）时返回 null
+     */
+    public Path resolve(String fileName) {
+        if (fileName == null || fileName.isBlank() || fileName.contains("/") || fileName.contains("\\")
+                || fileName.startsWith(".")) {
+            return null;
+        }
+        Path path = baseDir.resolve(fileName).normalize();
+        return baseDir.equals(path.getParent()) ? path : null;
+    }
+
+    public Path baseDir() {
+        return baseDir;
+    }
+}
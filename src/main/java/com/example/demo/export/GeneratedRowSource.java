@@ -0,0 +1,41 @@
+package com.example.demo.export;
+
+import com.example.demo.bo.ExportTaskRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+/**
+ * 按行号确定性生成数据的行来源（默认实现，便于演示与压测）
+ * <p>
+ * 同一请求的同一行号总是生成相同内容，行数由 {@link ExportTaskRequest#totalRecords()} 决定，
+ * 不占用与总行数成正比的内存。
+ */
+@Component
+public class GeneratedRowSource implements ExportRowSource {
+
+    private static final String[] COLUMNS = {"id", "userId", "dataScope", "amount", "createdDate"};
+
+    private static final LocalDate BASE_DATE = LocalDate.of(2024, 1, 1);
+
+    @Override
+    public String[] columns(ExportTaskRequest request) {
+        return COLUMNS.clone();
+    }
+
+    @Override
+    public int fetch(ExportTaskRequest request, long offset, int limit, Consumer<Object[]> rowConsumer) {
+        long end = Math.min(request.totalRecords(), offset + limit);
+        Object[] row = new Object[COLUMNS.length];
+        for (long id = offset; id < end; id++) {
+            row[0] = id + 1;
+            row[1] = request.userId();
+            row[2] = request.dataScope();
+            row[3] = (id * 7919 % 100_000) / 100.0;
+            row[4] = BASE_DATE.plusDays(id % 365);
+            rowConsumer.accept(row);
+        }
+        return (int) Math.max(0, end - offset);
+    }
+}
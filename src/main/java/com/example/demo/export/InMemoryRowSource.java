@@ -0,0 +1,35 @@
+package com.example.demo.export;
+
+import com.example.demo.bo.ExportTaskRequest;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 基于内存列表的行来源，用于测试或小数据量导出
+ */
+public class InMemoryRowSource implements ExportRowSource {
+
+    private final String[] columns;
+    private final List<Object[]> rows;
+
+    public InMemoryRowSource(String[] columns, List<Object[]> rows) {
+        this.columns = columns.clone();
+        this.rows = List.copyOf(rows);
+    }
+
+    @Override
+    public String[] columns(ExportTaskRequest request) {
+        return columns.clone();
+    }
+
+    @Override
+    public int fetch(ExportTaskRequest request, long offset, int limit, Consumer<Object[]> rowConsumer) {
+        int from = (int) Math.min(offset, rows.size());
+        int to = (int) Math.min(rows.size(), offset + limit);
+        for (int i = from; i < to; i++) {
+            rowConsumer.accept(rows.get(i));
+        }
+        return to - from;
+    }
+}
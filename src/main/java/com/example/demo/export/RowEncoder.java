@@ -0,0 +1,38 @@
+package com.example.demo.export;
+
+/**
+ * 行编码器：把行写成目标文件格式的文本
+ * <p>
+ * 编码器无状态，输出追加到调用方提供的 StringBuilder，由导出引擎统一转码写盘。
+ */
+public interface RowEncoder {
+
+    /**
+     * 文件扩展名（不含点）
+     */
+    String extension();
+
+    /**
+     * 下载时的 Content-Type
+     */
+    String contentType();
+
+    void header(String[] columns, StringBuilder out);
+
+    void row(Object[] row, StringBuilder out);
+
+    void footer(StringBuilder out);
+
+    /**
+     * 根据导出文件类型选择编码器
+     *
+     * @param fileType 如 "CSV", "EXCEL"
+     */
+    static RowEncoder forFileType(String fileType) {
+        return switch (fileType.trim().toUpperCase()) {
+            case "CSV" -> new CsvRowEncoder();
+            case "EXCEL", "XLS" -> new SpreadsheetMlRowEncoder();
+            default -> throw new IllegalArgumentException("不支持的导出文件类型: " + fileType);
+        };
+    }
+}
@@ -0,0 +1,465 @@
+package com.example.demo.journal;
+
+import com.example.demo.bo.TaskProgress;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * 任务状态日志（追加写、内存映射）
+ * <p>
+ * 设计说明：
+ * - 每条记录为 [int 长度][int CRC32][JSON TaskRecord]，顺序追加到内存映射文件，空间不足时按倍数扩容重新映射；
+ * - 只有状态变化（processing → completed / failed / cancelled）才写日志，进度步数只更新内存索引（无锁 CAS）；
+ * - 状态变化在该任务的索引槽位内更新并进入追加队列，由持有 WIP 的单个线程写入映射区（多生产者 / 单写入者），
+ *   同一任务的日志顺序与索引一致，导出线程不会因其他任务的追加或压缩而等待；
+ * - 内存中按 taskId 保存最新状态、按 userId 保存任务集合，查询直接走索引，不扫描日志；
+ * - 写入映射区后即进入内核页缓存，进程崩溃不会丢失；关闭与压缩时 force 落盘；
+ * - 启动时重放日志恢复索引，遇到长度为 0 或校验失败（写到一半）的记录即停止；
+ *   重启前仍在 processing 的任务标记为 failed（原请求参数未入日志，无法续跑）；
+ * - 定期压缩：每个任务只保留最新一条，超过保留期的终态任务被丢弃；新文件在追加锁之外生成，
+ *   替换时只在锁内把期间追加到原日志的尾部补到新文件末尾，再原子替换；
+ * - 日志位于 export.journal.dir（默认工作目录下的 data），不放在会被系统清理的临时目录；
+ * - 日志文件被同一目录下的其他实例占用时退化为仅内存索引。
+ */
+@Component
+public class TaskJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskJournal.class);
+
+    private static final int HEADER_BYTES = 8;
+
+    private final ObjectMapper objectMapper;
+    private final Path file;
+    private final int initialMapSize;
+    private final long retentionMillis;
+
+    private final ConcurrentHashMap<String, TaskRecord> byTask = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> byUser = new ConcurrentHashMap<>();
+
+    // 待追加的状态变化：按进入索引的顺序排队，持有 WIP 的线程在 this 锁内写入
+    private final Queue<TaskRecord> appends = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger appendWip = new AtomicInteger();
+
+    // 同一时刻只有一次压缩
+    private final Object compactLock = new Object();
+
+    // 以下状态由 this 锁保护（追加锁）
+    private FileChannel channel;
+    private FileLock lock;
+    private MappedByteBuffer buffer;
+    private long records;
+
+    public TaskJournal(ObjectMapper objectMapper,
+                       @Value("${export.journal.dir:data}") Path dir,
+                       @Value("${export.journal.map-size:4194304}") int initialMapSize,
+                       @Value("${export.journal.retention:7d}") Duration retention) {
+        this.objectMapper = objectMapper;
+        Path baseDir = dir.toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(baseDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法创建任务日志目录: " + baseDir, e);
+        }
+        this.file = baseDir.resolve("task-journal");
+        this.initialMapSize = initialMapSize;
+        this.retentionMillis = retention.toMillis();
+    }
+
+    /**
+     * 任务的最新状态
+     *
+     * @param updatedAt 最近一次更新时间（毫秒时间戳）
+     */
+    public record TaskRecord(TaskProgress progress, long updatedAt) {
+    }
+
+    @PostConstruct
+    public synchronized void open() {
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法打开任务日志: " + file, e);
+        }
+        if (lock == null) {
+            log.warn("任务日志 {} 已被其他实例占用，本实例只保留内存索引", file);
+            closeChannel();
+            return;
+        }
+        try {
+            map(Math.max(initialMapSize, channel.size()));
+            int recovered = replay();
+            int interrupted = 0;
+            for (TaskRecord record : List.copyOf(byTask.values())) {
+                if (!record.progress().isTerminal()) {
+                    TaskProgress progress = record.progress();
+                    record(TaskProgress.failed(progress.taskId(), progress.userId(), "服务重启，任务已中断"));
+                    interrupted++;
+                }
+            }
+            log.info("任务日志恢复完成 | 文件: {}, 记录: {}, 任务: {}, 标记为中断: {}", file, recovered, byTask.size(), interrupted);
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法映射任务日志: " + file, e);
+        }
+    }
+
+    /**
+     * 记录任务状态：更新索引，状态变化时追加到日志
+     * <p>
+     * 状态未变化（只是进度步数更新）时只 CAS 替换索引，不加锁；状态变化时在该任务的索引槽位内更新并入队，
+     * 与同一任务的其他状态变化串行，日志顺序与索引的最终状态一致。
+     * 任务已是终态时拒绝非终态更新（如取消后工作线程迟到的进度），避免日志出现 cancelled → processing。
+     *
+     * @return false 表示任务已结束、更新被拒绝，调用方不应再推送
+     */
+    public boolean record(TaskProgress progress) {
+        String taskId = progress.taskId();
+        TaskRecord record = new TaskRecord(progress, System.currentTimeMillis());
+        TaskRecord previous = byTask.get(taskId);
+        while (previous != null && previous.progress().status().equals(progress.status())) {
+            if (previous.progress().isTerminal() && !progress.isTerminal()) {
+                return false;
+            }
+            if (byTask.replace(taskId, previous, record)) {
+                return true;
+            }
+            previous = byTask.get(taskId);
+        }
+        boolean[] created = {false};
+        boolean[] rejected = {false};
+        byTask.compute(taskId, (id, current) -> {
+            if (current != null && current.progress().isTerminal() && !progress.isTerminal()) {
+                rejected[0] = true;
+                return current;
+            }
+            created[0] = current == null;
+            if (current == null || !current.progress().status().equals(progress.status())) {
+                appends.offer(record);
+            }
+            return record;
+        });
+        if (rejected[0]) {
+            return false;
+        }
+        if (created[0]) {
+            byUser.computeIfAbsent(progress.userId(), user -> ConcurrentHashMap.newKeySet()).add(taskId);
+        }
+        drainAppends();
+        return true;
+    }
+
+    /**
+     * 任务尚无记录时写入初始状态（与工作线程的首次进度竞争时以先到者为准）
+     */
+    public void recordIfAbsent(TaskProgress progress) {
+        TaskRecord record = new TaskRecord(progress, System.currentTimeMillis());
+        boolean[] created = {false};
+        byTask.computeIfAbsent(progress.taskId(), id -> {
+            created[0] = true;
+            appends.offer(record);
+            return record;
+        });
+        if (created[0]) {
+            byUser.computeIfAbsent(progress.userId(), user -> ConcurrentHashMap.newKeySet()).add(progress.taskId());
+            drainAppends();
+        }
+    }
+
+    /**
+     * 同一时刻只有一个线程写入：没拿到 WIP 的生产者入队后直接返回，由当前写入者代为追加
+     */
+    private void drainAppends() {
+        if (appendWip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            synchronized (this) {
+                TaskRecord record;
+                while ((record = appends.poll()) != null) {
+                    append(record);
+                }
+            }
+            missed = appendWip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    public TaskRecord find(String taskId) {
+        return byTask.get(taskId);
+    }
+
+    /**
+     * 用户的全部任务，按更新时间倒序
+     */
+    public List<TaskRecord> findByUser(String userId) {
+        Set<String> taskIds = byUser.get(userId);
+        if (taskIds == null) {
+            return List.of();
+        }
+        List<TaskRecord> result = new ArrayList<>(taskIds.size());
+        for (String taskId : taskIds) {
+            TaskRecord record = byTask.get(taskId);
+            if (record != null) {
+                result.add(record);
+            }
+        }
+        result.sort(Comparator.comparingLong(TaskRecord::updatedAt).reversed());
+        return result;
+    }
+
+    /**
+     * 日志中所有任务的结果（如下载地址），用于判断导出文件是否仍被引用
+     */
+    public Set<String> referencedResults() {
+        Set<String> results = new HashSet<>();
+        for (TaskRecord record : byTask.values()) {
+            if (record.progress().result() instanceof String result) {
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 调用方持有 this 锁
+     */
+    private void append(TaskRecord record) {
+        if (buffer == null) {
+            return;
+        }
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(record);
+        } catch (IOException e) {
+            log.error("任务状态序列化失败 | taskId: {}", record.progress().taskId(), e);
+            return;
+        }
+        try {
+            // 末尾保留一个 0 长度头作为结束标记
+            if (buffer.remaining() < HEADER_BYTES + payload.length + 4) {
+                map(Math.max((long) buffer.capacity() * 2, buffer.position() + HEADER_BYTES + payload.length + 4L));
+            }
+            writeRecord(buffer, payload);
+            records++;
+        } catch (IOException e) {
+            log.error("任务日志写入失败 | taskId: {}", record.progress().taskId(), e);
+        }
+    }
+
+    private static void writeRecord(MappedByteBuffer target, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        int start = target.position();
+        // 先写内容和校验，最后写长度：长度非 0 即表示整条记录已完整写入
+        target.position(start + 4);
+        target.putInt((int) crc.getValue());
+        target.put(payload);
+        int end = target.position();
+        target.putInt(start, payload.length);
+        target.position(end);
+    }
+
+    private void map(long size) throws IOException {
+        int position = buffer == null ? 0 : buffer.position();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("任务日志超过单个映射区上限，请缩短压缩间隔");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.position(position);
+    }
+
+    /**
+     * 从头重放日志，重建索引；返回有效记录数
+     */
+    private int replay() {
+        int count = 0;
+        buffer.position(0);
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                log.warn("任务日志在偏移 {} 处校验失败，忽略之后的内容", start);
+                buffer.position(start);
+                break;
+            }
+            try {
+                TaskRecord record = objectMapper.readValue(payload, TaskRecord.class);
+                byTask.put(record.progress().taskId(), record);
+                byUser.computeIfAbsent(record.progress().userId(), user -> ConcurrentHashMap.newKeySet())
+                        .add(record.progress().taskId());
+                count++;
+            } catch (IOException e) {
+                log.warn("任务日志记录无法解析，跳过 | 偏移: {}", start, e);
+            }
+        }
+        // 清掉可能残留的半条记录，避免下次重放时越过结束标记
+        int end = buffer.position();
+        for (int i = end; i < Math.min(buffer.capacity(), end + HEADER_BYTES); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        records = count;
+        return count;
+    }
+
+    /**
+     * 压缩：每个任务只保留最新状态，丢弃超过保留期的终态任务
+     * <p>
+     * 序列化、写新文件与 force 都不持有追加锁；期间的追加照常写入原日志，替换前在锁内把这段尾部原样补到新文件末尾。
+     * 尾部中同一任务的记录都晚于快照中的状态（入队顺序与索引更新顺序一致），重放时以最后一条为准。
+     */
+    @Scheduled(fixedDelayString = "${export.journal.compact-interval-ms:600000}")
+    public void compact() {
+        synchronized (compactLock) {
+            long cutoff = System.currentTimeMillis() - retentionMillis;
+            for (Map.Entry<String, TaskRecord> entry : byTask.entrySet()) {
+                TaskRecord record = entry.getValue();
+                if (record.progress().isTerminal() && record.updatedAt() < cutoff && byTask.remove(entry.getKey(), record)) {
+                    byUser.computeIfPresent(record.progress().userId(), (user, tasks) -> {
+                        tasks.remove(entry.getKey());
+                        return tasks.isEmpty() ? null : tasks;
+                    });
+                }
+            }
+            int fromPosition;
+            long fromRecords;
+            synchronized (this) {
+                if (buffer == null || records <= byTask.size()) {
+                    return;
+                }
+                fromPosition = buffer.position();
+                fromRecords = records;
+            }
+            Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+            try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                List<byte[]> payloads = new ArrayList<>(byTask.size());
+                long size = HEADER_BYTES;
+                for (TaskRecord record : byTask.values()) {
+                    byte[] payload = objectMapper.writeValueAsBytes(record);
+                    payloads.add(payload);
+                    size += HEADER_BYTES + payload.length;
+                }
+                MappedByteBuffer target = out.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(initialMapSize, size * 2));
+                for (byte[] payload : payloads) {
+                    writeRecord(target, payload);
+                }
+                target.force();
+                swap(compacted, out, target, fromPosition, fromRecords, payloads.size());
+            } catch (IOException e) {
+                log.error("任务日志压缩失败，继续使用原日志", e);
+            }
+        }
+    }
+
+    /**
+     * 在追加锁内补上压缩期间的尾部并替换原日志
+     */
+    private synchronized void swap(Path compacted, FileChannel out, MappedByteBuffer target, int fromPosition,
+                                   long fromRecords, int snapshotRecords) throws IOException {
+        if (buffer == null) {
+            // 压缩期间日志已关闭
+            Files.deleteIfExists(compacted);
+            return;
+        }
+        int tailLength = buffer.position() - fromPosition;
+        if (target.remaining() < tailLength + HEADER_BYTES) {
+            int position = target.position();
+            target = out.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max((long) target.capacity() * 2, (long) position + tailLength + HEADER_BYTES));
+            target.position(position);
+        }
+        ByteBuffer tail = buffer.duplicate();
+        tail.position(fromPosition).limit(fromPosition + tailLength);
+        target.put(tail);
+        long before = records;
+        int position = target.position();
+
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        closeChannel();
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        lock = channel.tryLock();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        buffer.position(position);
+        records = snapshotRecords + (before - fromRecords);
+        log.info("任务日志压缩完成 | 记录: {} -> {}, 大小: {} 字节", before, records, position);
+    }
+
+    /**
+     * 日志统计
+     */
+    public record JournalStats(int tasks, int users, long records, long bytes) {
+    }
+
+    public synchronized JournalStats stats() {
+        return new JournalStats(byTask.size(), byUser.size(), records, buffer == null ? 0 : buffer.position());
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        TaskRecord record;
+        while ((record = appends.poll()) != null) {
+            append(record);
+        }
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        try {
+            if (lock != null && lock.isValid()) {
+                lock.release();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.warn("关闭任务日志失败", e);
+        }
+        lock = null;
+        channel = null;
+    }
+}
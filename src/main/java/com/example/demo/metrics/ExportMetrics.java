@@ -0,0 +1,57 @@
+package com.example.demo.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 导出任务指标
+ * <p>
+ * - export.step.duration：相邻两批写入（进度回调）之间的耗时；
+ * - export.duration{outcome}：从提交到终态（completed / failed / cancelled）的端到端耗时，含排队时间。
+ * Timer 在构造时注册，记录时不再查找或分配。
+ */
+@Component
+public class ExportMetrics {
+
+    private final Timer step;
+    private final Timer completed;
+    private final Timer failed;
+    private final Timer cancelled;
+
+    public ExportMetrics(MeterRegistry registry) {
+        this.step = Timer.builder("export.step.duration")
+                .description("导出单批写入耗时")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.completed = endToEnd(registry, "completed");
+        this.failed = endToEnd(registry, "failed");
+        this.cancelled = endToEnd(registry, "cancelled");
+    }
+
+    private static Timer endToEnd(MeterRegistry registry, String outcome) {
+        return Timer.builder("export.duration")
+                .description("导出任务从提交到结束的耗时")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void recordStep(long nanos) {
+        step.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param status 终态：completed / failed / cancelled
+     */
+    public void recordFinished(String status, long nanos) {
+        Timer timer = switch (status) {
+            case "completed" -> completed;
+            case "cancelled" -> cancelled;
+            default -> failed;
+        };
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
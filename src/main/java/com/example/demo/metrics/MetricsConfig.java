@@ -0,0 +1,127 @@
+package com.example.demo.metrics;
+
+import com.example.demo.export.ExportResultCache;
+import com.example.demo.sink.UserSinkRegistry;
+import com.example.demo.thread.ExportTaskDispatcher;
+import com.example.demo.thread.FairExportScheduler;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 组件自身只维护计数（原子变量 / LongAdder），这里把它们注册为指标，在采集时读取
+ * <p>
+ * 推送路径上只有计数器自增，不查找、不分配 Meter。
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * 用户进度 Sink：数量、订阅者数、缓冲占用、按 EmitResult 分类的推送结果
+     */
+    @Bean
+    public MeterBinder userSinkMetrics(UserSinkRegistry userSinkRegistry) {
+        return registry -> {
+            Gauge.builder("sse.sinks", userSinkRegistry, sinks -> sinks.stats().size())
+                    .description("当前用户进度 Sink 数")
+                    .register(registry);
+            Gauge.builder("sse.sink.subscribers", userSinkRegistry, UserSinkRegistry::subscriberCount)
+                    .description("订阅用户进度 Sink 的连接数")
+                    .register(registry);
+            Gauge.builder("sse.sink.buffer.events", userSinkRegistry, UserSinkRegistry::bufferedEvents)
+                    .description("所有订阅者缓冲中待发送的事件数")
+                    .register(registry);
+            Gauge.builder("sse.sink.buffer.max.events", userSinkRegistry, UserSinkRegistry::maxBufferedEvents)
+                    .description("单个订阅者缓冲的最大占用")
+                    .register(registry);
+            Gauge.builder("sse.sink.buffer.capacity", userSinkRegistry, UserSinkRegistry::bufferSize)
+                    .description("单个订阅者的缓冲容量")
+                    .register(registry);
+            FunctionCounter.builder("sse.sink.overflow", userSinkRegistry, UserSinkRegistry::droppedCount)
+                    .description("订阅者发送队列已满时的处理次数")
+                    .tag("action", "dropped")
+                    .register(registry);
+            FunctionCounter.builder("sse.sink.overflow", userSinkRegistry, UserSinkRegistry::conflatedCount)
+                    .description("订阅者发送队列已满时的处理次数")
+                    .tag("action", "conflated")
+                    .register(registry);
+            FunctionCounter.builder("sse.sink.slow.consumer.evictions", userSinkRegistry,
+                            UserSinkRegistry::slowConsumerEvictionCount)
+                    .description("因慢消费被驱逐的连接数")
+                    .register(registry);
+            for (Sinks.EmitResult result : Sinks.EmitResult.values()) {
+                FunctionCounter.builder("sse.sink.emit", userSinkRegistry, sinks -> sinks.emitCount(result))
+                        .description("向用户进度 Sink 推送的结果")
+                        .tag("result", result.name())
+                        .register(registry);
+            }
+        };
+    }
+
+    /**
+     * 分区线程池（活跃线程、队列深度、窃取次数等）与派发 / 排队拒绝次数
+     * <p>
+     * exportTaskExecutor 是 ThreadPoolTaskExecutor，由 Spring Boot 按 Bean 名自动注册 executor.* 指标，这里不再重复绑定。
+     */
+    @Bean
+    public MeterBinder exportExecutorMetrics(@Qualifier("exportPartitionPool") ForkJoinPool exportPartitionPool,
+                                             ExportTaskDispatcher dispatcher,
+                                             FairExportScheduler scheduler) {
+        return registry -> {
+            new ExecutorServiceMetrics(exportPartitionPool, "exportPartitionPool", Tags.empty()).bindTo(registry);
+            FunctionCounter.builder("export.rejected", dispatcher, ExportTaskDispatcher::rejectedCount)
+                    .description("导出任务被拒绝的次数")
+                    .tag("stage", "dispatcher")
+                    .register(registry);
+            FunctionCounter.builder("export.rejected", scheduler, FairExportScheduler::rejectedCount)
+                    .description("导出任务被拒绝的次数")
+                    .tag("stage", "scheduler")
+                    .register(registry);
+            Gauge.builder("export.scheduler.running", scheduler, s -> s.stats().running())
+                    .description("正在执行的导出任务数")
+                    .register(registry);
+            Gauge.builder("export.scheduler.queued", scheduler, s -> s.stats().queued())
+                    .description("排队等待执行槽位的导出任务数")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * 导出结果去重缓存：按结果分类的提交次数、复用率与占用字节数
+     */
+    @Bean
+    public MeterBinder exportCacheMetrics(ExportResultCache cache) {
+        return registry -> {
+            FunctionCounter.builder("export.cache.requests", cache, ExportResultCache::hitCount)
+                    .description("导出提交的去重结果")
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("export.cache.requests", cache, ExportResultCache::inFlightHitCount)
+                    .description("导出提交的去重结果")
+                    .tag("result", "in-flight")
+                    .register(registry);
+            FunctionCounter.builder("export.cache.requests", cache, ExportResultCache::missCount)
+                    .description("导出提交的去重结果")
+                    .tag("result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("export.cache.requests", cache, ExportResultCache::bypassCount)
+                    .description("导出提交的去重结果")
+                    .tag("result", "bypass")
+                    .register(registry);
+            Gauge.builder("export.cache.hit.ratio", cache, c -> c.stats().hitRate())
+                    .description("导出提交复用已有结果或在途任务的比例")
+                    .register(registry);
+            Gauge.builder("export.cache.bytes", cache, c -> c.stats().bytes())
+                    .description("导出结果缓存占用的磁盘字节数")
+                    .register(registry);
+        };
+    }
+}
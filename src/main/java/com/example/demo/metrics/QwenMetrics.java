@@ -0,0 +1,69 @@
+package com.example.demo.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Qwen 上游流式调用指标
+ * <p>
+ * - qwen.stream.ttft：发起流式调用到收到首个片段的耗时；
+ * - qwen.stream.tokens.per.second：单次流式回答的片段速率（增量输出下每个片段约为一两个 token）；
+ * - qwen.stream.requests{outcome}：completed / error / cancelled，错误率 = error / 总数。
+ */
+@Component
+public class QwenMetrics {
+
+    private final Timer timeToFirstToken;
+    private final DistributionSummary tokensPerSecond;
+    private final Counter completed;
+    private final Counter error;
+    private final Counter cancelled;
+
+    public QwenMetrics(MeterRegistry registry) {
+        this.timeToFirstToken = Timer.builder("qwen.stream.ttft")
+                .description("Qwen 流式调用首片段耗时")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.tokensPerSecond = DistributionSummary.builder("qwen.stream.tokens.per.second")
+                .description("Qwen 流式回答的片段速率")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.completed = outcome(registry, "completed");
+        this.error = outcome(registry, "error");
+        this.cancelled = outcome(registry, "cancelled");
+    }
+
+    private static Counter outcome(MeterRegistry registry, String outcome) {
+        return Counter.builder("qwen.stream.requests")
+                .description("Qwen 上游流式调用次数")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    public void recordFirstToken(long nanos) {
+        timeToFirstToken.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 流正常结束：记录片段速率
+     */
+    public void recordCompleted(int chunks, long streamNanos) {
+        completed.increment();
+        if (chunks > 0 && streamNanos > 0) {
+            tokensPerSecond.record(chunks * 1e9 / streamNanos);
+        }
+    }
+
+    public void recordError() {
+        error.increment();
+    }
+
+    public void recordCancelled() {
+        cancelled.increment();
+    }
+}
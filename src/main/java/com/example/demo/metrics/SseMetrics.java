@@ -0,0 +1,55 @@
+package com.example.demo.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SSE 连接指标：按端点统计当前活跃的订阅者（连接）数
+ * <p>
+ * 指标：sse.subscribers.active{endpoint}
+ */
+@Component
+public class SseMetrics {
+
+    private final MeterRegistry registry;
+
+    // 端点 -> 活跃连接数
+    private final Map<String, AtomicInteger> active = new ConcurrentHashMap<>();
+
+    public SseMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 在订阅时加一、结束（完成 / 出错 / 断开）时减一
+     */
+    public <T> Flux<T> track(String endpoint, Flux<T> stream) {
+        AtomicInteger counter = active.computeIfAbsent(endpoint, this::register);
+        return stream
+                .doOnSubscribe(subscription -> counter.incrementAndGet())
+                .doFinally(signal -> counter.decrementAndGet());
+    }
+
+    /**
+     * 当前活跃连接数
+     */
+    public int activeSubscribers(String endpoint) {
+        AtomicInteger counter = active.get(endpoint);
+        return counter == null ? 0 : counter.get();
+    }
+
+    private AtomicInteger register(String endpoint) {
+        AtomicInteger counter = new AtomicInteger();
+        Gauge.builder("sse.subscribers.active", counter, AtomicInteger::get)
+                .description("当前活跃的 SSE 连接数")
+                .tag("endpoint", endpoint)
+                .register(registry);
+        return counter;
+    }
+}
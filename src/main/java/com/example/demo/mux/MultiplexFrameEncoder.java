@@ -0,0 +1,112 @@
+package com.example.demo.mux;
+
+import com.example.demo.sink.ProgressEvent;
+import com.example.demo.sink.ProgressFrameEncoder;
+import com.example.demo.sink.SharedClock;
+import com.example.demo.sink.SseFrame;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+/**
+ * 多路复用连接的 SSE 帧编码器：每个事件的 data 都是带主题标签的信封
+ * <p>
+ * 帧格式：event:{事件名}\ndata:{"topic":"{主题}","id":{序号},"data":{原始 JSON}}\n\n（id 仅进度事件有）。
+ * 事件名沿用各来源原有的命名（progress / complete / error / message / queued / clock），
+ * 主题结束时发送 end 事件。主题名限定为安全字符，拼接信封时无需转义。
+ */
+@Component
+public class MultiplexFrameEncoder {
+
+    /**
+     * 主题名允许的字符（qwen 主题的 name 部分同样适用）
+     */
+    public static final Pattern TOPIC_NAME = Pattern.compile("[A-Za-z0-9_.:-]{1,64}");
+
+    private static final byte[] RECONNECT_DATA = "{\"reason\":\"slow-consumer\"}".getBytes(StandardCharsets.US_ASCII);
+
+    private final ObjectMapper objectMapper;
+    private final ProgressFrameEncoder progressEncoder;
+
+    // 时钟帧按 tick 缓存，所有多路连接共享同一份编码结果
+    private final AtomicReference<ClockFrame> lastClock = new AtomicReference<>();
+
+    public MultiplexFrameEncoder(ObjectMapper objectMapper, ProgressFrameEncoder progressEncoder) {
+        this.objectMapper = objectMapper;
+        this.progressEncoder = progressEncoder;
+    }
+
+    /**
+     * 连接建立后的首个事件：告知客户端会话ID，后续订阅 / 退订都以它为准
+     */
+    public SseFrame session(String sessionId) {
+        return new SseFrame(("event:session\ndata:{\"sessionId\":\"" + sessionId + "\"}\n\n")
+                .getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public SseFrame progress(String topic, ProgressEvent event) {
+        if (event.progress() == null) {
+            // 慢连接被驱逐：客户端应带上最后收到的 id 重新订阅进度主题
+            return frame(topic, "reconnect", -1, RECONNECT_DATA);
+        }
+        return frame(topic, ProgressFrameEncoder.eventName(event.progress().status()), event.seq(),
+                progressEncoder.encodeData(event.progress()));
+    }
+
+    public SseFrame clock(String topic, SharedClock.Tick tick) {
+        ClockFrame cached = lastClock.get();
+        if (cached != null && cached.sequence == tick.sequence() && cached.topic.equals(topic)) {
+            return cached.frame;
+        }
+        SseFrame frame = frame(topic, "clock", -1, json(tick.time()));
+        lastClock.set(new ClockFrame(tick.sequence(), topic, frame));
+        return frame;
+    }
+
+    /**
+     * Qwen 回答片段；片段文本按 JSON 字符串编码
+     */
+    public SseFrame qwen(String topic, ServerSentEvent<String> event) {
+        String name = event.event() != null ? event.event() : "message";
+        return frame(topic, name, -1, json(event.data()));
+    }
+
+    /**
+     * 主题结束
+     *
+     * @param reason complete / error / unsubscribed
+     */
+    public SseFrame end(String topic, String reason) {
+        return frame(topic, "end", -1, ("\"" + reason + "\"").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private SseFrame frame(String topic, String event, long id, byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + topic.length() + 64);
+        out.writeBytes(("event:" + event + "\ndata:{\"topic\":\"" + topic + "\"")
+                .getBytes(StandardCharsets.UTF_8));
+        if (id >= 0) {
+            out.writeBytes((",\"id\":" + id).getBytes(StandardCharsets.US_ASCII));
+        }
+        out.writeBytes(",\"data\":".getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes(data);
+        out.writeBytes("}\n\n".getBytes(StandardCharsets.US_ASCII));
+        return new SseFrame(out.toByteArray());
+    }
+
+    private byte[] json(String value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("多路复用事件序列化失败", e);
+        }
+    }
+
+    private record ClockFrame(long sequence, String topic, SseFrame frame) {
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.demo.mux;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 多路复用连接注册表：会话ID -> 连接
+ * <p>
+ * 连接在 SSE 流订阅时创建、断开时移除；订阅 / 退订请求按会话ID找到连接，并校验 userId。
+ */
+@Component
+public class MultiplexRegistry {
+
+    private final int topicBuffer;
+    private final int maxTopics;
+    private final MultiplexFrameEncoder encoder;
+
+    private final Map<String, MultiplexSession> sessions = new ConcurrentHashMap<>();
+
+    public MultiplexRegistry(@Value("${sse.mux.topic-buffer:32}") int topicBuffer,
+                             @Value("${sse.mux.max-topics:16}") int maxTopics,
+                             MultiplexFrameEncoder encoder) {
+        if (maxTopics <= 0) {
+            throw new IllegalArgumentException("sse.mux.max-topics 必须大于0");
+        }
+        this.topicBuffer = topicBuffer;
+        this.maxTopics = maxTopics;
+        this.encoder = encoder;
+    }
+
+    /**
+     * 为一个新连接创建会话
+     */
+    public MultiplexSession open(String userId) {
+        String sessionId = UUID.randomUUID().toString();
+        MultiplexSession session = new MultiplexSession(sessionId, userId, topicBuffer, maxTopics, encoder,
+                () -> sessions.remove(sessionId));
+        sessions.put(sessionId, session);
+        return session;
+    }
+
+    /**
+     * 查找会话
+     *
+     * @return 会话不存在（已断开）或不属于该用户时返回 null
+     */
+    public MultiplexSession get(String sessionId, String userId) {
+        MultiplexSession session = sessions.get(sessionId);
+        return session != null && session.userId().equals(userId) ? session : null;
+    }
+
+    /**
+     * 当前多路复用连接数
+     */
+    public int sessionCount() {
+        return sessions.size();
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.demo.mux;
+
+import com.example.demo.sink.SseFrame;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一个多路复用 SSE 连接：同一连接上交错推送多个主题（任务进度 / 具名 Qwen 回答 / 时钟）
+ * <p>
+ * 设计说明：
+ * - 每个主题一个有界队列，按队列剩余容量向上游请求（信用制），连接写不动时上游按各自的背压策略处理，不在这里无界缓冲；
+ * - 排空时按主题轮询，每轮每个主题最多发送一帧，话多的 LLM 流不会饿死进度事件；
+ * - 排空采用 WIP 计数（同一时刻只有一个线程向下游写出），主题的订阅 / 退订可在任意线程调用；
+ * - 主题结束（完成 / 出错 / 退订）时发送 end 事件并释放上游订阅；连接断开时释放全部主题。
+ */
+public final class MultiplexSession {
+
+    private static final Logger log = LoggerFactory.getLogger(MultiplexSession.class);
+
+    private static final String UNSUBSCRIBED = "unsubscribed";
+
+    /**
+     * 订阅结果
+     */
+    public enum SubscribeResult {
+        SUBSCRIBED,
+        /** 主题已订阅 */
+        DUPLICATE,
+        /** 超出单连接主题数上限 */
+        LIMIT_EXCEEDED,
+        /** 连接已断开 */
+        CLOSED
+    }
+
+    private final String id;
+    private final String userId;
+    private final int topicBuffer;
+    private final int maxTopics;
+    private final MultiplexFrameEncoder encoder;
+    private final Runnable onClose;
+
+    // 主题名 -> 主题；轮询顺序（只在排空线程中移除）
+    private final Map<String, Topic> topics = new ConcurrentHashMap<>();
+    private final List<Topic> order = new CopyOnWriteArrayList<>();
+    // 连接级事件（会话ID、主题结束），优先于主题数据发送
+    private final Queue<SseFrame> control = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile FluxSink<SseFrame> downstream;
+    private volatile boolean closed;
+
+    // 轮询位置，仅在持有 WIP 的线程中读写
+    private int cursor;
+
+    MultiplexSession(String id, String userId, int topicBuffer, int maxTopics,
+                     MultiplexFrameEncoder encoder, Runnable onClose) {
+        this.id = id;
+        this.userId = userId;
+        this.topicBuffer = Math.max(1, topicBuffer);
+        this.maxTopics = maxTopics;
+        this.encoder = encoder;
+        this.onClose = onClose;
+        control.offer(encoder.session(id));
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public String userId() {
+        return userId;
+    }
+
+    /**
+     * 连接的输出帧流（只能订阅一次）；首帧为 session 事件
+     */
+    public Flux<SseFrame> frames() {
+        return Flux.create(sink -> {
+            downstream = sink;
+            sink.onRequest(n -> drain());
+            sink.onDispose(this::close);
+            drain();
+        });
+    }
+
+    /**
+     * 订阅一个主题，source 的每一帧都应已带上该主题标签
+     */
+    public SubscribeResult subscribe(String topicName, Flux<SseFrame> source) {
+        if (closed) {
+            return SubscribeResult.CLOSED;
+        }
+        Topic topic = new Topic(topicName);
+        if (topics.putIfAbsent(topicName, topic) != null) {
+            return SubscribeResult.DUPLICATE;
+        }
+        if (topics.size() > maxTopics) {
+            topics.remove(topicName, topic);
+            return SubscribeResult.LIMIT_EXCEEDED;
+        }
+        order.add(topic);
+        source.subscribe(topic);
+        if (closed) {
+            topic.dispose();
+            return SubscribeResult.CLOSED;
+        }
+        log.debug("多路连接 {} 订阅主题 {}", id, topicName);
+        return SubscribeResult.SUBSCRIBED;
+    }
+
+    /**
+     * 退订主题：丢弃尚未发送的帧，随后发送 end 事件
+     *
+     * @return 主题不存在时返回 false
+     */
+    public boolean unsubscribe(String topicName) {
+        Topic topic = topics.get(topicName);
+        if (topic == null || topic.endReason != null) {
+            return false;
+        }
+        topic.endReason = UNSUBSCRIBED;
+        topic.dispose();
+        // 立即释放主题名，允许重新订阅；旧主题的 end 事件仍会发送
+        topics.remove(topicName, topic);
+        drain();
+        return true;
+    }
+
+    /**
+     * 当前订阅中的主题数
+     */
+    public int topicCount() {
+        return topics.size();
+    }
+
+    private void close() {
+        closed = true;
+        topics.values().forEach(Topic::dispose);
+        topics.clear();
+        onClose.run();
+        log.debug("多路连接 {} 已断开", id);
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            FluxSink<SseFrame> sink = downstream;
+            if (sink != null && !closed) {
+                while (sink.requestedFromDownstream() > 0 && !sink.isCancelled()) {
+                    SseFrame frame = control.poll();
+                    if (frame == null) {
+                        frame = nextFair();
+                    }
+                    if (frame == null) {
+                        break;
+                    }
+                    sink.next(frame);
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * 从下一个有数据的主题取一帧（轮询），并向该主题上游补充一个请求额度
+     */
+    private SseFrame nextFair() {
+        int size = order.size();
+        for (int i = 0; i < size; i++) {
+            if (cursor >= order.size()) {
+                cursor = 0;
+            }
+            Topic topic = order.get(cursor);
+            // 先读结束标记再取队列：标记已设置时上游的全部帧都已入队
+            String reason = topic.endReason;
+            if (!UNSUBSCRIBED.equals(reason)) {
+                SseFrame frame = topic.queue.poll();
+                if (frame != null) {
+                    cursor++;
+                    if (reason == null) {
+                        topic.request(1);
+                    }
+                    return frame;
+                }
+            }
+            if (reason != null) {
+                // 已结束且剩余帧已发送完（或已退订）：移除并通知客户端，轮询位置自然指向下一个主题
+                order.remove(cursor);
+                topics.remove(topic.name, topic);
+                topic.queue.clear();
+                return encoder.end(topic.name, reason);
+            }
+            cursor++;
+        }
+        return null;
+    }
+
+    private final class Topic extends BaseSubscriber<SseFrame> {
+
+        final String name;
+        final Queue<SseFrame> queue = new ConcurrentLinkedQueue<>();
+        // null 表示仍在订阅中；否则为结束原因（complete / error / unsubscribed）
+        volatile String endReason;
+
+        Topic(String name) {
+            this.name = name;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            subscription.request(topicBuffer);
+        }
+
+        @Override
+        protected void hookOnNext(SseFrame frame) {
+            queue.offer(frame);
+            drain();
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            endReason = "complete";
+            drain();
+        }
+
+        @Override
+        protected void hookOnError(Throwable error) {
+            log.warn("多路连接 {} 的主题 {} 出错: {}", id, name, error.toString());
+            endReason = "error";
+            drain();
+        }
+    }
+}
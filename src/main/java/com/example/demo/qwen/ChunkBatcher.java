@@ -0,0 +1,193 @@
+package com.example.demo.qwen;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * 流式片段合并
+ * <p>
+ * 设计说明：
+ * - 开启增量输出时模型每次只返回一两个 token，逐个推送会让每个片段都产生一次 SSE 帧、flush 和系统调用；
+ * - 连续的 "message" 事件在时间窗口内合并为一帧，窗口到期或累计字节达到上限时立即发送，以先到者为准；
+ * - 每个流的第一个片段不做等待，直接发送，保证首 token 延迟（TTFT）不变；
+ * - 其他事件（如 "error"）先冲刷已合并的内容再原样透传，保持顺序；
+ * - 统计输入片段数、输出帧数以及片段因合并而额外等待的时间。
+ * window 小于等于 0 时不做合并。
+ */
+@Component
+public class ChunkBatcher {
+
+    private static final String MESSAGE = "message";
+
+    private final long windowNanos;
+    private final int maxBytes;
+
+    private final AtomicLong fragmentsIn = new AtomicLong();
+    private final AtomicLong framesOut = new AtomicLong();
+    private final AtomicLong addedLatencyNanos = new AtomicLong();
+    private final LongAccumulator maxAddedLatencyNanos = new LongAccumulator(Long::max, 0);
+
+    public ChunkBatcher(@Value("${qwen.batch.window:30ms}") Duration window,
+                        @Value("${qwen.batch.max-bytes:256}") int maxBytes) {
+        this.windowNanos = window.toNanos();
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 对一个 SSE 事件流做片段合并
+     */
+    public Flux<ServerSentEvent<String>> batch(Flux<ServerSentEvent<String>> source) {
+        if (windowNanos <= 0) {
+            return source;
+        }
+        return Flux.create(sink -> {
+            Batch batch = new Batch(sink);
+            Disposable upstream = source.subscribe(batch::onNext, batch::onError, batch::onComplete);
+            sink.onDispose(() -> {
+                upstream.dispose();
+                batch.cancelTimer();
+            });
+        });
+    }
+
+    /**
+     * 合并统计
+     *
+     * @param fragmentsIn           收到的片段数
+     * @param framesOut             发出的帧数
+     * @param framesSaved           因合并而少发的帧数
+     * @param avgAddedLatencyMillis 每个片段平均额外等待时间
+     * @param maxAddedLatencyMillis 单个片段最长额外等待时间
+     */
+    public record BatchStats(long fragmentsIn, long framesOut, long framesSaved,
+                             double avgAddedLatencyMillis, double maxAddedLatencyMillis) {
+    }
+
+    public BatchStats stats() {
+        long in = fragmentsIn.get();
+        long out = framesOut.get();
+        double avg = in == 0 ? 0 : addedLatencyNanos.get() / (double) in / 1_000_000;
+        return new BatchStats(in, out, in - out, avg, maxAddedLatencyNanos.get() / 1_000_000.0);
+    }
+
+    /**
+     * 单个流的合并状态；上游信号与定时冲刷可能并发，统一在实例锁内处理
+     */
+    private final class Batch {
+        final FluxSink<ServerSentEvent<String>> sink;
+        final StringBuilder pending = new StringBuilder();
+        int pendingFragments;
+        int pendingBytes;
+        long firstArrivalNanos;
+        long arrivalNanosSum;
+        boolean firstSent;
+        Disposable timer;
+
+        Batch(FluxSink<ServerSentEvent<String>> sink) {
+            this.sink = sink;
+        }
+
+        synchronized void onNext(ServerSentEvent<String> event) {
+            String data = event.data();
+            fragmentsIn.incrementAndGet();
+            if (!MESSAGE.equals(event.event()) || data == null || event.id() != null) {
+                // 其他事件不参与合并：先冲刷已合并内容再透传
+                flush();
+                send(event);
+                return;
+            }
+            if (!firstSent) {
+                // 首个非空片段直接发送，保证首 token 延迟
+                firstSent = !data.isEmpty();
+                send(event);
+                return;
+            }
+            long now = System.nanoTime();
+            if (pendingFragments == 0) {
+                firstArrivalNanos = now;
+            }
+            pending.append(data);
+            pendingFragments++;
+            pendingBytes += utf8Length(data);
+            arrivalNanosSum += now;
+            if (pendingBytes >= maxBytes) {
+                flush();
+            } else if (timer == null) {
+                timer = Schedulers.parallel().schedule(this::flushOnTimer, windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        synchronized void onError(Throwable error) {
+            flush();
+            sink.error(error);
+        }
+
+        synchronized void onComplete() {
+            flush();
+            sink.complete();
+        }
+
+        synchronized void flushOnTimer() {
+            timer = null;
+            flush();
+        }
+
+        synchronized void cancelTimer() {
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+        }
+
+        private void flush() {
+            if (pendingFragments == 0) {
+                return;
+            }
+            cancelTimer();
+            long now = System.nanoTime();
+            addedLatencyNanos.addAndGet(now * pendingFragments - arrivalNanosSum);
+            maxAddedLatencyNanos.accumulate(now - firstArrivalNanos);
+            send(ServerSentEvent.<String>builder()
+                    .event(MESSAGE)
+                    .data(pending.toString())
+                    .build());
+            pending.setLength(0);
+            pendingFragments = 0;
+            pendingBytes = 0;
+            arrivalNanosSum = 0;
+        }
+
+        private void send(ServerSentEvent<String> event) {
+            framesOut.incrementAndGet();
+            sink.next(event);
+        }
+    }
+
+    static int utf8Length(CharSequence text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,335 @@
+package com.example.demo.qwen;
+
+import com.alibaba.dashscope.common.Message;
+import com.alibaba.dashscope.common.Role;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多轮对话历史存储
+ * <p>
+ * 设计说明：
+ * - 每个会话保存若干轮（问题, 回答），内容以 UTF-8 字节数组保存，ASCII 为主的文本比 String 更省内存；
+ * - 单个会话按轮数和字节数限制，超出时最早的轮次移出历史，只把问题摘要并入滚动摘要（digest）；
+ * - 构造请求时从最近一轮往前取，直到达到 token 预算；预算外的轮次只以摘要形式出现，历史不会无限重发；
+ * - 空闲超时的会话定期回收，会话总数超出上限时淘汰最久未访问的会话；
+ * - token 数为估算值：CJK 字符按 1 个 token，其他字符按 4 个一组。
+ */
+@Component
+public class ConversationStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationStore.class);
+
+    // 每个会话 / 每轮的固定开销估算（对象头、数组、引用等）
+    private static final int SESSION_OVERHEAD = 160;
+    private static final int TURN_OVERHEAD = 64;
+    // 摘要中每个被移出的问题最多保留的字符数
+    private static final int DIGEST_SNIPPET_CHARS = 60;
+
+    private final int maxSessions;
+    private final int maxTurns;
+    private final int maxBytesPerSession;
+    private final int tokenBudget;
+    private final int maxDigestBytes;
+    private final long idleTtlNanos;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicLong promptsBuilt = new AtomicLong();
+    private final AtomicLong historyTokens = new AtomicLong();
+    private final AtomicLong sentHistoryTokens = new AtomicLong();
+    private final AtomicLong turnsTruncated = new AtomicLong();
+    private final AtomicLong idleEvictions = new AtomicLong();
+    private final AtomicLong capacityEvictions = new AtomicLong();
+
+    public ConversationStore(@Value("${qwen.session.max-sessions:10000}") int maxSessions,
+                             @Value("${qwen.session.max-turns:50}") int maxTurns,
+                             @Value("${qwen.session.max-bytes:65536}") int maxBytesPerSession,
+                             @Value("${qwen.session.token-budget:2000}") int tokenBudget,
+                             @Value("${qwen.session.max-digest-bytes:1024}") int maxDigestBytes,
+                             @Value("${qwen.session.idle-ttl:30m}") Duration idleTtl) {
+        this.maxSessions = maxSessions;
+        this.maxTurns = maxTurns;
+        this.maxBytesPerSession = maxBytesPerSession;
+        this.tokenBudget = tokenBudget;
+        this.maxDigestBytes = maxDigestBytes;
+        this.idleTtlNanos = idleTtl.toNanos();
+    }
+
+    /**
+     * 构造一次请求的消息列表：系统提示词 + 摘要（如有）+ 预算内的最近历史 + 本轮问题
+     */
+    public List<Message> buildPrompt(String sessionId, String systemPrompt, String question) {
+        Session session = session(sessionId);
+        List<Message> messages = new ArrayList<>();
+        messages.add(message(Role.SYSTEM, systemPrompt));
+        synchronized (session) {
+            session.touch();
+            int budget = tokenBudget - estimateTokens(question);
+            List<Turn> included = new ArrayList<>();
+            int fullTokens = 0;
+            int sentTokens = 0;
+            boolean full = false;
+            for (Iterator<Turn> it = session.turns.descendingIterator(); it.hasNext(); ) {
+                Turn turn = it.next();
+                fullTokens += turn.tokens;
+                if (!full && sentTokens + turn.tokens <= budget) {
+                    sentTokens += turn.tokens;
+                    included.add(turn);
+                } else {
+                    full = true;
+                }
+            }
+            if (session.digest.length > 0 || included.size() < session.turns.size()) {
+                StringBuilder digest = new StringBuilder("Earlier in this conversation the user asked about: ");
+                digest.append(new String(session.digest, StandardCharsets.UTF_8));
+                int skipped = session.turns.size() - included.size();
+                Iterator<Turn> it = session.turns.iterator();
+                for (int i = 0; i < skipped; i++) {
+                    appendSnippet(digest, it.next().question());
+                }
+                messages.add(message(Role.SYSTEM, digest.toString()));
+            }
+            for (int i = included.size() - 1; i >= 0; i--) {
+                Turn turn = included.get(i);
+                messages.add(message(Role.USER, turn.question()));
+                messages.add(message(Role.ASSISTANT, turn.answer()));
+            }
+            promptsBuilt.incrementAndGet();
+            historyTokens.addAndGet(fullTokens + session.truncatedTokens);
+            sentHistoryTokens.addAndGet(sentTokens);
+        }
+        messages.add(message(Role.USER, question));
+        return messages;
+    }
+
+    /**
+     * 记录一轮完整的问答
+     */
+    public void append(String sessionId, String question, String answer) {
+        Session session = session(sessionId);
+        synchronized (session) {
+            session.touch();
+            session.add(new Turn(question.getBytes(StandardCharsets.UTF_8), answer.getBytes(StandardCharsets.UTF_8),
+                    estimateTokens(question) + estimateTokens(answer)));
+            while (session.turns.size() > maxTurns || (session.turns.size() > 1 && session.bytes > maxBytesPerSession)) {
+                truncateOldest(session);
+            }
+        }
+    }
+
+    /**
+     * 删除会话
+     */
+    public boolean remove(String sessionId) {
+        return sessions.remove(sessionId) != null;
+    }
+
+    /**
+     * 定期回收空闲会话
+     */
+    @Scheduled(fixedDelayString = "${qwen.session.sweep-interval-ms:60000}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+            if (now - entry.getValue().lastAccessNanos > idleTtlNanos && sessions.remove(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            idleEvictions.addAndGet(evicted);
+            log.info("回收空闲会话 {} 个，当前数量: {}", evicted, sessions.size());
+        }
+    }
+
+    private Session session(String sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session != null) {
+            return session;
+        }
+        if (sessions.size() >= maxSessions) {
+            evictForCapacity();
+        }
+        return sessions.computeIfAbsent(sessionId, id -> new Session());
+    }
+
+    /**
+     * 会话数达到上限时淘汰最久未访问的 10%
+     */
+    private synchronized void evictForCapacity() {
+        int excess = sessions.size() - maxSessions * 9 / 10;
+        if (excess <= 0) {
+            return;
+        }
+        List<Map.Entry<String, Session>> oldest = new ArrayList<>(sessions.entrySet());
+        oldest.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccessNanos));
+        for (int i = 0; i < excess && i < oldest.size(); i++) {
+            if (sessions.remove(oldest.get(i).getKey(), oldest.get(i).getValue())) {
+                capacityEvictions.incrementAndGet();
+            }
+        }
+        log.warn("会话数达到上限 {}，淘汰最久未访问的会话，当前数量: {}", maxSessions, sessions.size());
+    }
+
+    /**
+     * 移出最早的一轮：问题摘要并入滚动摘要，摘要超出上限时丢弃最早的部分
+     */
+    private void truncateOldest(Session session) {
+        Turn oldest = session.removeFirst();
+        StringBuilder digest = new StringBuilder(new String(session.digest, StandardCharsets.UTF_8));
+        appendSnippet(digest, oldest.question());
+        byte[] bytes = digest.toString().getBytes(StandardCharsets.UTF_8);
+        while (bytes.length > maxDigestBytes) {
+            int cut = digest.indexOf("; ");
+            if (cut < 0) {
+                digest.setLength(0);
+            } else {
+                digest.delete(0, cut + 2);
+            }
+            bytes = digest.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        session.bytes += bytes.length - session.digest.length;
+        session.digest = bytes;
+        session.truncatedTokens += oldest.tokens;
+        turnsTruncated.incrementAndGet();
+    }
+
+    private static void appendSnippet(StringBuilder digest, String question) {
+        if (!digest.isEmpty() && !digest.toString().endsWith(": ")) {
+            digest.append("; ");
+        }
+        String snippet = question.strip();
+        digest.append(snippet.length() > DIGEST_SNIPPET_CHARS ? snippet.substring(0, DIGEST_SNIPPET_CHARS) + "…" : snippet);
+    }
+
+    private static Message message(Role role, String content) {
+        return Message.builder().role(role.getValue()).content(content).build();
+    }
+
+    /**
+     * 估算文本的 token 数：CJK 字符各算 1 个，其余字符每 4 个算 1 个
+     */
+    static int estimateTokens(String text) {
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x2E80 && c <= 0x9FFF || c >= 0xAC00 && c <= 0xD7AF || c >= 0xF900 && c <= 0xFAFF) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    /**
+     * 单个会话统计
+     *
+     * @param turns         历史轮数
+     * @param bytes         估算占用字节数
+     * @param historyTokens 历史（含已移出轮次）的估算 token 数
+     * @param digestBytes   滚动摘要字节数
+     * @param idleMillis    空闲时长
+     */
+    public record SessionStats(String sessionId, int turns, long bytes, long historyTokens, int digestBytes,
+                               long idleMillis) {
+    }
+
+    /**
+     * 存储整体统计
+     *
+     * @param tokensSaved 因预算截断而少发送的历史 token 数（累计）
+     */
+    public record StoreStats(int sessions, long totalBytes, long avgBytesPerSession, long maxBytesPerSession,
+                             long promptsBuilt, long historyTokens, long sentHistoryTokens, long tokensSaved,
+                             long turnsTruncated, long idleEvictions, long capacityEvictions) {
+    }
+
+    public SessionStats sessionStats(String sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            return null;
+        }
+        synchronized (session) {
+            long tokens = session.truncatedTokens;
+            for (Turn turn : session.turns) {
+                tokens += turn.tokens;
+            }
+            return new SessionStats(sessionId, session.turns.size(), session.bytes, tokens, session.digest.length,
+                    (System.nanoTime() - session.lastAccessNanos) / 1_000_000);
+        }
+    }
+
+    public StoreStats stats() {
+        long total = 0;
+        long max = 0;
+        int count = 0;
+        for (Session session : sessions.values()) {
+            long bytes = session.bytes;
+            total += bytes;
+            max = Math.max(max, bytes);
+            count++;
+        }
+        long history = historyTokens.get();
+        long sent = sentHistoryTokens.get();
+        return new StoreStats(count, total, count == 0 ? 0 : total / count, max, promptsBuilt.get(), history, sent,
+                history - sent, turnsTruncated.get(), idleEvictions.get(), capacityEvictions.get());
+    }
+
+    /**
+     * 一轮问答（UTF-8 字节）
+     */
+    private record Turn(byte[] questionBytes, byte[] answerBytes, int tokens) {
+
+        String question() {
+            return new String(questionBytes, StandardCharsets.UTF_8);
+        }
+
+        String answer() {
+            return new String(answerBytes, StandardCharsets.UTF_8);
+        }
+
+        int bytes() {
+            return questionBytes.length + answerBytes.length + TURN_OVERHEAD;
+        }
+    }
+
+    private static final class Session {
+        final ArrayDeque<Turn> turns = new ArrayDeque<>();
+        byte[] digest = new byte[0];
+        long bytes = SESSION_OVERHEAD;
+        long truncatedTokens;
+        volatile long lastAccessNanos = System.nanoTime();
+
+        void touch() {
+            lastAccessNanos = System.nanoTime();
+        }
+
+        void add(Turn turn) {
+            turns.addLast(turn);
+            bytes += turn.bytes();
+        }
+
+        Turn removeFirst() {
+            Turn turn = turns.removeFirst();
+            bytes -= turn.bytes();
+            return turn;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.demo.qwen;
+
+import com.alibaba.dashscope.aigc.generation.Generation;
+import com.alibaba.dashscope.aigc.generation.GenerationParam;
+import com.alibaba.dashscope.aigc.generation.GenerationResult;
+import com.alibaba.dashscope.exception.InputRequiredException;
+import com.alibaba.dashscope.exception.NoApiKeyException;
+import com.alibaba.dashscope.protocol.Protocol;
+import io.reactivex.Flowable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 基于 DashScope SDK 的客户端实现
+ */
+@Component
+public class DashScopeQwenClient implements QwenClient {
+
+    private final Generation gen;
+
+    public DashScopeQwenClient(@Value("${dashscope.base-url:https://dashscope.aliyuncs.com/api/v1}") String baseUrl) {
+        this.gen = new Generation(Protocol.HTTP.getValue(), baseUrl);
+    }
+
+    @Override
+    public GenerationResult call(GenerationParam param) throws NoApiKeyException, InputRequiredException {
+        return gen.call(param);
+    }
+
+    @Override
+    public Flowable<GenerationResult> streamCall(GenerationParam param) throws NoApiKeyException, InputRequiredException {
+        return gen.streamCall(param);
+    }
+}
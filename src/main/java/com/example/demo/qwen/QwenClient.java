@@ -0,0 +1,25 @@
+package com.example.demo.qwen;
+
+import com.alibaba.dashscope.aigc.generation.GenerationParam;
+import com.alibaba.dashscope.aigc.generation.GenerationResult;
+import com.alibaba.dashscope.exception.InputRequiredException;
+import com.alibaba.dashscope.exception.NoApiKeyException;
+import io.reactivex.Flowable;
+
+/**
+ * DashScope 文本生成客户端抽象
+ * <p>
+ * 与 SDK 的 {@code Generation} 方法签名一致，便于在测试 / 压测中替换为本地桩实现。
+ */
+public interface QwenClient {
+
+    /**
+     * 同步调用（阻塞直到模型返回完整结果）
+     */
+    GenerationResult call(GenerationParam param) throws NoApiKeyException, InputRequiredException;
+
+    /**
+     * 流式调用
+     */
+    Flowable<GenerationResult> streamCall(GenerationParam param) throws NoApiKeyException, InputRequiredException;
+}
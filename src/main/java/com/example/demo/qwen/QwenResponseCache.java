@@ -0,0 +1,149 @@
+package com.example.demo.qwen;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Qwen 回答缓存（LRU + TTL + 字节上限）
+ * <p>
+ * 设计说明：
+ * - Key 为（规范化后的问题, 模型, 系统提示词），规范化包括 Unicode NFKC、去首尾空白、合并连续空白、转小写；
+ * - Value 保存完整回答以及流式片段序列和各片段相对首包的到达时间，命中时可按原节奏回放；
+ * - 按估算的占用字节数限制总容量，超出时淘汰最久未访问的条目；过期条目在访问时惰性删除。
+ */
+@Component
+public class QwenResponseCache {
+
+    // 每个条目 / 片段的固定开销估算（对象头、数组、引用等）
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int CHUNK_OVERHEAD = 48;
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long ttlNanos;
+
+    // accessOrder = true：迭代顺序即 LRU 顺序
+    private final LinkedHashMap<CacheKey, CachedAnswer> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public QwenResponseCache(@Value("${qwen.cache.enabled:true}") boolean enabled,
+                             @Value("${qwen.cache.max-bytes:67108864}") long maxBytes,
+                             @Value("${qwen.cache.ttl:1h}") Duration ttl) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * 缓存键
+     */
+    public record CacheKey(String question, String model, String systemPrompt) {
+
+        public static CacheKey of(String question, String model, String systemPrompt) {
+            return new CacheKey(normalize(question), model, systemPrompt);
+        }
+
+        static String normalize(String question) {
+            String text = Normalizer.normalize(question, Normalizer.Form.NFKC).trim();
+            return text.replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        }
+
+        int estimatedBytes() {
+            return (question.length() + model.length() + systemPrompt.length()) * 2;
+        }
+    }
+
+    /**
+     * 缓存的回答
+     *
+     * @param answer       完整回答
+     * @param chunks       流式片段（同步调用写入时为单个片段）
+     * @param offsetsMillis 各片段相对首包的到达时间（毫秒）
+     */
+    public record CachedAnswer(String answer, List<String> chunks, long[] offsetsMillis, long createdNanos) {
+
+        public static CachedAnswer of(List<String> chunks, long[] offsetsMillis) {
+            return new CachedAnswer(String.join("", chunks), List.copyOf(chunks), offsetsMillis.clone(), System.nanoTime());
+        }
+
+        int estimatedBytes() {
+            int bytes = ENTRY_OVERHEAD + answer.length() * 2 + offsetsMillis.length * 8;
+            for (String chunk : chunks) {
+                bytes += CHUNK_OVERHEAD + chunk.length() * 2;
+            }
+            return bytes;
+        }
+    }
+
+    public CachedAnswer get(CacheKey key) {
+        if (!enabled) {
+            return null;
+        }
+        synchronized (this) {
+            CachedAnswer answer = entries.get(key);
+            if (answer != null && System.nanoTime() - answer.createdNanos() > ttlNanos) {
+                remove(key, answer);
+                evictions.incrementAndGet();
+                answer = null;
+            }
+            if (answer == null) {
+                misses.incrementAndGet();
+            } else {
+                hits.incrementAndGet();
+            }
+            return answer;
+        }
+    }
+
+    public void put(CacheKey key, CachedAnswer answer) {
+        if (!enabled) {
+            return;
+        }
+        long size = key.estimatedBytes() + answer.estimatedBytes();
+        if (size > maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            CachedAnswer previous = entries.put(key, answer);
+            if (previous != null) {
+                currentBytes -= key.estimatedBytes() + previous.estimatedBytes();
+            }
+            currentBytes += size;
+            Iterator<Map.Entry<CacheKey, CachedAnswer>> lru = entries.entrySet().iterator();
+            while (currentBytes > maxBytes && lru.hasNext()) {
+                Map.Entry<CacheKey, CachedAnswer> eldest = lru.next();
+                currentBytes -= eldest.getKey().estimatedBytes() + eldest.getValue().estimatedBytes();
+                lru.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void remove(CacheKey key, CachedAnswer answer) {
+        entries.remove(key);
+        currentBytes -= key.estimatedBytes() + answer.estimatedBytes();
+    }
+
+    public synchronized CacheStats stats() {
+        long total = hits.get() + misses.get();
+        return new CacheStats(entries.size(), currentBytes, maxBytes, hits.get(), misses.get(), evictions.get(),
+                total == 0 ? 0 : (double) hits.get() / total);
+    }
+
+    public record CacheStats(int entries, long bytes, long maxBytes, long hits, long misses, long evictions,
+                             double hitRate) {
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.demo.qwen;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Qwen 阻塞调用专用调度器（舱壁）
+ * <p>
+ * SDK 的同步调用会阻塞线程直到模型返回，不能运行在 reactor-netty 的事件循环线程上。
+ * 这里使用独立的有界弹性调度器：最多 thread-cap 个线程同时执行，最多 queue-cap 个任务排队，
+ * 队列满时立即以 RejectedExecutionException 失败（fail fast），不会拖垮其他 SSE 流。
+ */
+@Configuration
+public class QwenSchedulerConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler qwenBlockingScheduler(@Value("${qwen.blocking.thread-cap:32}") int threadCap,
+                                           @Value("${qwen.blocking.queue-cap:100}") int queueCap) {
+        return Schedulers.newBoundedElastic(threadCap, queueCap, "qwen-blocking");
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.demo.qwen;
+
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 相同请求的在途合并（single-flight）
+ * <p>
+ * 设计说明：
+ * - 同一 key 的第一个订阅者（leader）启动上游，期间到达的相同请求（follower）挂到同一个热流上；
+ * - 热流缓存已产生的元素（replay），后到者先收到已有片段，再接收实时尾部；
+ * - 引用计数：最后一个订阅者离开时才取消上游；
+ * - 上游结束（完成 / 出错 / 取消）后立即从在途表移除，之后的请求重新发起（或命中回答缓存）。
+ */
+public class SingleFlight<K, T> {
+
+    private final Map<K, Flux<T>> flights = new ConcurrentHashMap<>();
+
+    private final AtomicLong leaders = new AtomicLong();
+    private final AtomicLong followers = new AtomicLong();
+
+    /**
+     * 加入 key 对应的在途流；不存在时用 upstream 创建（upstream 在首个订阅发生时才被调用）
+     */
+    public Flux<T> join(K key, Supplier<Flux<T>> upstream) {
+        return join(key, upstream, () -> {
+        });
+    }
+
+    /**
+     * 同 {@link #join(Object, Supplier)}，订阅时判定为 follower 则先执行 onFollower（如归还为成为 leader 而预留的资源）
+     */
+    public Flux<T> join(K key, Supplier<Flux<T>> upstream, Runnable onFollower) {
+        return Flux.defer(() -> {
+            boolean[] leader = {false};
+            Flux<T> shared = flights.computeIfAbsent(key, k -> {
+                leader[0] = true;
+                return share(k, upstream);
+            });
+            if (leader[0]) {
+                leaders.incrementAndGet();
+            } else {
+                followers.incrementAndGet();
+                onFollower.run();
+            }
+            return shared;
+        });
+    }
+
+    private Flux<T> share(K key, Supplier<Flux<T>> upstream) {
+        AtomicReference<Flux<T>> self = new AtomicReference<>();
+        Runnable leave = () -> flights.remove(key, self.get());
+        // 在终止信号传给订阅者之前移除，保证订阅者看到结束时新请求不会再合并到已结束的流
+        Flux<T> shared = Flux.defer(upstream)
+                .doOnTerminate(leave)
+                .doOnCancel(leave)
+                .replay()
+                .refCount(1);
+        self.set(shared);
+        return shared;
+    }
+
+    /**
+     * 指定 key 当前是否有在途上游
+     */
+    public boolean isInFlight(K key) {
+        return flights.containsKey(key);
+    }
+
+    public FlightStats stats() {
+        return new FlightStats(flights.size(), leaders.get(), followers.get());
+    }
+
+    /**
+     * @param inFlight  当前在途的上游数
+     * @param leaders   累计发起上游的请求数
+     * @param followers 累计合并到在途上游的请求数
+     */
+    public record FlightStats(int inFlight, long leaders, long followers) {
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.demo.qwen;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 上游（DashScope）调用准入控制
+ * <p>
+ * 设计说明：
+ * - 每个用户一个令牌桶，按 GCRA 实现：只保存一个"理论到达时间"，CAS 更新，无锁；
+ * - 全局限制同时进行的上游调用数，超出时进入有界优先队列，交互式（流式）请求排在批量（同步）请求之前；
+ * - 排队中的流式请求会收到 SSE "queued" 事件，data 为当前排队位置（从 1 开始），位置变化时更新；
+ * - 限流或队列已满时抛出 {@link AdmissionRejectedException}，携带建议的重试等待时间；
+ * - 许可只在真正发起上游调用时占用，缓存命中和在途合并的跟随者不占用。
+ */
+@Component
+public class UpstreamAdmission {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamAdmission.class);
+
+    /**
+     * 请求优先级：INTERACTIVE 优先于 BULK 出队
+     */
+    public enum Priority {INTERACTIVE, BULK}
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final Duration queueFullRetryAfter;
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    // 以下状态由 this 锁保护
+    private final ArrayDeque<Ticket> interactiveQueue = new ArrayDeque<>();
+    private final ArrayDeque<Ticket> bulkQueue = new ArrayDeque<>();
+    private int inFlight;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong queueFull = new AtomicLong();
+
+    public UpstreamAdmission(@Value("${qwen.admission.user-rate:2}") double userRatePerSecond,
+                             @Value("${qwen.admission.user-burst:10}") int userBurst,
+                             @Value("${qwen.admission.max-in-flight:64}") int maxInFlight,
+                             @Value("${qwen.admission.max-queued:200}") int maxQueued,
+                             @Value("${qwen.admission.queue-full-retry-after:5s}") Duration queueFullRetryAfter) {
+        this.intervalNanos = (long) (1_000_000_000L / userRatePerSecond);
+        this.toleranceNanos = intervalNanos * Math.max(0, userBurst - 1);
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+        this.queueFullRetryAfter = queueFullRetryAfter;
+    }
+
+    /**
+     * 用户令牌桶检查，超出速率时抛出异常
+     */
+    public void checkRate(String userId) {
+        AtomicLong bucket = buckets.computeIfAbsent(userId, id -> new AtomicLong());
+        long now = System.nanoTime();
+        for (; ; ) {
+            long tat = bucket.get();
+            long base = Math.max(tat, now);
+            long wait = base - now - toleranceNanos;
+            if (wait > 0) {
+                rateLimited.incrementAndGet();
+                throw new AdmissionRejectedException("用户 " + userId + " 请求过于频繁", Duration.ofNanos(wait));
+            }
+            if (bucket.compareAndSet(tat, base + intervalNanos)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 预约一次上游调用：有空闲许可时立即获得，否则进入优先队列；队列已满时抛出异常
+     */
+    public synchronized Ticket reserve(Priority priority) {
+        Ticket ticket = new Ticket(priority);
+        if (inFlight < maxInFlight && interactiveQueue.isEmpty() && bulkQueue.isEmpty()) {
+            ticket.grant();
+            inFlight++;
+            admitted.incrementAndGet();
+            return ticket;
+        }
+        if (interactiveQueue.size() + bulkQueue.size() >= maxQueued) {
+            queueFull.incrementAndGet();
+            throw new AdmissionRejectedException("上游调用排队已满", queueFullRetryAfter);
+        }
+        (priority == Priority.INTERACTIVE ? interactiveQueue : bulkQueue).addLast(ticket);
+        queued.incrementAndGet();
+        publishPositions();
+        return ticket;
+    }
+
+    private synchronized void release(Ticket ticket, boolean granted) {
+        if (granted) {
+            inFlight--;
+        } else if (!interactiveQueue.remove(ticket)) {
+            bulkQueue.remove(ticket);
+        }
+        while (inFlight < maxInFlight) {
+            Ticket next = interactiveQueue.isEmpty() ? bulkQueue.pollFirst() : interactiveQueue.pollFirst();
+            if (next == null) {
+                break;
+            }
+            // 已被取消（尚未从队列移除）的凭证直接跳过
+            if (next.grant()) {
+                inFlight++;
+                admitted.incrementAndGet();
+            }
+        }
+        publishPositions();
+    }
+
+    private void publishPositions() {
+        int position = 0;
+        for (Iterator<Ticket> it = interactiveQueue.iterator(); it.hasNext(); ) {
+            it.next().position(++position);
+        }
+        for (Iterator<Ticket> it = bulkQueue.iterator(); it.hasNext(); ) {
+            it.next().position(++position);
+        }
+    }
+
+    /**
+     * 定期清理已回满的令牌桶
+     */
+    @Scheduled(fixedDelayString = "${qwen.admission.sweep-interval-ms:60000}")
+    public void evictIdleBuckets() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.get() <= now);
+    }
+
+    /**
+     * 准入统计
+     */
+    public record AdmissionStats(int inFlight, int maxInFlight, int queuedInteractive, int queuedBulk, int users,
+                                 long admitted, long queued, long rateLimited, long queueFull) {
+    }
+
+    public synchronized AdmissionStats stats() {
+        return new AdmissionStats(inFlight, maxInFlight, interactiveQueue.size(), bulkQueue.size(), buckets.size(),
+                admitted.get(), queued.get(), rateLimited.get(), queueFull.get());
+    }
+
+    /**
+     * 一次上游调用的准入凭证
+     * <p>
+     * 通过 {@link #run} / {@link #await} 使用；不再需要时调用 {@link #release()} 归还（幂等）。
+     */
+    public final class Ticket {
+
+        private static final int WAITING = 0;
+        private static final int GRANTED = 1;
+        private static final int RELEASED = 2;
+
+        private final Priority priority;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private volatile boolean used;
+        private final Sinks.One<Boolean> granted = Sinks.one();
+        private final Sinks.Many<Integer> positions = Sinks.many().replay().latest();
+        private volatile int position;
+
+        private Ticket(Priority priority) {
+            this.priority = priority;
+        }
+
+        public Priority priority() {
+            return priority;
+        }
+
+        public boolean isGranted() {
+            return state.get() == GRANTED;
+        }
+
+        private boolean grant() {
+            if (!state.compareAndSet(WAITING, GRANTED)) {
+                return false;
+            }
+            granted.tryEmitValue(Boolean.TRUE);
+            positions.tryEmitComplete();
+            return true;
+        }
+
+        private void position(int position) {
+            if (this.position != position) {
+                this.position = position;
+                positions.tryEmitNext(position);
+            }
+        }
+
+        /**
+         * 排队期间推送 "queued" 事件，获得许可后执行 upstream，结束（完成 / 出错 / 取消）时归还许可
+         */
+        public Flux<ServerSentEvent<String>> run(Supplier<Flux<ServerSentEvent<String>>> upstream) {
+            Flux<ServerSentEvent<String>> waiting = isGranted() ? Flux.empty() : positions.asFlux()
+                    .takeUntilOther(granted.asMono())
+                    .map(position -> ServerSentEvent.<String>builder()
+                            .event("queued")
+                            .data(String.valueOf(position))
+                            .build());
+            return Flux.concat(waiting, granted.asMono().thenMany(Flux.defer(upstream)))
+                    .doOnSubscribe(subscription -> used = true)
+                    // 在终止信号传给订阅者之前归还，订阅者看到结束时许可已可用
+                    .doOnTerminate(this::release)
+                    .doOnCancel(this::release);
+        }
+
+        /**
+         * 等待获得许可
+         */
+        public Mono<Void> await() {
+            return granted.asMono().then();
+        }
+
+        /**
+         * 凭证未被 {@link #run} 使用时归还；已在使用中的由 run 的生命周期负责归还
+         */
+        public void discard() {
+            if (!used) {
+                release();
+            }
+        }
+
+        /**
+         * 归还许可或退出队列（幂等）
+         */
+        public void release() {
+            int previous = state.getAndSet(RELEASED);
+            if (previous != RELEASED) {
+                if (previous == WAITING) {
+                    log.debug("排队中的上游调用被取消，优先级: {}", priority);
+                }
+                UpstreamAdmission.this.release(this, previous == GRANTED);
+            }
+        }
+    }
+
+    /**
+     * 准入被拒绝（限流或排队已满）
+     */
+    public static class AdmissionRejectedException extends RejectedExecutionException {
+
+        private final Duration retryAfter;
+
+        public AdmissionRejectedException(String message, Duration retryAfter) {
+            super(message);
+            this.retryAfter = retryAfter;
+        }
+
+        /**
+         * 建议的重试等待时间（向上取整到秒，至少 1 秒）
+         */
+        public long retryAfterSeconds() {
+            return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        }
+    }
+}
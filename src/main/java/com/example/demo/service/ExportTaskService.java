@@ -2,15 +2,25 @@ package com.example.demo.service;
 
 import com.example.demo.bo.ExportTaskRequest;
 import com.example.demo.bo.TaskProgress;
+import com.example.demo.broker.ProgressBroker;
+import com.example.demo.export.ExportFileWriter;
+import com.example.demo.export.ExportResultCache;
+import com.example.demo.export.ExportStorage;
+import com.example.demo.journal.TaskJournal;
+import com.example.demo.metrics.ExportMetrics;
+import com.example.demo.sink.OverflowPolicy;
+import com.example.demo.sink.ProgressConflator;
+import com.example.demo.sink.ProgressEvent;
+import com.example.demo.sink.UserSinkRegistry;
+import com.example.demo.thread.ExportTaskDispatcher;
+import com.example.demo.thread.FairExportScheduler;
 import jakarta.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
 
-import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -19,121 +29,287 @@ import java.util.concurrent.ConcurrentHashMap;
  * 导出任务服务：异步执行 + 实时进度推送（SSE）
  * <p>
  * 设计说明：
+ * - 导出由 {@link ExportFileWriter} 流式写入磁盘，完成后通过 /download/{文件名} 下载；
  * - 每个用户拥有一个“全局进度 Sink”，所有该用户的任务都向此 Sink 推送事件；
+ * - 进度经 {@link ProgressBroker} 路由，多节点部署时 SSE 连接与执行任务的节点可以不同；
  * - 前端通过 GET /progress/stream?userId=xxx 建立长连接，持续接收该用户所有任务进度；
  * - 任务完成后不关闭用户 Sink，以便支持后续新任务；
- * - 用户长时间无连接时，Sink 会因无订阅者而自动丢弃事件（背压缓冲有限）；
- * - 内存中的 Sink 不主动清理（可扩展为带 TTL 的缓存）。
+ * - 用户暂时无连接时事件仍写入该用户的回放环（保留最近 export.sink.replay-size 条），重连时按 Last-Event-ID 补发；
+ *   更早的事件以及 Sink 被回收前的事件不再补发，任务最终状态可通过 GET /api/tasks/{taskId}（任务日志）查询；
+ * - Sink 由 {@link UserSinkRegistry} 统一管理，空闲超时或超出容量时自动回收，下次使用时重建；
+ * - 任务先进入 {@link FairExportScheduler}，按优先级权重与用户轮询分配执行槽位，可随时取消；
+ * - 提交前经 {@link ExportResultCache} 按请求指纹去重：相同导出执行中时关联到该任务，近期已完成时直接返回缓存文件。
  */
 @Service
 public class ExportTaskService {
 
     private static final Logger log = LoggerFactory.getLogger(ExportTaskService.class);
 
-    // 注入 Spring 配置的线程池（见 TaskExecutorConfig）
-    @Resource(name = "exportTaskExecutor")
-    private ThreadPoolTaskExecutor exportTaskExecutor;
+    // 公平调度器（按用户轮询 + 优先级权重，之后交给 ExportTaskDispatcher 执行）
+    @Resource
+    private FairExportScheduler fairExportScheduler;
 
-    // 用户ID -> 全局进度广播 Sink（多订阅者安全）
-    private final Map<String, Sinks.Many<TaskProgress>> userGlobalSinks = new ConcurrentHashMap<>();
+    // 用户ID -> 全局进度广播 Sink（带容量上限与空闲回收）
+    @Resource
+    private UserSinkRegistry userSinkRegistry;
+
+    // 进度路由（单机 / 多节点）
+    @Resource
+    private ProgressBroker progressBroker;
+
+    // 进度合并发布器（限频 + 终态必达）
+    @Resource
+    private ProgressConflator progressConflator;
+
+    // 流式导出引擎（写盘 + 进度回调）
+    @Resource
+    private ExportFileWriter exportFileWriter;
+
+    // 任务状态日志（持久化 + 按任务 / 用户索引）
+    @Resource
+    private TaskJournal taskJournal;
+
+    // 导出结果去重缓存（在途任务 + 已完成文件）
+    @Resource
+    private ExportResultCache exportResultCache;
+
+    // 导出文件目录（拼接下载地址）
+    @Resource
+    private ExportStorage exportStorage;
+
+    // 导出耗时指标（单批 / 端到端）
+    @Resource
+    private ExportMetrics exportMetrics;
+
+    // 任务ID -> 提交时间（纳秒），终态推送时计算端到端耗时
+    private final Map<String, Long> submittedNanos = new ConcurrentHashMap<>();
+
+    /**
+     * 提交导出任务（允许复用相同请求的在途任务或缓存结果）
+     *
+     * @return 任务ID 与准入结果；REJECTED 时任务未受理
+     */
+    public SubmitResult submitExportTask(ExportTaskRequest request) {
+        return submitExportTask(request, true);
+    }
 
     /**
      * 提交导出任务
      *
-     * @return 任务ID
+     * @param useCache 为 false 时总是重新导出（结束后刷新缓存）
+     * @return 任务ID 与准入结果；复用时 reuse 标明来源，REJECTED 时任务未受理
      */
-    public String submitExportTask(ExportTaskRequest request) {
+    public SubmitResult submitExportTask(ExportTaskRequest request, boolean useCache) {
         String taskId = generateTaskId();
         String userId = request.userId();
 
-        // 获取或创建该用户的全局 Sink（用于聚合所有任务进度）
-        Sinks.Many<TaskProgress> userSink = userGlobalSinks.computeIfAbsent(userId, this::createUserGlobalSink);
-
-        log.info("受理导出任务 | userId: {}, taskId: {}, fileType: {}, totalRecords: {}",
-                userId, taskId, request.fileType(), request.totalRecords());
+        ExportResultCache.Lookup lookup = exportResultCache.lookupOrRegister(request, taskId, !useCache);
+        if (lookup.artifact() != null) {
+            // 近期已完成相同导出：直接以新任务ID登记为完成状态，下载地址指向缓存文件
+            String downloadUrl = exportStorage.downloadUrl(lookup.artifact().fileName());
+            log.info("导出命中缓存 | userId: {}, taskId: {}, downloadUrl: {}", userId, taskId, downloadUrl);
+            publish(TaskProgress.completed(taskId, userId, downloadUrl));
+            return new SubmitResult(taskId, ExportTaskDispatcher.Admission.ACCEPTED, Reuse.CACHED, downloadUrl);
+        }
+        if (lookup.taskId() != null) {
+            // 相同导出正在执行：关联到已有任务，进度从用户进度流中获取
+            log.info("导出关联到执行中的相同任务 | userId: {}, taskId: {}", userId, lookup.taskId());
+            return new SubmitResult(lookup.taskId(), ExportTaskDispatcher.Admission.ACCEPTED, Reuse.IN_FLIGHT, null);
+        }
 
-        // 异步执行任务（提交到 Spring 管理的线程池）
-        exportTaskExecutor.execute(() -> processExportTask(taskId, request, userSink));
+        log.info("提交导出任务 | userId: {}, taskId: {}, fileType: {}, totalRecords: {}, priority: {}, useCache: {}",
+                userId, taskId, request.fileType(), request.totalRecords(), request.priority(), useCache);
 
-        return taskId;
+        // 公平排队后异步执行（超出排队上限时返回 REJECTED 而不是抛异常）
+        submittedNanos.put(taskId, System.nanoTime());
+        ExportTaskDispatcher.Admission admission = fairExportScheduler.submit(taskId, userId, request.priority(),
+                () -> processExportTask(taskId, request));
+        if (admission == ExportTaskDispatcher.Admission.REJECTED) {
+            submittedNanos.remove(taskId);
+            exportResultCache.release(taskId);
+            log.warn("导出任务被拒绝（排队已满） | userId: {}, taskId: {}", userId, taskId);
+        } else {
+            // 任务可能已开始执行并写入了进度，此时不再覆盖
+            taskJournal.recordIfAbsent(TaskProgress.processing(taskId, userId, 0, exportFileWriter.totalBatches(request), "已受理，等待执行"));
+        }
+        return new SubmitResult(taskId, admission, Reuse.NONE, null);
     }
 
     /**
-     * 生成唯一任务ID
+     * 取消任务：排队中的直接出队，执行中的中断工作线程；两种情况都立即推送 cancelled 状态并释放执行槽位
+     *
+     * @return 任务不存在、已结束或不属于该用户时返回 false
      */
-    private String generateTaskId() {
-        return "export-" + UUID.randomUUID().toString().replace("-", "").substring(0, 8);
+    public boolean cancelExportTask(String userId, String taskId) {
+        // 与工作线程的 tryFinish 竞争终态：工作线程已取得终态（正在推送 completed / failed）时返回 NOT_FOUND
+        FairExportScheduler.CancelOutcome outcome = fairExportScheduler.cancel(taskId, userId);
+        if (outcome == FairExportScheduler.CancelOutcome.NOT_FOUND) {
+            return false;
+        }
+        log.info("任务已取消 | userId: {}, taskId: {}, outcome: {}", userId, taskId, outcome);
+        publish(TaskProgress.cancelled(taskId, userId));
+        return true;
     }
 
     /**
-     * 创建用户级全局 Sink（支持多订阅者，带背压缓冲）
+     * 生成唯一任务ID
      */
-    private Sinks.Many<TaskProgress> createUserGlobalSink(String userId) {
-        log.debug("为用户 {} 创建全局进度 Sink", userId);
-        return Sinks.many()
-                .multicast()               // 支持多个订阅者（如多标签页）
-                .onBackpressureBuffer(100); // 缓冲最多100条未消费消息，防止 OOM
-
+    private String generateTaskId() {
+        return "export-" + UUID.randomUUID().toString().replace("-", "").substring(0, 8);
     }
 
     /**
-     * 模拟导出任务处理逻辑（在独立线程中执行）
+     * 导出任务处理逻辑（在独立线程中执行）：流式写盘，按实际写入的行数/字节数推送进度
      */
-    private void processExportTask(String taskId, ExportTaskRequest request, Sinks.Many<TaskProgress> userSink) {
+    private void processExportTask(String taskId, ExportTaskRequest request) {
         String userId = request.userId();
         String fileType = request.fileType();
         int totalRecords = request.totalRecords();
 
         try {
-            // 计算模拟步骤数（每100条记录为1步）
-            int totalSteps = Math.max(1, totalRecords / 100);
-            log.debug("开始处理任务 | userId: {}, taskId: {}, totalSteps: {}", userId, taskId, totalSteps);
-
-            for (int step = 1; step <= totalSteps; step++) {
-                // 模拟耗时操作
-                Thread.sleep(800);
-
-                String message = "正在导出 %s 数据（第 %d/%d 步）".formatted(fileType, step, totalSteps);
-                TaskProgress progress = TaskProgress.processing(taskId, userId, step, totalSteps, message);
-
-                // 推送进度到用户全局 Sink
-                Sinks.EmitResult result = userSink.tryEmitNext(progress);
-                if (result.isFailure()) {
-                    log.warn("进度推送失败 | userId: {}, taskId: {}, reason: {}", userId, taskId, result);
-                } else {
-                    log.info("进度已推送 | userId: {}, taskId: {}, step: {}/{}", userId, taskId, step, totalSteps);
-                }
-            }
+            log.debug("开始处理任务 | userId: {}, taskId: {}, totalBatches: {}",
+                    userId, taskId, exportFileWriter.totalBatches(request));
 
-            // 任务成功完成
-            String downloadUrl = "/download/" + taskId + "." + fileType.toLowerCase();
+            long[] lastBatchNanos = {System.nanoTime()};
+            int[] lastBatch = {0};
+            ExportFileWriter.ExportResult exportResult = exportFileWriter.write(taskId, request,
+                    (batch, totalBatches, rowsWritten, bytesWritten) -> {
+                        // 分区并行导出时一次回调汇总了多个批次，按批次数摊分
+                        long now = System.nanoTime();
+                        exportMetrics.recordStep((now - lastBatchNanos[0]) / Math.max(1, batch - lastBatch[0]));
+                        lastBatchNanos[0] = now;
+                        lastBatch[0] = batch;
+                        String message = "正在导出 %s 数据（已写入 %d/%d 行，%d KB）"
+                                .formatted(fileType, rowsWritten, totalRecords, bytesWritten / 1024);
+                        // 推送进度（按任务合并限频，不阻塞导出线程）
+                        publish(TaskProgress.processing(taskId, userId, batch, totalBatches, message));
+                    });
+
+            // 任务成功完成：与取消竞争终态，输给取消时 cancelled 已推送
+            if (!fairExportScheduler.tryFinish(taskId)) {
+                return;
+            }
+            // 先交给缓存再推送完成事件（完成事件会解除在途登记），避免两者之间的相同提交重新导出；
+            // 缓存接管后文件被改名，发布改名后的地址
+            String downloadUrl = exportStorage.downloadUrl(exportResultCache.store(taskId, exportResult.path()));
             TaskProgress completed = TaskProgress.completed(taskId, userId, downloadUrl);
-            userSink.tryEmitNext(completed);
-            log.info("任务完成 | userId: {}, taskId: {}, downloadUrl: {}", userId, taskId, downloadUrl);
+            publish(completed);
+            log.info("任务完成 | userId: {}, taskId: {}, rows: {}, bytes: {}, downloadUrl: {}",
+                    userId, taskId, exportResult.rowsWritten(), exportResult.bytesWritten(), downloadUrl);
 
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            if (!fairExportScheduler.tryFinish(taskId)) {
+                log.info("任务已按取消请求停止 | userId: {}, taskId: {}", userId, taskId);
+                return;
+            }
             String errorMsg = "任务被中断";
             log.warn("任务中断 | userId: {}, taskId: {}", userId, taskId, e);
-            userSink.tryEmitNext(TaskProgress.failed(taskId, userId, errorMsg));
+            publish(TaskProgress.failed(taskId, userId, errorMsg));
         } catch (Exception e) {
+            // 中断可能表现为 IO 异常（如 ClosedByInterruptException）
+            if (!fairExportScheduler.tryFinish(taskId)) {
+                log.info("任务已按取消请求停止 | userId: {}, taskId: {}", userId, taskId);
+                return;
+            }
             String errorMsg = "导出过程中发生异常: " + e.getMessage();
             log.error("任务执行异常 | userId: {}, taskId: {}", userId, taskId, e);
-            userSink.tryEmitNext(TaskProgress.failed(taskId, userId, errorMsg));
+            publish(TaskProgress.failed(taskId, userId, errorMsg));
         }
-        // 注意：不调用 userSink.tryEmitComplete()！
-        // 因为用户可能提交新任务，需保持 Sink 可用
+        // 注意：不主动 complete 用户 Sink！
+        // 因为用户可能提交新任务，Sink 的生命周期交由 UserSinkRegistry 管理
+    }
+
+    /**
+     * 记录到任务状态日志并推送（按任务合并限频，不阻塞导出线程）
+     * <p>
+     * 任务已结束（如已被取消）时日志拒绝非终态更新，此时不再推送：工作线程在取消后仍可能处于进度回调中。
+     * 日志与推送之间的竞争由 {@link ProgressConflator} 的终态墓碑兜底。
+     */
+    private void publish(TaskProgress progress) {
+        if (!taskJournal.record(progress)) {
+            log.debug("任务已结束，丢弃迟到的进度 | taskId: {}, status: {}", progress.taskId(), progress.status());
+            return;
+        }
+        progressConflator.publish(progress);
+        if (progress.isTerminal()) {
+            exportResultCache.release(progress.taskId());
+            Long submitted = submittedNanos.remove(progress.taskId());
+            if (submitted != null) {
+                exportMetrics.recordFinished(progress.status(), System.nanoTime() - submitted);
+            }
+        }
+    }
+
+    /**
+     * 查询单个任务的最新状态（来自内存索引，重启后由日志恢复）
+     */
+    public TaskJournal.TaskRecord getTask(String taskId) {
+        return taskJournal.find(taskId);
+    }
+
+    /**
+     * 查询用户的全部任务，按更新时间倒序
+     */
+    public List<TaskJournal.TaskRecord> getTasksForUser(String userId) {
+        return taskJournal.findByUser(userId);
     }
 
     /**
      * 获取指定用户的任务进度流（用于 SSE）
      * <p>
      * 返回的 Flux 会持续推送该用户的所有任务进度，直到连接断开或超时（20分钟由 Controller 控制）
+     *
+     * @param lastEventId    客户端最后收到的事件序号（Last-Event-ID），小于 0 表示新连接
+     * @param overflowPolicy 该连接发送队列满时的处理策略，null 表示使用默认配置
+     */
+    public Flux<ProgressEvent> getProgressStreamForUser(String userId, long lastEventId, OverflowPolicy overflowPolicy) {
+        log.info("用户 {} 开始监听任务进度流, lastEventId: {}, overflow: {}", userId, lastEventId, overflowPolicy);
+        // 订阅时获取或创建 Sink（即使无任务，也返回空流），并补发断线期间遗漏的事件
+        return progressBroker.subscribe(userId, lastEventId, overflowPolicy);
+    }
+
+    /**
+     * 用户进度 Sink 注册表的占用与回收统计
+     */
+    public UserSinkRegistry.RegistryStats getSinkRegistryStats() {
+        return userSinkRegistry.stats();
+    }
+
+    /**
+     * 公平调度器的运行 / 排队统计
+     */
+    public FairExportScheduler.SchedulerStats getSchedulerStats() {
+        return fairExportScheduler.stats();
+    }
+
+    /**
+     * 导出结果缓存统计
+     */
+    public ExportResultCache.CacheStats getResultCacheStats() {
+        return exportResultCache.stats();
+    }
+
+    /**
+     * 任务提交结果
+     *
+     * @param taskId      任务ID（IN_FLIGHT 时为已有任务的ID）
+     * @param admission   准入结果
+     * @param reuse       复用来源
+     * @param downloadUrl CACHED 时为缓存文件的下载地址
+     */
+    public record SubmitResult(String taskId, ExportTaskDispatcher.Admission admission, Reuse reuse, String downloadUrl) {
+    }
+
+    /**
+     * 提交复用的来源
      */
-    public Flux<TaskProgress> getProgressStreamForUser(String userId) {
-        log.info("用户 {} 开始监听任务进度流", userId);
-        // 获取或创建 Sink（即使无任务，也返回空流）
-        Sinks.Many<TaskProgress> sink = userGlobalSinks.computeIfAbsent(userId, this::createUserGlobalSink);
-        return sink.asFlux();
+    public enum Reuse {
+        // 新建导出
+        NONE,
+        // 关联到执行中的相同任务
+        IN_FLIGHT,
+        // 返回近期完成的缓存文件
+        CACHED
     }
 }
@@ -1,152 +1,432 @@
 package com.example.demo.service;
 
 
-import com.alibaba.dashscope.aigc.generation.Generation;
 import com.alibaba.dashscope.aigc.generation.GenerationParam;
 import com.alibaba.dashscope.aigc.generation.GenerationResult;
 import com.alibaba.dashscope.common.Message;
 import com.alibaba.dashscope.common.Role;
-import com.alibaba.dashscope.exception.ApiException;
 import com.alibaba.dashscope.exception.InputRequiredException;
 import com.alibaba.dashscope.exception.NoApiKeyException;
-import com.alibaba.dashscope.protocol.Protocol;
-import com.alibaba.dashscope.utils.JsonUtils;
+import com.example.demo.metrics.QwenMetrics;
+import com.example.demo.qwen.ChunkBatcher;
+import com.example.demo.qwen.ConversationStore;
+import com.example.demo.qwen.QwenClient;
+import com.example.demo.qwen.QwenResponseCache;
+import com.example.demo.qwen.SingleFlight;
+import com.example.demo.qwen.UpstreamAdmission;
 import io.reactivex.Flowable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import reactor.adapter.rxjava.RxJava2Adapter;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Service
 public class QwenService {
 
     private static final Logger log = LoggerFactory.getLogger(QwenService.class);
 
+    // 未提供 userId 且无法区分调用方时使用的限流桶（HTTP 匿名调用方按客户端地址区分，见 QwenController）
+    public static final String ANONYMOUS_USER = "anonymous";
+
     @Value("${dashscope.api-key}")
     private String apiKey;
 
-    private final String apiUrl = "https://dashscope.aliyuncs.com/api/v1"; // 北京地域
+    @Value("${qwen.model:qwen3-max}")
+    private String model; // 或 qwen-max, qwen3-max
+
+    @Value("${qwen.system-prompt:You are a helpful assistant.}")
+    private String systemPrompt;
+
+    // 缓存命中时的回放速度：1.0 按原节奏，2.0 两倍速，<=0 不做节奏控制（一次性推送）
+    @Value("${qwen.cache.replay-speed:1.0}")
+    private double replaySpeed;
+
+    // 同步调用的超时时间
+    @Value("${qwen.call-timeout:60s}")
+    private Duration callTimeout = Duration.ofSeconds(60);
+
+    private final QwenClient qwenClient;
+
+    private final QwenResponseCache responseCache;
+
+    // 阻塞调用专用的有界调度器（见 QwenSchedulerConfig）
+    private final Scheduler blockingScheduler;
+
+    // 流式片段合并（在共享之前执行，合并后的帧由所有订阅者共用）
+    private final ChunkBatcher chunkBatcher;
+
+    // 多轮对话历史
+    private final ConversationStore conversationStore;
 
-    private final Generation gen = new Generation(Protocol.HTTP.getValue(), apiUrl);
+    // 上游调用准入控制（用户限流 + 全局并发 + 优先队列）
+    private final UpstreamAdmission admission;
+
+    // 上游流式调用指标（首片段耗时、片段速率、错误率）
+    private final QwenMetrics metrics;
+
+    // 相同问题的在途流式请求合并
+    private final SingleFlight<QwenResponseCache.CacheKey, ServerSentEvent<String>> inFlightStreams = new SingleFlight<>();
+
+    public QwenService(QwenClient qwenClient,
+                       QwenResponseCache responseCache,
+                       @Qualifier("qwenBlockingScheduler") Scheduler blockingScheduler,
+                       ChunkBatcher chunkBatcher,
+                       ConversationStore conversationStore,
+                       UpstreamAdmission admission,
+                       QwenMetrics metrics) {
+        this.qwenClient = qwenClient;
+        this.responseCache = responseCache;
+        this.blockingScheduler = blockingScheduler;
+        this.chunkBatcher = chunkBatcher;
+        this.conversationStore = conversationStore;
+        this.admission = admission;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 非阻塞的同步问答：阻塞的 SDK 调用在专用调度器上执行，带超时
+     * <p>
+     * 调度器已满（执行中 + 排队达到上限）时以 {@link java.util.concurrent.RejectedExecutionException} 立即失败；
+     * 超时以 {@link java.util.concurrent.TimeoutException} 失败。
+     */
+    public Mono<String> askQuestion(String question) {
+        return askQuestion(question, null, ANONYMOUS_USER);
+    }
 
     /**
-     * 同步调用 Qwen Plus/Max
+     * 非阻塞的同步问答，sessionId 不为空时按多轮对话处理
+     * <p>
+     * 经过准入控制：用户限流或排队已满时以 {@link UpstreamAdmission.AdmissionRejectedException} 失败；
+     * 同步调用按 BULK 优先级排队，排在流式请求之后。缓存命中不占用上游许可。
+     */
+    public Mono<String> askQuestion(String question, String sessionId, String userId) {
+        return Mono.defer(() -> {
+            admission.checkRate(userId);
+            if (sessionId == null) {
+                QwenResponseCache.CachedAnswer cached = responseCache.get(cacheKey(question));
+                if (cached != null) {
+                    log.info("Qwen 回答缓存命中（同步），问题: {}", question);
+                    return Mono.just(cached.answer());
+                }
+            }
+            UpstreamAdmission.Ticket ticket = admission.reserve(UpstreamAdmission.Priority.BULK);
+            return ticket.await()
+                    .then(Mono.fromCallable(() -> callSync(question, sessionId)).subscribeOn(blockingScheduler))
+                    .doFinally(signal -> ticket.release());
+        }).timeout(callTimeout);
+    }
+
+    /**
+     * 同步调用 Qwen Plus/Max（优先读取回答缓存）
+     * <p>
+     * 会阻塞调用线程，WebFlux 中请使用 {@link #askQuestion(String)}
      */
     public String askQuestionSync(String question) throws Exception {
-        List<Message> messages = Arrays.asList(
-                Message.builder()
-                        .role(Role.SYSTEM.getValue())
-                        .content("You are a helpful assistant.")
-                        .build(),
-                Message.builder()
-                        .role(Role.USER.getValue())
-                        .content(question)
-                        .build()
-        );
+        return askQuestionSync(question, null);
+    }
 
-        GenerationParam param = GenerationParam.builder()
-                .apiKey(apiKey)
-                .model("qwen3-max") // 或 qwen-max, qwen3-max
-                .messages(messages)
-                .resultFormat(GenerationParam.ResultFormat.MESSAGE)
-                .build();
+    /**
+     * 同步调用，sessionId 不为空时携带会话历史（不读写回答缓存）
+     */
+    public String askQuestionSync(String question, String sessionId) throws Exception {
+        if (sessionId == null) {
+            QwenResponseCache.CachedAnswer cached = responseCache.get(cacheKey(question));
+            if (cached != null) {
+                log.info("Qwen 回答缓存命中（同步），问题: {}", question);
+                return cached.answer();
+            }
+        }
+        return callSync(question, sessionId);
+    }
+
+    /**
+     * 发起一次真实的上游同步调用，结果写入会话历史或回答缓存
+     */
+    private String callSync(String question, String sessionId) throws Exception {
+        if (sessionId != null) {
+            GenerationResult result = qwenClient.call(buildParam(conversationStore.buildPrompt(sessionId, systemPrompt, question), false));
+            String answer = result.getOutput().getChoices().get(0).getMessage().getContent();
+            conversationStore.append(sessionId, question, answer);
+            return answer;
+        }
 
-        GenerationResult result = gen.call(param);
-        return result.getOutput().getChoices().get(0).getMessage().getContent();
+        GenerationResult result = qwenClient.call(buildParam(buildMessages(question), false));
+        String answer = result.getOutput().getChoices().get(0).getMessage().getContent();
+        responseCache.put(cacheKey(question), QwenResponseCache.CachedAnswer.of(List.of(answer), new long[]{0}));
+        return answer;
     }
 
     /**
      * 流式调用 Qwen Plus/Max 模型，返回 Flux<ServerSentEvent<String>>
+     * <p>
+     * 缓存命中时按记录的片段节奏回放，不访问上游；未命中时完整结束的回答会写入缓存。
+     * 相同问题的并发请求合并为一次上游调用，后到者先收到已生成的片段再接收实时尾部。
+     * 推送前按时间窗口 / 字节上限合并细碎片段（首个片段立即发送）。
      *
      * @param question 用户提出的问题
      * @return Flux 流，包含 SSE 事件，每个事件的数据部分是模型返回的文本片段
      */
     public Flux<ServerSentEvent<String>> askQuestionStreamSSE(String question) {
-        log.info("开始向 Qwen 发起流式请求，问题: {}", question);
+        return askQuestionStreamSSE(question, null, ANONYMOUS_USER);
+    }
 
-        // 1. 构建对话消息
-        List<Message> messages = Arrays.asList(
-                Message.builder()
-                        .role(Role.SYSTEM.getValue())
-                        .content("You are a helpful assistant.")
-                        .build(),
-                Message.builder()
-                        .role(Role.USER.getValue())
-                        .content(question)
-                        .build()
-        );
+    /**
+     * 流式调用，sessionId 不为空时携带会话历史
+     * <p>
+     * 会话请求的上下文因人而异，不读写回答缓存、不参与在途合并；完整结束的回答追加到会话历史。
+     * 需要发起上游调用时按 INTERACTIVE 优先级准入，排队期间推送 "queued" 事件；
+     * 用户限流或排队已满时直接抛出 {@link UpstreamAdmission.AdmissionRejectedException}，由调用方返回 429。
+     */
+    public Flux<ServerSentEvent<String>> askQuestionStreamSSE(String question, String sessionId, String userId) {
+        admission.checkRate(userId);
+        if (sessionId != null) {
+            return admission.reserve(UpstreamAdmission.Priority.INTERACTIVE).run(() -> openUpstreamStream(question,
+                    conversationStore.buildPrompt(sessionId, systemPrompt, question),
+                    recorder -> conversationStore.append(sessionId, question, recorder.answer())));
+        }
+        QwenResponseCache.CacheKey cacheKey = cacheKey(question);
+        QwenResponseCache.CachedAnswer cached = responseCache.get(cacheKey);
+        if (cached != null) {
+            log.info("Qwen 回答缓存命中（流式），问题: {}, 片段数: {}", question, cached.chunks().size());
+            return chunkBatcher.batch(replay(cached).map(this::messageEvent));
+        }
+        // 预计会成为 leader 时先预约许可，以便排队已满时能同步返回 429
+        UpstreamAdmission.Ticket ticket = null;
+        if (inFlightStreams.isInFlight(cacheKey)) {
+            log.info("合并到在途的 Qwen 流式请求，问题: {}", question);
+        } else {
+            ticket = admission.reserve(UpstreamAdmission.Priority.INTERACTIVE);
+        }
+        UpstreamAdmission.Ticket reserved = ticket;
+        Runnable discardReserved = () -> {
+            if (reserved != null) {
+                reserved.discard();
+            }
+        };
+        return inFlightStreams.join(cacheKey, () -> {
+                    // 合并检查与订阅之间在途流可能已结束，此时补做预约
+                    UpstreamAdmission.Ticket leaderTicket = reserved != null ? reserved
+                            : admission.reserve(UpstreamAdmission.Priority.INTERACTIVE);
+                    return leaderTicket.run(() -> openUpstreamStream(question, buildMessages(question),
+                            recorder -> responseCache.put(cacheKey, recorder.toCachedAnswer())));
+                }, discardReserved) // 最终成为 follower 时立即归还预约，不在整个流期间占用许可或排队位置
+                .onErrorResume(UpstreamAdmission.AdmissionRejectedException.class,
+                        e -> Flux.just(errorEvent(e.getMessage())))
+                // 兜底：订阅在合并判定之前就结束时归还（已被 run 使用或已归还的预约不受影响）
+                .doFinally(signal -> discardReserved.run());
+    }
 
-        // 2. 构建请求参数
-        GenerationParam param = GenerationParam.builder()
-                .apiKey(apiKey)
-                .model("qwen3-max") // 可替换为 qwen-max, qwen3-max
-                .messages(messages) // 可扩展为多轮对话
-                .resultFormat(GenerationParam.ResultFormat.MESSAGE)
-                .incrementalOutput(true) // 启用增量输出以获得流式体验
-                .build();
+    /**
+     * 发起一次真实的上游流式调用
+     *
+     * @param onAnswer 回答完整且无错误地结束时回调（写入缓存或会话历史）
+     */
+    private Flux<ServerSentEvent<String>> openUpstreamStream(String question, List<Message> messages,
+                                                             Consumer<ChunkRecorder> onAnswer) {
+        log.info("开始向 Qwen 发起流式请求，问题: {}", question);
 
-        // 3. 发起流式调用，得到 RxJava 的 Flowable
+        // 1. 构建请求参数（启用增量输出以获得流式体验）
+        GenerationParam param = buildParam(messages, true);
+
+        // 2. 发起流式调用，得到 RxJava 的 Flowable
         Flowable<GenerationResult> flowableResult;
         try {
             // SDK 调用可能会抛出初始化异常
-            flowableResult = gen.streamCall(param);
+            flowableResult = qwenClient.streamCall(param);
         } catch (NoApiKeyException | InputRequiredException e) {
             log.error("调用 DashScope SDK 失败，参数错误: ", e);
+            metrics.recordError();
             // 返回一个包含错误信息的单事件流
-            return Flux.just(ServerSentEvent.<String>builder()
-                    .event("error")
-                    .data("初始化错误: " + e.getMessage())
-                    .build());
+            return Flux.just(errorEvent("初始化错误: " + e.getMessage()));
         } catch (Exception e) {
             log.error("调用 DashScope SDK 时发生未知异常: ", e);
-            return Flux.just(ServerSentEvent.<String>builder()
-                    .event("error")
-                    .data("请求初始化失败: " + e.getMessage())
-                    .build());
+            metrics.recordError();
+            return Flux.just(errorEvent("请求初始化失败: " + e.getMessage()));
         }
 
-        // 4. 将 RxJava Flowable 转换为 Reactor Flux<ServerSentEvent<String>>
-        //    并处理 onNext, onError, onComplete 事件
-        return RxJava2Adapter.flowableToFlux(flowableResult)
-                .map(generationResult -> {
-                    // 处理每个接收到的响应块
-                    try {
-                        String content = generationResult.getOutput().getChoices().get(0).getMessage().getContent();
-                        log.debug("收到模型响应片段: {}", content);
-                        // 构造 SSE 事件，数据为内容片段
-                        return ServerSentEvent.<String>builder()
-                                .event("message") // 可自定义事件名
-                                .data(content)
-                                .build();
-                    } catch (Exception e) {
-                        log.error("处理模型响应时出错: ", e);
-                        return ServerSentEvent.<String>builder()
-                                .event("error")
-                                .data("响应处理错误: " + e.getMessage())
-                                .build();
-                    }
-                })
-                .doOnComplete(() -> {
-                    // 流完成时的日志
-                    log.info("Qwen 流式响应结束");
-                    // 注意：这里无法轻易访问到最后一个 chunk 的 usage 信息，
-                    // 因为 onComplete 和最后一个 onNext 是分开的。
-                    // 如果需要 usage，可以在 onNext 中判断 finishReason 并单独发送一个 SSE 事件。
-                })
-                .doOnError(error -> {
-                    // 流发生错误时的日志
-                    log.error("Qwen 流式响应出错: ", error);
-                    // 注：错误信息也会通过 map 中的 error 事件发送给客户端
-                });
+        // 3. 将 RxJava Flowable 转换为 Reactor Flux<ServerSentEvent<String>>
+        //    并处理 onNext, onError, onComplete 事件；同时记录片段与到达时间用于写入缓存
+        return chunkBatcher.batch(Flux.defer(() -> {
+            ChunkRecorder recorder = new ChunkRecorder();
+            long startNanos = System.nanoTime();
+            return RxJava2Adapter.flowableToFlux(flowableResult)
+                    .map(generationResult -> {
+                        // 处理每个接收到的响应块
+                        try {
+                            String content = generationResult.getOutput().getChoices().get(0).getMessage().getContent();
+                            log.debug("收到模型响应片段: {}", content);
+                            if (recorder.record(content)) {
+                                metrics.recordFirstToken(recorder.firstNanos - startNanos);
+                            }
+                            // 构造 SSE 事件，数据为内容片段
+                            return messageEvent(content);
+                        } catch (Exception e) {
+                            log.error("处理模型响应时出错: ", e);
+                            recorder.failed = true;
+                            return errorEvent("响应处理错误: " + e.getMessage());
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        // 流完成时的日志
+                        log.info("Qwen 流式响应结束");
+                        // 只保存完整、无错误的回答
+                        if (!recorder.failed) {
+                            metrics.recordCompleted(recorder.chunks.size(), System.nanoTime() - startNanos);
+                            onAnswer.accept(recorder);
+                        } else {
+                            metrics.recordError();
+                        }
+                    })
+                    .doOnError(error -> {
+                        // 流发生错误时的日志
+                        log.error("Qwen 流式响应出错: ", error);
+                        metrics.recordError();
+                        // 注：错误信息也会通过 map 中的 error 事件发送给客户端
+                    })
+                    .doOnCancel(metrics::recordCancelled);
+        }));
         // 注意：原示例中的 CountDownLatch 在 Reactor/WebFlux 模型下是不需要的，
         // 生命周期由框架管理。
     }
+
+    /**
+     * 在途合并统计
+     */
+    public SingleFlight.FlightStats getInFlightStats() {
+        return inFlightStreams.stats();
+    }
+
+    /**
+     * 片段合并统计
+     */
+    public ChunkBatcher.BatchStats getBatchStats() {
+        return chunkBatcher.stats();
+    }
+
+    /**
+     * 回答缓存统计
+     */
+    public QwenResponseCache.CacheStats getCacheStats() {
+        return responseCache.stats();
+    }
+
+    /**
+     * 会话存储统计（会话数、每会话内存、历史 token 节省）
+     */
+    public ConversationStore.StoreStats getSessionStats() {
+        return conversationStore.stats();
+    }
+
+    public ConversationStore.SessionStats getSessionStats(String sessionId) {
+        return conversationStore.sessionStats(sessionId);
+    }
+
+    /**
+     * 准入统计
+     */
+    public UpstreamAdmission.AdmissionStats getAdmissionStats() {
+        return admission.stats();
+    }
+
+    private QwenResponseCache.CacheKey cacheKey(String question) {
+        return QwenResponseCache.CacheKey.of(question, model, systemPrompt);
+    }
+
+    private GenerationParam buildParam(List<Message> messages, boolean incremental) {
+        return GenerationParam.builder()
+                .apiKey(apiKey)
+                .model(model)
+                .messages(messages)
+                .resultFormat(GenerationParam.ResultFormat.MESSAGE)
+                .incrementalOutput(incremental)
+                .build();
+    }
+
+    private List<Message> buildMessages(String question) {
+        return Arrays.asList(
+                Message.builder()
+                        .role(Role.SYSTEM.getValue())
+                        .content(systemPrompt)
+                        .build(),
+                Message.builder()
+                        .role(Role.USER.getValue())
+                        .content(question)
+                        .build()
+        );
+    }
+
+    /**
+     * 按记录的片段间隔回放缓存的回答
+     */
+    private Flux<String> replay(QwenResponseCache.CachedAnswer cached) {
+        List<String> chunks = cached.chunks();
+        if (replaySpeed <= 0) {
+            return Flux.fromIterable(chunks);
+        }
+        long[] offsets = cached.offsetsMillis();
+        return Flux.range(0, chunks.size())
+                .concatMap(i -> {
+                    long gap = (long) ((offsets[i] - (i == 0 ? 0 : offsets[i - 1])) / replaySpeed);
+                    Mono<String> chunk = Mono.just(chunks.get(i));
+                    return gap > 0 ? chunk.delayElement(Duration.ofMillis(gap)) : chunk;
+                });
+    }
+
+    private ServerSentEvent<String> messageEvent(String content) {
+        return ServerSentEvent.<String>builder()
+                .event("message") // 可自定义事件名
+                .data(content)
+                .build();
+    }
+
+    private ServerSentEvent<String> errorEvent(String message) {
+        return ServerSentEvent.<String>builder()
+                .event("error")
+                .data(message)
+                .build();
+    }
+
+    /**
+     * 记录一次流式响应的片段及其相对首包的到达时间
+     */
+    private static final class ChunkRecorder {
+        final List<String> chunks = new ArrayList<>();
+        final List<Long> offsets = new ArrayList<>();
+        long firstNanos;
+        boolean failed;
+
+        /**
+         * @return 是否为首个片段
+         */
+        boolean record(String content) {
+            long now = System.nanoTime();
+            boolean first = chunks.isEmpty();
+            if (first) {
+                firstNanos = now;
+            }
+            chunks.add(content == null ? "" : content);
+            offsets.add((now - firstNanos) / 1_000_000);
+            return first;
+        }
+
+        String answer() {
+            return String.join("", chunks);
+        }
+
+        QwenResponseCache.CachedAnswer toCachedAnswer() {
+            return QwenResponseCache.CachedAnswer.of(chunks, offsets.stream().mapToLong(Long::longValue).toArray());
+        }
+    }
 }
@@ -0,0 +1,34 @@
+package com.example.demo.sink;
+
+import java.util.Locale;
+
+/**
+ * 单个订阅者发送队列已满时的处理策略
+ */
+public enum OverflowPolicy {
+
+    /** 丢弃最旧的待发送事件（客户端可据事件 id 的跳跃发现缺失） */
+    DROP_OLDEST,
+
+    /** 同一任务只保留最新的进度事件；终态事件不会被合并 */
+    LATEST_PER_TASK,
+
+    /** 发送 reconnect 事件后断开，客户端重连时按 Last-Event-ID 从回放环续传 */
+    DISCONNECT;
+
+    /**
+     * 解析请求参数（drop-oldest / latest-per-task / disconnect，大小写与分隔符不敏感）
+     *
+     * @return 为空时返回 defaultPolicy
+     */
+    public static OverflowPolicy parse(String value, OverflowPolicy defaultPolicy) {
+        if (value == null || value.isBlank()) {
+            return defaultPolicy;
+        }
+        try {
+            return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("不支持的 overflow 策略: " + value);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.demo.sink;
+
+import com.example.demo.bo.TaskProgress;
+import com.example.demo.broker.ProgressBroker;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 任务进度合并发布器：每个任务每秒最多推送 N 次进度，始终保留最新状态
+ * <p>
+ * 设计说明：
+ * - 每个任务一个“最新进度”槽位，生产者（导出线程）只做一次原子写入 + 尝试排空，不加锁、不阻塞；
+ * - 排空采用 WIP 计数（同一时刻只有一个线程向下游推送），保证单个任务的推送顺序；
+ * - 未到推送间隔的中间进度被后续进度覆盖，到期后由定时器推送最新值；
+ * - 终态（completed / failed）立即推送，并覆盖尚未推送的中间进度，永不丢弃；
+ * - 终态发布后为该任务保留一个短期墓碑（tombstone-ttl），之后迟到的中间进度直接丢弃，
+ *   不会在终态之后推送 processing，也不会为已结束的任务重新创建槽位。
+ */
+@Component
+public class ProgressConflator {
+
+    private final ProgressBroker progressBroker;
+    private final long minIntervalNanos;
+    private final Scheduler timer = Schedulers.parallel();
+
+    private final long tombstoneTtlNanos;
+
+    // 任务ID -> 进度槽位（终态推送后移除）
+    private final Map<String, TaskSlot> slots = new ConcurrentHashMap<>();
+
+    // 已发布终态的任务ID（墓碑），到期后由定时器移除
+    private final Set<String> terminated = ConcurrentHashMap.newKeySet();
+
+    public ProgressConflator(ProgressBroker progressBroker,
+                             @Value("${export.progress.max-updates-per-second:5}") int maxUpdatesPerSecond,
+                             @Value("${export.progress.tombstone-ttl:60s}") Duration tombstoneTtl) {
+        this.progressBroker = progressBroker;
+        this.minIntervalNanos = maxUpdatesPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxUpdatesPerSecond : 0;
+        this.tombstoneTtlNanos = tombstoneTtl.toNanos();
+    }
+
+    /**
+     * 发布任务进度（可在任意线程调用，不阻塞）
+     * <p>
+     * 任务已发布终态时，迟到的中间进度被丢弃。
+     */
+    public void publish(TaskProgress progress) {
+        String taskId = progress.taskId();
+        if (progress.isTerminal()) {
+            // 先立墓碑再推送：终态推送之后才排空的中间进度一定能看到墓碑
+            if (terminated.add(taskId)) {
+                timer.schedule(() -> terminated.remove(taskId), tombstoneTtlNanos, TimeUnit.NANOSECONDS);
+            }
+        } else if (terminated.contains(taskId)) {
+            return;
+        }
+        if (minIntervalNanos == 0) {
+            emit(progress);
+            return;
+        }
+        TaskSlot slot = slots.computeIfAbsent(taskId, TaskSlot::new);
+        // 尚未推送的终态不会被中间进度覆盖
+        slot.pending.getAndUpdate(current -> current != null && current.isTerminal() && !progress.isTerminal()
+                ? current : progress);
+        drain(slot);
+    }
+
+    private void drain(TaskSlot slot) {
+        if (slot.wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            TaskProgress progress = slot.pending.get();
+            if (progress != null && !progress.isTerminal() && terminated.contains(slot.taskId)) {
+                // 与终态竞争时创建的槽位或迟到的中间进度：丢弃并移除槽位
+                if (slot.pending.compareAndSet(progress, null)) {
+                    slots.remove(slot.taskId, slot);
+                }
+            } else if (progress != null) {
+                long now = System.nanoTime();
+                long wait = slot.lastEmitNanos + minIntervalNanos - now;
+                if (progress.isTerminal() || wait <= 0) {
+                    // CAS 失败说明有更新的进度写入，其生产者已增加 WIP，下一轮循环会处理
+                    if (slot.pending.compareAndSet(progress, null)) {
+                        slot.lastEmitNanos = now;
+                        emit(progress);
+                        if (progress.isTerminal()) {
+                            slots.remove(slot.taskId, slot);
+                        }
+                    }
+                } else if (slot.timerArmed.compareAndSet(false, true)) {
+                    timer.schedule(() -> {
+                        slot.timerArmed.set(false);
+                        drain(slot);
+                    }, wait, TimeUnit.NANOSECONDS);
+                }
+            }
+            missed = slot.wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void emit(TaskProgress progress) {
+        progressBroker.publish(progress);
+    }
+
+    /**
+     * 当前有待推送进度的任务数
+     */
+    public int activeTasks() {
+        return slots.size();
+    }
+
+    /**
+     * 当前保留的终态墓碑数
+     */
+    public int tombstones() {
+        return terminated.size();
+    }
+
+    private static final class TaskSlot {
+        final String taskId;
+        final AtomicReference<TaskProgress> pending = new AtomicReference<>();
+        final AtomicInteger wip = new AtomicInteger();
+        final AtomicBoolean timerArmed = new AtomicBoolean();
+        // 仅在持有 WIP 的线程中读写，WIP 的原子操作保证可见性
+        long lastEmitNanos = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+
+        TaskSlot(String taskId) {
+            this.taskId = taskId;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.demo.sink;
+
+import com.example.demo.bo.TaskProgress;
+
+/**
+ * 带序号的进度事件
+ *
+ * @param seq      全局单调递增序号（以启动时刻的微秒时间戳为起点，跨重启不回退，多节点间按 Lamport 时钟同步），作为 SSE 的 id，用于 Last-Event-ID 断点续传
+ * @param progress 进度内容
+ * @param frame    预编码的完整 SSE 帧，所有订阅者共享
+ */
+public record ProgressEvent(long seq, TaskProgress progress, SseFrame frame) {
+}
@@ -0,0 +1,82 @@
+package com.example.demo.sink;
+
+import com.example.demo.bo.TaskProgress;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 进度事件 SSE 帧编码器：每个事件只序列化一次，编码结果由所有订阅者共享
+ */
+@Component
+public class ProgressFrameEncoder {
+
+    private static final byte[] ID = "id:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EVENT = "\nevent:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DATA = "\ndata:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = "\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * 连接建立后的首帧：告知 EventSource 断线 3 秒后重连，同时让响应头立即发出
+     */
+    public static final SseFrame RETRY_FRAME = new SseFrame("retry:3000\n\n".getBytes(StandardCharsets.US_ASCII));
+
+    /**
+     * 慢消费者被驱逐前的最后一帧：提示客户端重连（不带 id，重连时沿用已收到的 Last-Event-ID）
+     */
+    public static final SseFrame RECONNECT_FRAME = new SseFrame(
+            "event:reconnect\ndata:{\"reason\":\"slow-consumer\"}\n\n".getBytes(StandardCharsets.US_ASCII));
+
+    private final ObjectMapper objectMapper;
+
+    public ProgressFrameEncoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 序列化 data 部分（JSON 单行），可在锁外调用
+     */
+    public byte[] encodeData(TaskProgress progress) {
+        try {
+            return objectMapper.writeValueAsBytes(progress);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("进度序列化失败: " + progress.taskId(), e);
+        }
+    }
+
+    /**
+     * 拼装完整 SSE 帧：id:{seq}\nevent:{name}\ndata:{json}\n\n
+     */
+    public SseFrame frame(long seq, TaskProgress progress, byte[] data) {
+        byte[] id = Long.toString(seq).getBytes(StandardCharsets.US_ASCII);
+        byte[] event = eventName(progress.status()).getBytes(StandardCharsets.US_ASCII);
+        byte[] frame = new byte[ID.length + id.length + EVENT.length + event.length + DATA.length + data.length + END.length];
+        int pos = 0;
+        pos = append(frame, pos, ID);
+        pos = append(frame, pos, id);
+        pos = append(frame, pos, EVENT);
+        pos = append(frame, pos, event);
+        pos = append(frame, pos, DATA);
+        pos = append(frame, pos, data);
+        append(frame, pos, END);
+        return new SseFrame(frame);
+    }
+
+    /**
+     * 任务状态 -> SSE 事件名
+     */
+    public static String eventName(String status) {
+        return switch (status) {
+            case "completed" -> "complete";
+            case "failed", "cancelled" -> "error";
+            default -> "progress";
+        };
+    }
+
+    private static int append(byte[] target, int pos, byte[] source) {
+        System.arraycopy(source, 0, target, pos, source.length);
+        return pos + source.length;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.demo.sink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 固定容量的进度事件回放环（非线程安全，由调用方保证串行访问）
+ * <p>
+ * 只保留最近 capacity 条事件，按写入顺序存放；事件序号必须严格递增，但不要求连续
+ * （序号由注册表全局分配，同一用户的序号之间可能有间隔）。
+ */
+final class ReplayRing {
+
+    private final ProgressEvent[] slots;
+    // 下一个写入位置
+    private int head;
+    private int size;
+
+    ReplayRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("回放环容量必须大于0");
+        }
+        this.slots = new ProgressEvent[capacity];
+    }
+
+    void add(ProgressEvent event) {
+        slots[head] = event;
+        head = (head + 1) % slots.length;
+        if (size < slots.length) {
+            size++;
+        }
+    }
+
+    /**
+     * 返回序号大于 lastEventId 的全部事件（按序号升序）
+     * <p>
+     * - lastEventId &lt; 0：新连接，不回放；
+     * - lastEventId 早于环内最早事件（包括 Sink 回收前的旧序号）：中间部分已被覆盖或不在本环中，尽力回放环内全部事件。
+     */
+    List<ProgressEvent> since(long lastEventId) {
+        if (lastEventId < 0) {
+            return Collections.emptyList();
+        }
+        // 从最新事件向前数出需要回放的条数
+        int count = 0;
+        while (count < size && slots[index(count)].seq() > lastEventId) {
+            count++;
+        }
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<ProgressEvent> events = new ArrayList<>(count);
+        for (int i = count - 1; i >= 0; i--) {
+            events.add(slots[index(i)]);
+        }
+        return events;
+    }
+
+    /**
+     * 倒数第 back 条事件（0 为最新）所在的槽位
+     */
+    private int index(int back) {
+        return Math.floorMod(head - 1 - back, slots.length);
+    }
+}
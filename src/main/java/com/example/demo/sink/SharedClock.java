@@ -0,0 +1,106 @@
+package com.example.demo.sink;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 全局共享时钟：整个进程只有一个定时器
+ * <p>
+ * 设计说明：
+ * - 每个 tick 只计算一次（时间格式化、时间流 SSE 帧编码），通过热 Sink 广播给所有订阅者；
+ * - 慢订阅者直接丢弃 tick（directBestEffort），不会为其缓冲；
+ * - {@link #withHeartbeat} 为长连接注入心跳：连接空闲超过阈值时才发送，有正常事件的连接不会多发；
+ *   每个连接只有一个订阅和一个时间戳，没有独立的定时器，适合大量空闲连接。
+ */
+@Component
+public class SharedClock {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    /**
+     * SSE 注释心跳帧（客户端 EventSource 会忽略）
+     */
+    public static final SseFrame HEARTBEAT_FRAME = new SseFrame(":ping\n\n".getBytes(StandardCharsets.US_ASCII));
+
+    private final long tickNanos;
+    private final long idleNanos;
+
+    private final Sinks.Many<Tick> ticks = Sinks.many().multicast().directBestEffort();
+    private final AtomicLong sequence = new AtomicLong();
+    private Disposable timer;
+
+    public SharedClock(@Value("${sse.clock.tick:1s}") Duration tick,
+                       @Value("${sse.heartbeat.idle:15s}") Duration heartbeatIdle) {
+        this.tickNanos = tick.toNanos();
+        this.idleNanos = heartbeatIdle.toNanos();
+    }
+
+    /**
+     * 一次 tick
+     *
+     * @param time      格式化后的服务器时间（HH:mm:ss）
+     * @param timeFrame 时间流使用的 SSE 帧
+     */
+    public record Tick(long sequence, long nanoTime, String time, SseFrame timeFrame) {
+    }
+
+    @PostConstruct
+    public void start() {
+        timer = Schedulers.parallel().schedulePeriodically(this::tick, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (timer != null) {
+            timer.dispose();
+        }
+        ticks.tryEmitComplete();
+    }
+
+    private void tick() {
+        String time = LocalTime.ofInstant(Instant.now(), ZoneId.systemDefault()).format(TIME_FORMAT);
+        byte[] frame = ("data: 当前服务器时间: " + time + "\n\n").getBytes(StandardCharsets.UTF_8);
+        // 只有定时器线程发射，无需处理并发发射失败
+        ticks.tryEmitNext(new Tick(sequence.incrementAndGet(), System.nanoTime(), time, new SseFrame(frame)));
+    }
+
+    /**
+     * 共享的 tick 流（热流，订阅后从下一个 tick 开始接收）
+     */
+    public Flux<Tick> ticks() {
+        return ticks.asFlux();
+    }
+
+    /**
+     * 连接空闲（距上次发送超过阈值）时注入心跳；源流结束时一并结束
+     */
+    public <T> Flux<T> withHeartbeat(Flux<T> source, T heartbeat) {
+        return Flux.defer(() -> {
+            AtomicLong lastSentNanos = new AtomicLong(System.nanoTime());
+            return source.publish(shared -> Flux.merge(
+                    shared.doOnNext(item -> lastSentNanos.set(System.nanoTime())),
+                    ticks.asFlux()
+                            .filter(tick -> tick.nanoTime() - lastSentNanos.get() >= idleNanos)
+                            .map(tick -> {
+                                lastSentNanos.set(tick.nanoTime());
+                                return heartbeat;
+                            })
+                            .takeUntilOther(shared.then())));
+        });
+    }
+}
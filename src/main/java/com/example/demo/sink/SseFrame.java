@@ -0,0 +1,44 @@
+package com.example.demo.sink;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 已编码好的完整 SSE 帧（含 id: / event: / data: 行及结尾空行），不可变，可被所有订阅者共享
+ * <p>
+ * 在 Netty 下通过不可释放 ByteBuf 的 duplicate() 共享同一份字节，每个订阅者只分配一个轻量的索引视图，不复制内容。
+ */
+public final class SseFrame {
+
+    private final byte[] bytes;
+    private final ByteBuf shared;
+
+    public SseFrame(byte[] bytes) {
+        this.bytes = bytes;
+        this.shared = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(bytes));
+    }
+
+    /**
+     * 包装为写出用的 DataBuffer（不复制内容）
+     */
+    public DataBuffer toDataBuffer(DataBufferFactory factory) {
+        if (factory instanceof NettyDataBufferFactory nettyFactory) {
+            return nettyFactory.wrap(shared.duplicate());
+        }
+        return factory.wrap(bytes);
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.demo.sink;
+
+import reactor.core.publisher.FluxSink;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个订阅者（SSE 连接）的有界发送队列
+ * <p>
+ * 设计说明：
+ * - 用户 Sink 向每个订阅者的队列投递，投递只做入队，不等待、不失败：一个慢连接不会拖慢同一用户的其他连接，也不会让生产者看到失败；
+ * - 队列按下游请求量出队（WIP 排空，同一时刻只有一个线程向下游推送）；
+ * - 队列已满时按 {@link OverflowPolicy} 处理；
+ * - 队首事件等待超过 max-lag 视为慢消费者：清空队列，只发送一个 reconnect 事件后结束，客户端重连后按 Last-Event-ID 续传。
+ */
+final class SubscriberQueue {
+
+    /**
+     * 驱逐慢消费者时发送的最后一个事件（无 id，不影响客户端的 Last-Event-ID）
+     */
+    static final ProgressEvent RECONNECT_EVENT = new ProgressEvent(-1, null, ProgressFrameEncoder.RECONNECT_FRAME);
+
+    private final OverflowPolicy policy;
+    private final int capacity;
+    private final long maxLagNanos;
+    private final LongAdder dropped;
+    private final LongAdder conflated;
+
+    // 以下状态由 this 锁保护
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private boolean terminating;
+
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile FluxSink<ProgressEvent> downstream;
+    private volatile boolean evicted;
+    private volatile boolean done;
+
+    SubscriberQueue(OverflowPolicy policy, int capacity, long maxLagNanos, LongAdder dropped, LongAdder conflated) {
+        this.policy = policy;
+        this.capacity = Math.max(1, capacity);
+        this.maxLagNanos = maxLagNanos;
+        this.dropped = dropped;
+        this.conflated = conflated;
+    }
+
+    void attach(FluxSink<ProgressEvent> sink) {
+        this.downstream = sink;
+        sink.onRequest(n -> drain());
+    }
+
+    /**
+     * 断线补发的事件：数量受回放环限制，不计入容量检查
+     */
+    void offerReplay(ProgressEvent event) {
+        synchronized (this) {
+            if (terminating) {
+                return;
+            }
+            queue.addLast(new Pending(event, System.nanoTime()));
+        }
+        drain();
+    }
+
+    /**
+     * 投递一个实时事件（由用户 Sink 调用，不阻塞、不失败）
+     */
+    void offer(ProgressEvent event) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (terminating) {
+                return;
+            }
+            if (isLagging(now) || (queue.size() >= capacity && !makeRoom(event))) {
+                evictLocked();
+            } else {
+                queue.addLast(new Pending(event, now));
+            }
+        }
+        drain();
+    }
+
+    /**
+     * 定时检查：队首事件等待过久时驱逐（生产者停止推送后也能发现卡住的连接）
+     */
+    void checkLag(long now) {
+        boolean evictedNow = false;
+        synchronized (this) {
+            if (!terminating && isLagging(now)) {
+                evictLocked();
+                evictedNow = true;
+            }
+        }
+        if (evictedNow) {
+            drain();
+        }
+    }
+
+    /**
+     * 上游（用户 Sink）结束：发送完剩余事件后结束
+     */
+    void complete() {
+        synchronized (this) {
+            terminating = true;
+        }
+        drain();
+    }
+
+    void error(Throwable error) {
+        synchronized (this) {
+            terminating = true;
+            queue.clear();
+        }
+        done = true;
+        downstream.error(error);
+    }
+
+    private boolean isLagging(long now) {
+        Pending head = queue.peekFirst();
+        return maxLagNanos > 0 && head != null && now - head.enqueuedNanos > maxLagNanos;
+    }
+
+    /**
+     * 队列已满时按策略腾出一个位置
+     *
+     * @return false 表示无法腾出（应断开）
+     */
+    private boolean makeRoom(ProgressEvent incoming) {
+        switch (policy) {
+            case DROP_OLDEST -> {
+                queue.pollFirst();
+                dropped.increment();
+                return true;
+            }
+            case LATEST_PER_TASK -> {
+                // 优先合并同一任务的中间进度，其次丢弃最旧的中间进度；终态事件不丢弃
+                String taskId = incoming.progress().taskId();
+                Iterator<Pending> sameTask = queue.iterator();
+                while (sameTask.hasNext()) {
+                    ProgressEvent pending = sameTask.next().event;
+                    if (pending.progress() != null && !pending.progress().isTerminal()
+                            && pending.progress().taskId().equals(taskId)) {
+                        sameTask.remove();
+                        conflated.increment();
+                        return true;
+                    }
+                }
+                Iterator<Pending> oldest = queue.iterator();
+                while (oldest.hasNext()) {
+                    ProgressEvent pending = oldest.next().event;
+                    if (pending.progress() != null && !pending.progress().isTerminal()) {
+                        oldest.remove();
+                        dropped.increment();
+                        return true;
+                    }
+                }
+                return false;
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    private void evictLocked() {
+        queue.clear();
+        queue.addLast(new Pending(RECONNECT_EVENT, System.nanoTime()));
+        terminating = true;
+        evicted = true;
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            FluxSink<ProgressEvent> sink = downstream;
+            if (sink != null && !done) {
+                while (sink.requestedFromDownstream() > 0 && !sink.isCancelled()) {
+                    Pending next;
+                    synchronized (this) {
+                        next = queue.pollFirst();
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    sink.next(next.event);
+                }
+                boolean finished;
+                synchronized (this) {
+                    finished = terminating && queue.isEmpty();
+                }
+                if (finished) {
+                    done = true;
+                    sink.complete();
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * 当前待发送的事件数
+     */
+    int size() {
+        synchronized (this) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * 是否因慢消费被驱逐
+     */
+    boolean isEvicted() {
+        return evicted;
+    }
+
+    private record Pending(ProgressEvent event, long enqueuedNanos) {
+    }
+}
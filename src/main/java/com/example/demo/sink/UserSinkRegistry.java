@@ -0,0 +1,510 @@
+package com.example.demo.sink;
+
+import com.example.demo.bo.TaskProgress;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * 用户级进度 Sink 注册表（带容量上限 + 空闲 TTL 淘汰）
+ * <p>
+ * 设计说明：
+ * - 每个用户对应一个多播 Sink，首次使用（提交任务 / 建立 SSE 连接）时按需创建；
+ * - 一个 Sink 在“无订阅者且超过 idle-ttl 未推送事件”时视为空闲，由定时任务回收；
+ * - 注册表数量超过 max-size 时，优先回收最久未活跃的无订阅者 Sink；
+ * - 被回收的 Sink 会先 complete 再移除，下次使用时透明地重新创建；
+ * - 有订阅者的 Sink 永远不会被回收，因此容量上限是“软上限”；
+ * - 事件序号由注册表全局分配，以启动时刻的微秒时间戳为起点，Sink 被回收重建、进程重启后仍单调递增；
+ *   每个用户维护固定大小的回放环，断线重连时按 Last-Event-ID 补发遗漏事件；
+ * - 每个事件在推送时编码一次为完整 SSE 帧，回放与实时推送都复用同一份字节；
+ * - 同一用户的多个导出线程并发推送时只做无锁入队（多生产者 / 单消费者），由持有 WIP 的单个线程
+ *   分配序号、写回放环并 tryEmitNext，Sink 永远不会被并发调用（不会出现 FAIL_NON_SERIALIZED），
+ *   同一任务的事件保持生产顺序，不因竞争丢失；
+ * - 按 EmitResult 计数推送结果、按订阅者统计缓冲占用，供指标采集读取（推送路径上不分配对象）；
+ * - 每个订阅者有独立的有界发送队列（{@link SubscriberQueue}），满时按 {@link OverflowPolicy} 处理，
+ *   积压超过 max-lag 的慢连接被驱逐，不影响同一用户的其他连接，推送方也不会因此失败。
+ */
+@Component
+public class UserSinkRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(UserSinkRegistry.class);
+
+    private final int maxSize;
+    private final long idleTtlNanos;
+    private final int bufferSize;
+    private final int replaySize;
+    private final ProgressFrameEncoder frameEncoder;
+    private final OverflowPolicy overflowPolicy;
+    private final long maxLagNanos;
+
+    // 用户ID -> Sink 条目
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // 全局事件序号：所有用户共用，保证同一用户的序号跨 Sink 回收仍单调递增（Last-Event-ID 不会回退）；
+    // 以启动时刻的微秒时间戳为起点，重启后不会从 0 重新计数，客户端带着重启前的 Last-Event-ID 重连也不会过滤掉新事件
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong idleEvictionCount = new AtomicLong();
+    private final AtomicLong capacityEvictionCount = new AtomicLong();
+
+    // EmitResult.ordinal() -> 次数
+    private final LongAdder[] emitResults = new LongAdder[Sinks.EmitResult.values().length];
+
+    // 每个订阅者一个发送队列
+    private final Set<SubscriberQueue> subscriberQueues = ConcurrentHashMap.newKeySet();
+
+    // 发送队列溢出处理统计：丢弃 / 合并 / 驱逐的慢连接
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder conflatedCount = new LongAdder();
+    private final LongAdder slowConsumerEvictionCount = new LongAdder();
+
+    private volatile boolean closed;
+
+    public UserSinkRegistry(@Value("${export.sink.max-size:10000}") int maxSize,
+                            @Value("${export.sink.idle-ttl:10m}") Duration idleTtl,
+                            @Value("${export.sink.buffer-size:100}") int bufferSize,
+                            @Value("${export.sink.replay-size:256}") int replaySize,
+                            ProgressFrameEncoder frameEncoder,
+                            @Value("${export.sink.overflow-policy:latest-per-task}") OverflowPolicy overflowPolicy,
+                            @Value("${export.sink.max-lag:30s}") Duration maxLag) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("export.sink.max-size 必须大于0");
+        }
+        this.maxSize = maxSize;
+        this.idleTtlNanos = idleTtl.toNanos();
+        this.bufferSize = bufferSize;
+        this.replaySize = replaySize;
+        this.frameEncoder = frameEncoder;
+        this.overflowPolicy = overflowPolicy;
+        this.maxLagNanos = maxLag.toNanos();
+        for (int i = 0; i < emitResults.length; i++) {
+            emitResults[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 向指定用户的 Sink 推送一条进度（可在任意线程并发调用，不加锁、不阻塞）
+     * <p>
+     * 事件入队即视为已接收，实际推送可能由同一用户的另一个推送线程完成；
+     * 若拿到的 Sink 恰好已被回收（入队被拒绝），则重新获取新 Sink 再入队。
+     * 暂无订阅者不算失败：事件仍会写入回放环，重连后可补发。
+     *
+     * @return 入队成功返回 OK；注册表已关闭返回 FAIL_TERMINATED
+     */
+    public Sinks.EmitResult emit(String userId, TaskProgress progress) {
+        // JSON 序列化在入队前完成，排空线程只拼接 id 与事件名
+        Pending pending = new Pending(progress, frameEncoder.encodeData(progress));
+        boolean accepted;
+        do {
+            Entry entry = acquire(userId);
+            entry.touch();
+            accepted = entry.offer(pending);
+        } while (!accepted && !closed);
+        return accepted ? Sinks.EmitResult.OK : Sinks.EmitResult.FAIL_TERMINATED;
+    }
+
+    /**
+     * 仅当该用户的 Sink 已存在时推送（用于跨节点转发，不为无连接的用户创建 Sink）
+     *
+     * @return Sink 不存在时返回 FAIL_ZERO_SUBSCRIBER
+     */
+    public Sinks.EmitResult emitIfPresent(String userId, TaskProgress progress) {
+        if (!entries.containsKey(userId)) {
+            return Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER;
+        }
+        return emit(userId, progress);
+    }
+
+    /**
+     * 获取指定用户的进度流
+     * <p>
+     * 订阅时才解析 Sink；若 Sink 在订阅瞬间被回收导致流结束，则透明地重新订阅新 Sink。
+     *
+     * @param lastEventId 客户端已收到的最后一个事件序号，小于 0 表示新连接（不回放）
+     */
+    public Flux<ProgressEvent> stream(String userId, long lastEventId) {
+        return stream(userId, lastEventId, overflowPolicy);
+    }
+
+    /**
+     * 获取指定用户的进度流，并指定该连接发送队列满时的处理策略
+     * <p>
+     * 连接因慢消费被驱逐时，最后一个事件为 reconnect（seq 为 -1），随后流结束。
+     *
+     * @param policy 为 null 时使用 export.sink.overflow-policy
+     */
+    public Flux<ProgressEvent> stream(String userId, long lastEventId, OverflowPolicy policy) {
+        OverflowPolicy effective = policy != null ? policy : overflowPolicy;
+        AtomicLong cursor = new AtomicLong(lastEventId);
+        AtomicReference<SubscriberQueue> current = new AtomicReference<>();
+        return Flux.defer(() -> {
+                    Entry entry = acquire(userId);
+                    entry.touch();
+                    SubscriberQueue queue = new SubscriberQueue(effective, bufferSize, maxLagNanos,
+                            droppedCount, conflatedCount);
+                    current.set(queue);
+                    subscriberQueues.add(queue);
+                    return entry.subscribe(cursor.get(), queue).doFinally(signal -> {
+                        subscriberQueues.remove(queue);
+                        if (queue.isEvicted()) {
+                            slowConsumerEvictionCount.increment();
+                            log.info("用户 {} 的慢连接已被驱逐（策略: {}）", userId, effective);
+                        }
+                        entry.touch();
+                    });
+                })
+                .doOnNext(event -> {
+                    if (event.seq() >= 0) {
+                        cursor.set(event.seq());
+                    }
+                })
+                // 被驱逐的连接不再重新订阅
+                .repeat(() -> !closed && !current.get().isEvicted());
+    }
+
+    private Entry acquire(String userId) {
+        Entry entry = entries.get(userId);
+        if (entry != null) {
+            return entry;
+        }
+        entry = entries.computeIfAbsent(userId, this::createEntry);
+        if (entries.size() > maxSize) {
+            evictForCapacity();
+        }
+        return entry;
+    }
+
+    private Entry createEntry(String userId) {
+        log.debug("为用户 {} 创建全局进度 Sink", userId);
+        createdCount.incrementAndGet();
+        // 多播到多个订阅者（如多标签页）；无订阅者时不缓存（断线补发由回放环负责），
+        // 每个订阅者的有界发送队列见 Entry#subscribe
+        return new Entry(Sinks.many().multicast().directBestEffort(), new ReplayRing(replaySize),
+                frameEncoder, sequence, emitResults);
+    }
+
+    /**
+     * 定时回收空闲 Sink：无订阅者且超过 idle-ttl 未活跃
+     */
+    @Scheduled(fixedDelayString = "${export.sink.sweep-interval-ms:30000}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        // 顺带检查停止推送后仍积压的慢连接
+        for (SubscriberQueue queue : subscriberQueues) {
+            queue.checkLag(now);
+        }
+        int evicted = 0;
+        for (String userId : entries.keySet()) {
+            if (evictIf(userId, entry -> entry.isIdle(now, idleTtlNanos))) {
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            idleEvictionCount.addAndGet(evicted);
+            log.info("回收空闲进度 Sink {} 个，当前数量: {}", evicted, entries.size());
+        }
+    }
+
+    /**
+     * 超出容量时按最近活跃时间回收无订阅者的 Sink，回收到上限的 90% 以避免频繁触发
+     */
+    private synchronized void evictForCapacity() {
+        int excess = entries.size() - maxSize * 9 / 10;
+        if (excess <= 0) {
+            return;
+        }
+        List<Map.Entry<String, Entry>> candidates = new ArrayList<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (e.getValue().sink.currentSubscriberCount() == 0) {
+                candidates.add(e);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(e -> e.getValue().lastActiveNanos));
+
+        int evicted = 0;
+        for (int i = 0; i < candidates.size() && evicted < excess; i++) {
+            if (evictIf(candidates.get(i).getKey(), entry -> entry.sink.currentSubscriberCount() == 0)) {
+                evicted++;
+            }
+        }
+        capacityEvictionCount.addAndGet(evicted);
+        if (entries.size() > maxSize) {
+            log.warn("进度 Sink 数量 {} 超过上限 {}，剩余 Sink 均有订阅者，无法继续回收", entries.size(), maxSize);
+        }
+    }
+
+    private boolean evictIf(String userId, Predicate<Entry> condition) {
+        boolean[] evicted = {false};
+        entries.computeIfPresent(userId, (key, entry) -> {
+            if (!condition.test(entry)) {
+                return entry;
+            }
+            entry.close();
+            evicted[0] = true;
+            return null;
+        });
+        return evicted[0];
+    }
+
+    /**
+     * 累计推送结果次数（FAIL_ZERO_SUBSCRIBER 计入原始结果，便于区分无人在线）
+     */
+    public long emitCount(Sinks.EmitResult result) {
+        return emitResults[result.ordinal()].sum();
+    }
+
+    /**
+     * 最近分配的事件序号
+     */
+    public long currentSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * 把序号推进到不小于 observed（多节点转发时用对端序号同步，之后分配的序号都大于对端已分配的序号）
+     */
+    public void advanceSequence(long observed) {
+        sequence.accumulateAndGet(observed, Math::max);
+    }
+
+    /**
+     * 当前订阅者（SSE 连接）数
+     */
+    public int subscriberCount() {
+        return subscriberQueues.size();
+    }
+
+    /**
+     * 所有订阅者缓冲中待发送的事件总数
+     */
+    public long bufferedEvents() {
+        long total = 0;
+        for (SubscriberQueue queue : subscriberQueues) {
+            total += queue.size();
+        }
+        return total;
+    }
+
+    /**
+     * 单个订阅者缓冲的最大占用
+     */
+    public int maxBufferedEvents() {
+        int max = 0;
+        for (SubscriberQueue queue : subscriberQueues) {
+            max = Math.max(max, queue.size());
+        }
+        return max;
+    }
+
+    /**
+     * 因发送队列已满被丢弃的事件数（drop-oldest / latest-per-task）
+     */
+    public long droppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * 因同一任务有更新的进度而被合并掉的事件数（latest-per-task）
+     */
+    public long conflatedCount() {
+        return conflatedCount.sum();
+    }
+
+    /**
+     * 因慢消费被驱逐的连接数
+     */
+    public long slowConsumerEvictionCount() {
+        return slowConsumerEvictionCount.sum();
+    }
+
+    /**
+     * 单个订阅者的缓冲容量
+     */
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * 注册表当前占用与回收统计
+     */
+    public RegistryStats stats() {
+        return new RegistryStats(entries.size(), maxSize, createdCount.get(),
+                idleEvictionCount.get(), capacityEvictionCount.get());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        entries.values().forEach(Entry::close);
+        entries.clear();
+    }
+
+    /**
+     * 待推送的进度（JSON 已在生产者线程编码）
+     */
+    private record Pending(TaskProgress progress, byte[] data) {
+    }
+
+    /**
+     * 新订阅者：在排空线程中完成回放快照与实时订阅
+     */
+    private record Attach(long lastEventId, SubscriberQueue queue, Disposable.Swap live) {
+    }
+
+    private static final class Entry {
+
+        // state 的最高位：已关闭，不再接受入队；低位：正在入队的生产者数
+        private static final int CLOSED = Integer.MIN_VALUE;
+
+        final Sinks.Many<ProgressEvent> sink;
+        final ReplayRing ring;
+        final ProgressFrameEncoder encoder;
+        final AtomicLong sequence;
+        final LongAdder[] emitResults;
+
+        // 多生产者无锁入队，持有 WIP 的单个线程出队（Pending / Attach）
+        final Queue<Object> commands = new ConcurrentLinkedQueue<>();
+        final AtomicInteger wip = new AtomicInteger();
+        final AtomicInteger state = new AtomicInteger();
+
+        // 仅在持有 WIP 的线程中读写，WIP 的原子操作保证可见性
+        boolean completed;
+
+        volatile long lastActiveNanos = System.nanoTime();
+
+        Entry(Sinks.Many<ProgressEvent> sink, ReplayRing ring, ProgressFrameEncoder encoder, AtomicLong sequence,
+              LongAdder[] emitResults) {
+            this.sink = sink;
+            this.ring = ring;
+            this.encoder = encoder;
+            this.sequence = sequence;
+            this.emitResults = emitResults;
+        }
+
+        /**
+         * 入队并尝试排空
+         *
+         * @return false 表示该 Sink 已关闭（被回收），调用方应重新获取
+         */
+        boolean offer(Object command) {
+            if (state.getAndIncrement() < 0) {
+                state.decrementAndGet();
+                // 可能是关闭前最后一个在途生产者，由排空线程确认后结束 Sink
+                drain();
+                return false;
+            }
+            commands.offer(command);
+            state.decrementAndGet();
+            drain();
+            return true;
+        }
+
+        /**
+         * 关闭：拒绝后续入队，排空已入队的事件后结束 Sink
+         */
+        void close() {
+            state.getAndUpdate(s -> s | CLOSED);
+            drain();
+        }
+
+        /**
+         * 同一时刻只有一个线程执行：按入队顺序分配序号、写入回放环并推送，
+         * 保证序号、回放环与实时流顺序一致，且 Sink 不会被并发调用
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                Object command;
+                while ((command = commands.poll()) != null) {
+                    if (command instanceof Pending pending) {
+                        publish(pending);
+                    } else {
+                        attach((Attach) command);
+                    }
+                }
+                // 已关闭且没有在途生产者：之后不会再有入队，可以结束 Sink
+                if (!completed && state.get() == CLOSED && commands.isEmpty()) {
+                    completed = true;
+                    sink.tryEmitComplete();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void publish(Pending pending) {
+            long seq = sequence.incrementAndGet();
+            ProgressEvent event = new ProgressEvent(seq, pending.progress,
+                    encoder.frame(seq, pending.progress, pending.data));
+            ring.add(event);
+            emitResults[sink.tryEmitNext(event).ordinal()].increment();
+        }
+
+        private void attach(Attach attach) {
+            ring.since(attach.lastEventId).forEach(attach.queue::offerReplay);
+            SubscriberQueue queue = attach.queue;
+            attach.live.update(sink.asFlux().subscribe(queue::offer, queue::error, queue::complete));
+        }
+
+        /**
+         * 先回放 lastEventId 之后的事件，再接上实时流
+         * <p>
+         * 回放快照与实时订阅作为一条命令进入推送队列，与推送串行执行，保证不丢、不重。
+         * 多播 Sink 只向订阅者的发送队列入队（无界请求），积压与溢出由 {@link SubscriberQueue} 按连接处理。
+         * Sink 已关闭时直接结束，由 stream 的 repeat 重新订阅新 Sink。
+         */
+        Flux<ProgressEvent> subscribe(long lastEventId, SubscriberQueue queue) {
+            return Flux.create(emitter -> {
+                queue.attach(emitter);
+                Disposable.Swap live = Disposables.swap();
+                emitter.onDispose(live);
+                if (!offer(new Attach(lastEventId, queue, live))) {
+                    queue.complete();
+                }
+            });
+        }
+
+        void touch() {
+            lastActiveNanos = System.nanoTime();
+        }
+
+        boolean isIdle(long now, long ttlNanos) {
+            return sink.currentSubscriberCount() == 0 && now - lastActiveNanos > ttlNanos;
+        }
+    }
+
+    /**
+     * @param size              当前 Sink 数量
+     * @param maxSize           容量上限
+     * @param created           累计创建数
+     * @param idleEvictions     因空闲 TTL 回收的数量
+     * @param capacityEvictions 因超出容量回收的数量
+     */
+    public record RegistryStats(int size, int maxSize, long created, long idleEvictions, long capacityEvictions) {
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.demo.thread;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 导出任务派发器：按配置选择执行模式，并给出明确的准入结果（而不是抛出异常）
+ * <p>
+ * - pool：沿用 exportTaskExecutor 线程池，队列满时返回 REJECTED；
+ * - virtual：每个任务一个虚拟线程（运行时不支持时退化为平台线程），
+ *   用信号量限制真正占用磁盘 / 数据源的并发数，而不是限制线程数；
+ *   执行中 + 等待中的任务超过 max-concurrent + max-queued 时返回 REJECTED。
+ */
+@Component
+public class ExportTaskDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportTaskDispatcher.class);
+
+    public enum Mode {POOL, VIRTUAL}
+
+    /**
+     * 准入结果
+     */
+    public enum Admission {
+        /** 已开始执行 */
+        ACCEPTED,
+        /** 已受理，等待执行槽位 */
+        QUEUED,
+        /** 超出容量，未受理 */
+        REJECTED
+    }
+
+    private final Mode mode;
+    private final TaskExecutor poolExecutor;
+    private final ThreadFactory threadFactory;
+    private final int maxConcurrent;
+    private final int maxQueued;
+
+    private final Semaphore permits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ExportTaskDispatcher(@Value("${export.executor.mode:pool}") Mode mode,
+                                @Qualifier("exportTaskExecutor") TaskExecutor poolExecutor,
+                                @Qualifier("exportTaskThreadFactory") ThreadFactory threadFactory,
+                                @Value("${export.executor.max-concurrent:8}") int maxConcurrent,
+                                @Value("${export.executor.max-queued:200}") int maxQueued) {
+        this.mode = mode;
+        this.poolExecutor = poolExecutor;
+        this.threadFactory = threadFactory;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.permits = new Semaphore(maxConcurrent, true);
+        log.info("导出任务执行模式: {}, maxConcurrent: {}, maxQueued: {}", mode, maxConcurrent, maxQueued);
+    }
+
+    /**
+     * 派发任务
+     */
+    public Admission dispatch(Runnable task) {
+        return mode == Mode.VIRTUAL ? dispatchPerThread(task) : dispatchToPool(task);
+    }
+
+    private Admission dispatchToPool(Runnable task) {
+        // 在提交前判断：所有线程都在忙时任务会进入队列（提交后读取队列长度会把其他任务的排队算到本任务头上）
+        boolean saturated = poolExecutor instanceof ThreadPoolTaskExecutor pool
+                && pool.getActiveCount() >= pool.getMaxPoolSize();
+        try {
+            poolExecutor.execute(task);
+        } catch (TaskRejectedException e) {
+            rejected.incrementAndGet();
+            return Admission.REJECTED;
+        }
+        return saturated ? Admission.QUEUED : Admission.ACCEPTED;
+    }
+
+    private Admission dispatchPerThread(Runnable task) {
+        int pending = inFlight.incrementAndGet();
+        if (pending > maxConcurrent + maxQueued) {
+            inFlight.decrementAndGet();
+            rejected.incrementAndGet();
+            return Admission.REJECTED;
+        }
+        threadFactory.newThread(() -> {
+            try {
+                // 虚拟线程在此处挂起几乎没有成本，排队即等待信号量
+                permits.acquire();
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("导出任务在等待执行槽位时被中断");
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }).start();
+        return pending > maxConcurrent ? Admission.QUEUED : Admission.ACCEPTED;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * 执行中 + 等待中的任务数（仅 virtual 模式）
+     */
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 累计拒绝次数（线程池队列已满 / virtual 模式超出容量）
+     */
+    public long rejectedCount() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,335 @@
+package com.example.demo.thread;
+
+import com.example.demo.bo.ExportPriority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 导出任务公平调度器，位于 {@link ExportTaskDispatcher} 之前
+ * <p>
+ * 设计说明：
+ * - 执行槽位（max-running）由调度器持有，任务只有拿到槽位才交给派发器执行，派发器不再承担排队；
+ * - 优先级之间按权重做步长调度（stride scheduling）：HIGH : NORMAL : LOW = 4 : 2 : 1，低优先级不会被饿死；
+ * - 同一优先级内按用户轮询（round-robin），每个用户每轮只出一个任务，一个用户提交再多任务也只占自己的份额；
+ * - 取消排队中的任务直接出队；取消执行中的任务会中断其线程，并立即归还槽位给下一个任务；
+ * - 执行中任务的终态只能由一方取得：工作线程通过 {@link #tryFinish} 把 RUNNING 改为 FINISHING，取消把 RUNNING 改为 CANCELLED，
+ *   两者在任务锁内比较并设置，失败的一方不得再推送终态；
+ * - 排队总数或单用户排队数超出上限时返回 REJECTED。
+ */
+@Component
+public class FairExportScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(FairExportScheduler.class);
+
+    // 步长调度的基准值：stride = STRIDE_BASE / weight
+    private static final long STRIDE_BASE = 1 << 20;
+
+    /**
+     * 取消结果
+     */
+    public enum CancelOutcome {
+        /** 任务不存在或已结束 */
+        NOT_FOUND,
+        /** 任务在排队中，已出队 */
+        DEQUEUED,
+        /** 任务在执行中，已中断 */
+        INTERRUPTED
+    }
+
+    private final ExportTaskDispatcher dispatcher;
+    private final int maxRunning;
+    private final int maxQueued;
+    private final int maxQueuedPerUser;
+
+    // 以下状态由 this 锁保护
+    private final Map<ExportPriority, PriorityClass> classes = new EnumMap<>(ExportPriority.class);
+    private final Map<String, ScheduledTask> tasks = new HashMap<>();
+    private final Map<String, Integer> queuedPerUser = new HashMap<>();
+    private int running;
+    private int queued;
+    private long rejected;
+
+    public FairExportScheduler(ExportTaskDispatcher dispatcher,
+                               @Value("${export.scheduler.max-running:8}") int maxRunning,
+                               @Value("${export.scheduler.max-queued:200}") int maxQueued,
+                               @Value("${export.scheduler.max-queued-per-user:50}") int maxQueuedPerUser) {
+        this.dispatcher = dispatcher;
+        this.maxRunning = maxRunning;
+        this.maxQueued = maxQueued;
+        this.maxQueuedPerUser = maxQueuedPerUser;
+        for (ExportPriority priority : ExportPriority.values()) {
+            classes.put(priority, new PriorityClass(STRIDE_BASE / priority.weight()));
+        }
+    }
+
+    /**
+     * 提交任务
+     *
+     * @return ACCEPTED：已开始执行；QUEUED：排队等待槽位；REJECTED：超出排队上限，未受理
+     */
+    public synchronized ExportTaskDispatcher.Admission submit(String taskId, String userId, ExportPriority priority,
+                                                              Runnable work) {
+        int userQueued = queuedPerUser.getOrDefault(userId, 0);
+        if (queued >= maxQueued || userQueued >= maxQueuedPerUser) {
+            rejected++;
+            return ExportTaskDispatcher.Admission.REJECTED;
+        }
+        ScheduledTask task = new ScheduledTask(taskId, userId, priority, work);
+        tasks.put(taskId, task);
+        enqueue(task);
+        dispatchReady();
+        return task.state == State.QUEUED ? ExportTaskDispatcher.Admission.QUEUED : ExportTaskDispatcher.Admission.ACCEPTED;
+    }
+
+    /**
+     * 取消任务：排队中的直接出队，执行中的中断线程并立即释放槽位
+     *
+     * @param userId 任务所属用户，不匹配时视为不存在
+     */
+    public CancelOutcome cancel(String taskId, String userId) {
+        ScheduledTask task;
+        synchronized (this) {
+            task = tasks.get(taskId);
+            if (task == null || !task.userId.equals(userId)) {
+                return CancelOutcome.NOT_FOUND;
+            }
+            if (task.state == State.QUEUED) {
+                classes.get(task.priority).remove(task);
+                dequeued(task);
+                tasks.remove(taskId);
+                task.state = State.CANCELLED;
+                return CancelOutcome.DEQUEUED;
+            }
+        }
+        synchronized (task) {
+            // FINISHING：工作线程已取得终态（正在推送 completed / failed），取消不再生效
+            if (task.state != State.RUNNING) {
+                return CancelOutcome.NOT_FOUND;
+            }
+            task.state = State.CANCELLED;
+            // 在任务锁内中断：工作线程退出任务前也要获取该锁，因此不会误中断线程池中的下一个任务
+            if (task.runner != null) {
+                task.runner.interrupt();
+            }
+        }
+        log.info("中断执行中的导出任务 | userId: {}, taskId: {}", task.userId, taskId);
+        finished(task);
+        return CancelOutcome.INTERRUPTED;
+    }
+
+    /**
+     * 工作线程在推送 completed / failed 之前调用，与 {@link #cancel} 竞争任务的终态
+     *
+     * @return true：取得终态，由调用方推送；false：任务已被取消（cancelled 已推送），调用方不得再推送
+     */
+    public boolean tryFinish(String taskId) {
+        ScheduledTask task;
+        synchronized (this) {
+            task = tasks.get(taskId);
+        }
+        if (task == null) {
+            return false;
+        }
+        synchronized (task) {
+            if (task.state != State.RUNNING) {
+                return false;
+            }
+            task.state = State.FINISHING;
+            return true;
+        }
+    }
+
+    private void enqueue(ScheduledTask task) {
+        PriorityClass priorityClass = classes.get(task.priority);
+        if (priorityClass.isEmpty()) {
+            // 重新变为活跃的优先级从当前最小 pass 开始，不能用积攒的"欠账"插队
+            priorityClass.pass = Math.max(priorityClass.pass, minActivePass());
+        }
+        priorityClass.add(task);
+        queued++;
+        queuedPerUser.merge(task.userId, 1, Integer::sum);
+    }
+
+    private void dequeued(ScheduledTask task) {
+        queued--;
+        queuedPerUser.computeIfPresent(task.userId, (user, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private long minActivePass() {
+        long min = Long.MAX_VALUE;
+        for (PriorityClass priorityClass : classes.values()) {
+            if (!priorityClass.isEmpty()) {
+                min = Math.min(min, priorityClass.pass);
+            }
+        }
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    /**
+     * 有空闲槽位时按（优先级步长, 用户轮询）取出任务交给派发器
+     */
+    private void dispatchReady() {
+        while (running < maxRunning && queued > 0) {
+            PriorityClass next = null;
+            for (PriorityClass priorityClass : classes.values()) {
+                if (!priorityClass.isEmpty() && (next == null || priorityClass.pass < next.pass)) {
+                    next = priorityClass;
+                }
+            }
+            ScheduledTask task = next.poll();
+            next.pass += next.stride;
+            dequeued(task);
+            task.state = State.RUNNING;
+            running++;
+            if (dispatcher.dispatch(() -> execute(task)) == ExportTaskDispatcher.Admission.REJECTED) {
+                // 派发器容量不足（通常是线程池配置小于 max-running），放回队首等待下一次释放
+                log.warn("派发器拒绝导出任务，重新排队 | taskId: {}", task.taskId);
+                running--;
+                task.state = State.QUEUED;
+                next.pass -= next.stride;
+                next.addFirst(task);
+                queued++;
+                queuedPerUser.merge(task.userId, 1, Integer::sum);
+                return;
+            }
+        }
+    }
+
+    private void execute(ScheduledTask task) {
+        synchronized (task) {
+            if (task.state != State.RUNNING) {
+                return;
+            }
+            task.runner = Thread.currentThread();
+        }
+        boolean cancelled;
+        try {
+            task.work.run();
+        } finally {
+            synchronized (task) {
+                task.runner = null;
+                cancelled = task.state == State.CANCELLED;
+                task.state = State.DONE;
+            }
+            if (cancelled) {
+                // 清除取消时设置的中断标记，避免影响线程池中的后续任务
+                Thread.interrupted();
+            } else {
+                finished(task);
+            }
+        }
+    }
+
+    private synchronized void finished(ScheduledTask task) {
+        tasks.remove(task.taskId);
+        running--;
+        dispatchReady();
+    }
+
+    /**
+     * 调度统计
+     */
+    public record SchedulerStats(int running, int maxRunning, int queued, Map<ExportPriority, Integer> queuedByPriority,
+                                 int queuedUsers) {
+    }
+
+    /**
+     * 累计因排队已满被拒绝的提交数
+     */
+    public synchronized long rejectedCount() {
+        return rejected;
+    }
+
+    public synchronized SchedulerStats stats() {
+        Map<ExportPriority, Integer> byPriority = new EnumMap<>(ExportPriority.class);
+        classes.forEach((priority, priorityClass) -> byPriority.put(priority, priorityClass.size));
+        return new SchedulerStats(running, maxRunning, queued, byPriority, queuedPerUser.size());
+    }
+
+    private enum State {QUEUED, RUNNING, FINISHING, CANCELLED, DONE}
+
+    private static final class ScheduledTask {
+        final String taskId;
+        final String userId;
+        final ExportPriority priority;
+        final Runnable work;
+        State state = State.QUEUED;
+        Thread runner;
+
+        ScheduledTask(String taskId, String userId, ExportPriority priority, Runnable work) {
+            this.taskId = taskId;
+            this.userId = userId;
+            this.priority = priority;
+            this.work = work;
+        }
+    }
+
+    /**
+     * 一个优先级的队列：活跃用户环 + 每用户 FIFO
+     */
+    private static final class PriorityClass {
+        final long stride;
+        long pass;
+        int size;
+        final ArrayDeque<String> ring = new ArrayDeque<>();
+        final Map<String, ArrayDeque<ScheduledTask>> perUser = new HashMap<>();
+
+        PriorityClass(long stride) {
+            this.stride = stride;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(ScheduledTask task) {
+            perUser.computeIfAbsent(task.userId, user -> {
+                ring.addLast(user);
+                return new ArrayDeque<>();
+            }).addLast(task);
+            size++;
+        }
+
+        void addFirst(ScheduledTask task) {
+            ArrayDeque<ScheduledTask> queue = perUser.get(task.userId);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                perUser.put(task.userId, queue);
+                ring.addFirst(task.userId);
+            }
+            queue.addFirst(task);
+            size++;
+        }
+
+        ScheduledTask poll() {
+            String user = ring.pollFirst();
+            ArrayDeque<ScheduledTask> queue = perUser.get(user);
+            ScheduledTask task = queue.pollFirst();
+            if (queue.isEmpty()) {
+                perUser.remove(user);
+            } else {
+                ring.addLast(user);
+            }
+            size--;
+            return task;
+        }
+
+        void remove(ScheduledTask task) {
+            ArrayDeque<ScheduledTask> queue = perUser.get(task.userId);
+            if (queue != null && queue.remove(task)) {
+                size--;
+                if (queue.isEmpty()) {
+                    perUser.remove(task.userId);
+                    ring.remove(task.userId);
+                }
+            }
+        }
+    }
+}
@@ -1,22 +1,72 @@
 package com.example.demo.thread;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+
 @Configuration
+@EnableScheduling
 public class TaskExecutorConfig {
 
+    private static final Logger log = LoggerFactory.getLogger(TaskExecutorConfig.class);
+
     @Bean("exportTaskExecutor")
     public TaskExecutor exportTaskExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(1);
+        // 排队由 FairExportScheduler 负责，派发到这里的任务数不超过其执行槽位，
+        // 核心线程数与最大线程数一致，避免任务先进入队列而只有一个线程在执行
+        executor.setCorePoolSize(8);
         executor.setMaxPoolSize(8);
+        executor.setAllowCoreThreadTimeOut(true);
         executor.setQueueCapacity(50);
         executor.setThreadNamePrefix("export-worker-");
         executor.setDaemon(false); // 非守护线程
         executor.initialize(); // 必须调用
         return executor;
     }
+
+    /**
+     * 分区并行导出使用的工作窃取线程池（所有导出任务共享，单任务的并行度由 export.partition.max-parallelism 限制）
+     *
+     * @param parallelism 小于等于 0 时取 CPU 核数
+     */
+    @Bean(value = "exportPartitionPool", destroyMethod = "shutdownNow")
+    public ForkJoinPool exportPartitionPool(@Value("${export.partition.pool-parallelism:0}") int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("export-partition-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * virtual 模式下每个导出任务使用的线程工厂
+     * <p>
+     * JDK 21+ 创建虚拟线程；当前运行时不支持虚拟线程时退化为平台线程（每任务一个线程）。
+     */
+    @Bean("exportTaskThreadFactory")
+    public ThreadFactory exportTaskThreadFactory() {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "export-vt-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            log.info("当前 JDK 不支持虚拟线程，virtual 模式将使用平台线程执行导出任务");
+            CustomizableThreadFactory factory = new CustomizableThreadFactory("export-thread-");
+            factory.setDaemon(true);
+            return factory;
+        }
+    }
 }
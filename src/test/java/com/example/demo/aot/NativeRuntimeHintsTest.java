@@ -0,0 +1,34 @@
+package com.example.demo.aot;
+
+import com.alibaba.dashscope.aigc.generation.GenerationResult;
+import com.alibaba.dashscope.common.Message;
+import com.example.demo.bo.ExportTaskRequest;
+import com.example.demo.bo.TaskProgress;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeRuntimeHintsTest {
+
+	@Test
+	void registersBindingAndDashScopeModelHints() {
+		RuntimeHints hints = new RuntimeHints();
+		new NativeRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+		// Jackson 绑定的记录类型
+		assertTrue(RuntimeHintsPredicates.reflection().onType(TaskProgress.class).test(hints));
+		assertTrue(RuntimeHintsPredicates.reflection().onType(ExportTaskRequest.class).test(hints));
+		// Gson 直接读写字段
+		assertTrue(RuntimeHintsPredicates.reflection().onType(GenerationResult.class)
+				.withMemberCategory(MemberCategory.DECLARED_FIELDS).test(hints));
+		assertTrue(RuntimeHintsPredicates.reflection().onType(Message.class)
+				.withMemberCategory(MemberCategory.DECLARED_FIELDS).test(hints));
+		assertTrue(RuntimeHintsPredicates.reflection()
+				.onType(TypeReference.of("com.alibaba.dashscope.aigc.generation.GenerationOutput$Choice"))
+				.withMemberCategory(MemberCategory.DECLARED_FIELDS).test(hints));
+	}
+}
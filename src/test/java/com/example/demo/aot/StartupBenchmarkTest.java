@@ -0,0 +1,159 @@
+package com.example.demo.aot;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 各启动模式的冷启动对比：从进程启动到首个请求成功的耗时（time-to-first-request），以及此时的常驻内存（RSS）
+ * <p>
+ * 模式：
+ * - jvm：可执行 jar，不启用 AOT；
+ * - aot：同一个 jar，-Dspring.aot.enabled=true；
+ * - cds：解压后的 jar + AOT + AppCDS 归档；
+ * - native：GraalVM 原生镜像。
+ * 产物不存在的模式会跳过。
+ * <p>
+ * 准备：mvn -Pcds package -DskipTests（jvm / aot / cds）；mvn -Pnative native:compile -DskipTests（native）
+ * 运行：mvn test -Pbenchmark -Dtest=StartupBenchmarkTest [-Dstartup.bench.runs=5]
+ * RSS 读取 /proc/{pid}/status，仅 Linux 下有值。
+ */
+@Tag("benchmark")
+class StartupBenchmarkTest {
+
+	private static final int RUNS = Integer.getInteger("startup.bench.runs", 5);
+	private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(60);
+	private static final Path TARGET = Path.of(System.getProperty("startup.bench.target", "target"));
+	private static final String FINAL_NAME = System.getProperty("startup.bench.final-name", "demo-0.0.1-SNAPSHOT");
+
+	private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void timeToFirstRequestAndRssPerMode() throws Exception {
+		String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+		Path jar = TARGET.resolve(FINAL_NAME + ".jar");
+		Path cdsJar = TARGET.resolve("cds").resolve(FINAL_NAME + ".jar");
+		Path cdsArchive = TARGET.resolve("cds").resolve("application.jsa");
+		Path nativeImage = TARGET.resolve("demo");
+
+		List<Mode> modes = new ArrayList<>();
+		if (Files.isRegularFile(jar)) {
+			modes.add(new Mode("jvm", List.of(java, "-jar", jar.toString())));
+			modes.add(new Mode("aot", List.of(java, "-Dspring.aot.enabled=true", "-jar", jar.toString())));
+		}
+		if (Files.isRegularFile(cdsJar) && Files.isRegularFile(cdsArchive)) {
+			modes.add(new Mode("cds", List.of(java, "-XX:SharedArchiveFile=" + cdsArchive, "-Xlog:cds=off",
+					"-Dspring.aot.enabled=true", "-jar", cdsJar.toString())));
+		}
+		if (Files.isExecutable(nativeImage)) {
+			modes.add(new Mode("native", List.of(nativeImage.toString())));
+		}
+		Assumptions.assumeFalse(modes.isEmpty(), "未找到构建产物，先执行 mvn -Pcds package -DskipTests");
+
+		// 预热页缓存，避免第一个模式吃亏
+		measure(modes.get(0));
+
+		System.out.printf("runs=%d（取中位数）%n", RUNS);
+		System.out.println("mode     first-request(ms)  min(ms)  max(ms)  rss(MB)");
+		for (Mode mode : modes) {
+			long[] millis = new long[RUNS];
+			long[] rss = new long[RUNS];
+			for (int i = 0; i < RUNS; i++) {
+				Sample sample = measure(mode);
+				millis[i] = sample.firstRequestMillis();
+				rss[i] = sample.rssKb();
+			}
+			Arrays.sort(millis);
+			Arrays.sort(rss);
+			System.out.printf("%-7s  %17d  %7d  %7d  %7.1f%n", mode.name(), millis[RUNS / 2], millis[0],
+					millis[RUNS - 1], rss[RUNS / 2] / 1024.0);
+		}
+	}
+
+	/**
+	 * 启动一次并在首个请求成功后记录耗时与 RSS，然后结束进程
+	 */
+	private Sample measure(Mode mode) throws Exception {
+		int port = freePort();
+		List<String> command = new ArrayList<>(mode.command());
+		command.add("--server.port=" + port);
+		command.add("--export.storage.dir=" + Files.createTempDirectory(tempDir, mode.name()));
+		command.add("--logging.level.root=WARN");
+
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/tasks/sinks/stats"))
+				.timeout(Duration.ofSeconds(5))
+				.build();
+		long start = System.nanoTime();
+		Process process = new ProcessBuilder(command)
+				.redirectErrorStream(true)
+				.redirectOutput(tempDir.resolve(mode.name() + ".log").toFile())
+				.start();
+		try {
+			while (true) {
+				assertTrue(process.isAlive(), mode.name() + " 启动失败，见 " + tempDir.resolve(mode.name() + ".log"));
+				assertFalse(System.nanoTime() - start > STARTUP_TIMEOUT.toNanos(), mode.name() + " 启动超时");
+				try {
+					if (httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+						break;
+					}
+				} catch (IOException e) {
+					// 端口尚未监听
+				}
+				Thread.sleep(5);
+			}
+			long firstRequestMillis = (System.nanoTime() - start) / 1_000_000;
+			return new Sample(firstRequestMillis, rssKb(process.pid()));
+		} finally {
+			process.destroy();
+			if (!process.waitFor(10, TimeUnit.SECONDS)) {
+				process.destroyForcibly().waitFor();
+			}
+		}
+	}
+
+	private static long rssKb(long pid) {
+		try {
+			for (String line : Files.readAllLines(Path.of("/proc", String.valueOf(pid), "status"))) {
+				if (line.startsWith("VmRSS:")) {
+					return Long.parseLong(line.replaceAll("\\D", ""));
+				}
+			}
+		} catch (IOException | NumberFormatException e) {
+			// 非 Linux
+		}
+		return -1;
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private record Mode(String name, List<String> command) {
+	}
+
+	private record Sample(long firstRequestMillis, long rssKb) {
+	}
+}
@@ -0,0 +1,117 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.bo.TaskProgress;
+import com.example.demo.sink.ProgressEvent;
+import com.example.demo.sink.OverflowPolicy;
+import com.example.demo.sink.ProgressFrameEncoder;
+import com.example.demo.sink.UserSinkRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多个导出线程同时向同一用户的 Sink 推送（同一用户并发执行多个导出任务的场景）
+ * <p>
+ * - rawTryEmitNext：直接并发调用 tryEmitNext，统计 OK / FAIL_NON_SERIALIZED / FAIL_OVERFLOW 的次数；
+ * - registryEmit：经 UserSinkRegistry#emit（无锁入队，单线程排空时分配序号、写回放环与拼装帧），对比串行化后的吞吐。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ContendedEmitBenchmark {
+
+	@Param({"backpressure", "bestEffort"})
+	public String sinkType;
+
+	private Sinks.Many<ProgressEvent> sink;
+	private Disposable subscription;
+	private ProgressEvent event;
+
+	private UserSinkRegistry registry;
+	private Disposable registrySubscription;
+	private TaskProgress progress;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		sink = SinkEmitBenchmark.newSink(sinkType);
+		subscription = sink.asFlux().subscribe();
+		event = SinkEmitBenchmark.progressEvent();
+
+		registry = new UserSinkRegistry(16, Duration.ofMinutes(10), 100, 256, new ProgressFrameEncoder(new ObjectMapper()),
+				OverflowPolicy.LATEST_PER_TASK, Duration.ofSeconds(30));
+		registrySubscription = registry.stream("u1", -1).subscribe();
+		progress = event.progress();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		subscription.dispose();
+		registrySubscription.dispose();
+		registry.shutdown();
+	}
+
+	@Benchmark
+	public Sinks.EmitResult rawTryEmitNext(EmitCounters counters) {
+		Sinks.EmitResult result = sink.tryEmitNext(event);
+		counters.count(result);
+		return result;
+	}
+
+	@Benchmark
+	public Sinks.EmitResult registryEmit(EmitCounters counters) {
+		Sinks.EmitResult result = registry.emit("u1", progress);
+		counters.count(result);
+		return result;
+	}
+
+	/**
+	 * 每线程的推送结果计数，随基准结果一起输出
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class EmitCounters {
+		public long ok;
+		public long failNonSerialized;
+		public long failOverflow;
+		public long failOther;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			ok = 0;
+			failNonSerialized = 0;
+			failOverflow = 0;
+			failOther = 0;
+		}
+
+		void count(Sinks.EmitResult result) {
+			switch (result) {
+				case OK -> ok++;
+				case FAIL_NON_SERIALIZED -> failNonSerialized++;
+				case FAIL_OVERFLOW -> failOverflow++;
+				default -> failOther++;
+			}
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package com.example.demo.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 运行本包下的 JMH 基准，结果以 JSON 写入文件，便于在版本之间比对回归
+ * <p>
+ * 运行：mvn test -Pjmh
+ * 只运行部分基准：mvn test -Pjmh -Djmh.include=SinkEmitBenchmark
+ * 指定结果文件：mvn test -Pjmh -Djmh.result=target/jmh-1.2.0.json
+ */
+@Tag("jmh")
+class JmhBenchmarkRunnerTest {
+
+	@Test
+	void runBenchmarks() throws Exception {
+		Path result = Path.of(System.getProperty("jmh.result", "target/jmh-result.json"));
+		Files.createDirectories(result.toAbsolutePath().getParent());
+
+		Options options = new OptionsBuilder()
+				.include(JmhBenchmarkRunnerTest.class.getPackageName() + "." + System.getProperty("jmh.include", ".*"))
+				.resultFormat(ResultFormatType.JSON)
+				.result(result.toString())
+				.shouldFailOnError(true)
+				.build();
+		Collection<RunResult> results = new Runner(options).run();
+
+		assertFalse(results.isEmpty(), "未找到匹配的基准");
+		assertTrue(Files.size(result) > 0, "基准结果文件为空: " + result);
+	}
+}
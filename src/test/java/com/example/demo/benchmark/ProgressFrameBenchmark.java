@@ -0,0 +1,79 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.bo.TaskProgress;
+import com.example.demo.sink.ProgressEvent;
+import com.example.demo.sink.ProgressFrameEncoder;
+import com.example.demo.sink.SseFrame;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TaskProgress -> SSE 帧编码，按 TaskController 的推送路径拆分：
+ * - encode：每个事件一次（JSON 序列化 + 拼装完整帧）；
+ * - writeFrame：每个订阅者一次（包装为写出用的 DataBuffer）；
+ * - controllerPath：TaskController#streamUserTaskProgress 对单个事件的完整 map 链。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgressFrameBenchmark {
+
+	private ProgressFrameEncoder encoder;
+	private NettyDataBufferFactory bufferFactory;
+	private TaskProgress progress;
+	private ProgressEvent event;
+	private long seq;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		encoder = new ProgressFrameEncoder(new ObjectMapper());
+		bufferFactory = new NettyDataBufferFactory(ByteBufAllocator.DEFAULT);
+		progress = TaskProgress.processing("export-1234", "u1", 42, 100, "正在导出 CSV 数据（已写入 42000/100000 行，2048 KB）");
+		event = new ProgressEvent(1, progress, encoder.frame(1, progress, encoder.encodeData(progress)));
+	}
+
+	@Benchmark
+	public SseFrame encode() {
+		long id = ++seq;
+		return encoder.frame(id, progress, encoder.encodeData(progress));
+	}
+
+	@Benchmark
+	public int writeFrame() {
+		DataBuffer buffer = event.frame().toDataBuffer(bufferFactory);
+		int size = buffer.readableByteCount();
+		DataBufferUtils.release(buffer);
+		return size;
+	}
+
+	@Benchmark
+	public int controllerPath() {
+		DataBuffer buffer = Flux.just(event)
+				.map(ProgressEvent::frame)
+				.map(frame -> frame.toDataBuffer(bufferFactory))
+				.blockLast();
+		int size = buffer.readableByteCount();
+		DataBufferUtils.release(buffer);
+		return size;
+	}
+}
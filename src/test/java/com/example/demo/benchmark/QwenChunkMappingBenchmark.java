@@ -0,0 +1,97 @@
+package com.example.demo.benchmark;
+
+import com.alibaba.dashscope.aigc.generation.GenerationResult;
+import com.example.demo.metrics.QwenMetrics;
+import com.example.demo.qwen.ChunkBatcher;
+import com.example.demo.qwen.ConversationStore;
+import com.example.demo.qwen.FakeQwenClient;
+import com.example.demo.qwen.QwenResponseCache;
+import com.example.demo.qwen.UpstreamAdmission;
+import com.example.demo.service.QwenService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.reactivex.Flowable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.adapter.rxjava.RxJava2Adapter;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QwenService 流式片段映射：桩 GenerationResult 流 -> ServerSentEvent
+ * <p>
+ * - mapOnly：仅 Flowable -> Flux 转换 + 取内容构造事件，作为基线；
+ * - serviceStream：经 askQuestionStreamSSE 的完整路径（准入、在途合并、片段合并），关闭回答缓存。
+ * 单位为每个完整回答（chunks 个片段）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QwenChunkMappingBenchmark {
+
+	@Param({"64"})
+	public int chunks;
+
+	// 片段合并字节上限；片段同步到达，窗口不会触发等待
+	@Param({"0", "256"})
+	public int batchBytes;
+
+	private List<GenerationResult> results;
+	private QwenService service;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		List<String> tokens = new ArrayList<>(chunks);
+		results = new ArrayList<>(chunks);
+		for (int i = 0; i < chunks; i++) {
+			String token = "片段" + i;
+			tokens.add(token);
+			results.add(FakeQwenClient.result(token, "null"));
+		}
+		ChunkBatcher batcher = new ChunkBatcher(batchBytes > 0 ? Duration.ofMillis(30) : Duration.ZERO, Math.max(1, batchBytes));
+		service = new QwenService(new FakeQwenClient(tokens, 0, 0),
+				new QwenResponseCache(false, 0, Duration.ZERO),
+				Schedulers.boundedElastic(),
+				batcher,
+				new ConversationStore(100, 50, 65536, 2000, 1024, Duration.ofMinutes(30)),
+				new UpstreamAdmission(1_000_000_000, 1_000_000, 1024, 1024, Duration.ofSeconds(1)),
+				new QwenMetrics(new SimpleMeterRegistry()));
+		ReflectionTestUtils.setField(service, "apiKey", "bench-key");
+		ReflectionTestUtils.setField(service, "model", "qwen3-max");
+		ReflectionTestUtils.setField(service, "systemPrompt", "You are a helpful assistant.");
+	}
+
+	@Benchmark
+	public Long mapOnly() {
+		return RxJava2Adapter.flowableToFlux(Flowable.fromIterable(results))
+				.map(result -> ServerSentEvent.<String>builder()
+						.event("message")
+						.data(result.getOutput().getChoices().get(0).getMessage().getContent())
+						.build())
+				.count()
+				.block();
+	}
+
+	@Benchmark
+	public Long serviceStream() {
+		return service.askQuestionStreamSSE("基准问题").count().block();
+	}
+}
@@ -0,0 +1,87 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.bo.TaskProgress;
+import com.example.demo.sink.ProgressEvent;
+import com.example.demo.sink.ProgressFrameEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多播 Sink 单生产者推送吞吐，订阅者数 1..N
+ * <p>
+ * - backpressure：Sinks.many().multicast().onBackpressureBuffer()，ExportTaskService 最初的用法；
+ * - bestEffort：Sinks.many().multicast().directBestEffort()，UserSinkRegistry 当前的用法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SinkEmitBenchmark {
+
+	@Param({"1", "4", "16"})
+	public int subscribers;
+
+	@Param({"backpressure", "bestEffort"})
+	public String sinkType;
+
+	private Sinks.Many<ProgressEvent> sink;
+	private final List<Disposable> subscriptions = new ArrayList<>();
+	private ProgressEvent event;
+	// 订阅者在推送线程中同步消费，计数防止消费被优化掉
+	private long delivered;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		sink = newSink(sinkType);
+		for (int i = 0; i < subscribers; i++) {
+			subscriptions.add(sink.asFlux().subscribe(e -> delivered++));
+		}
+		event = progressEvent();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		subscriptions.forEach(Disposable::dispose);
+		subscriptions.clear();
+		sink.tryEmitComplete();
+	}
+
+	@Benchmark
+	public Sinks.EmitResult tryEmitNext() {
+		return sink.tryEmitNext(event);
+	}
+
+	static Sinks.Many<ProgressEvent> newSink(String sinkType) {
+		return switch (sinkType) {
+			case "backpressure" -> Sinks.many().multicast().onBackpressureBuffer(100, false);
+			case "bestEffort" -> Sinks.many().multicast().directBestEffort();
+			default -> throw new IllegalArgumentException("未知的 sinkType: " + sinkType);
+		};
+	}
+
+	static ProgressEvent progressEvent() {
+		ProgressFrameEncoder encoder = new ProgressFrameEncoder(new ObjectMapper());
+		TaskProgress progress = TaskProgress.processing("export-1234", "u1", 42, 100, "正在导出 CSV 数据（已写入 42000/100000 行，2048 KB）");
+		return new ProgressEvent(1, progress, encoder.frame(1, progress, encoder.encodeData(progress)));
+	}
+}
@@ -0,0 +1,231 @@
+package com.example.demo.broker;
+
+import com.example.demo.bo.TaskProgress;
+import com.example.demo.sink.ProgressEvent;
+import com.example.demo.sink.OverflowPolicy;
+import com.example.demo.sink.ProgressFrameEncoder;
+import com.example.demo.sink.UserSinkRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NetworkProgressBrokerTest {
+
+	private static final byte[] SECRET = "test-secret".getBytes(StandardCharsets.UTF_8);
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final List<NetworkProgressBroker> nodes = new ArrayList<>();
+	private final List<UserSinkRegistry> registries = new ArrayList<>();
+
+	@AfterEach
+	void closeNodes() throws Exception {
+		for (NetworkProgressBroker node : nodes) {
+			node.close();
+		}
+	}
+
+	@Test
+	void progressPublishedOnOneNodeReachesSubscribersOnOtherNodesOncePerNode() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			startNode("node-" + i, SECRET);
+		}
+		for (NetworkProgressBroker node : nodes) {
+			for (NetworkProgressBroker peer : nodes) {
+				if (peer != node) {
+					node.addPeer(new InetSocketAddress(InetAddress.getLoopbackAddress(), peer.localPort()));
+				}
+			}
+		}
+
+		// node-1 上同一用户开 3 个标签页，node-2 上没有该用户的连接
+		List<List<ProgressEvent>> tabs = new ArrayList<>();
+		List<Disposable> subscriptions = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			List<ProgressEvent> received = new CopyOnWriteArrayList<>();
+			tabs.add(received);
+			subscriptions.add(nodes.get(1).subscribe("u1", -1).subscribe(received::add));
+		}
+
+		int events = 200;
+		for (int step = 1; step < events; step++) {
+			nodes.get(0).publish(TaskProgress.processing("t1", "u1", step, events, "step"));
+		}
+		nodes.get(0).publish(TaskProgress.completed("t1", "u1", "/download/t1.csv"));
+
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (tabs.stream().anyMatch(tab -> tab.size() < events) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		for (List<ProgressEvent> tab : tabs) {
+			assertEquals(events, tab.size());
+			assertEquals("completed", tab.get(events - 1).progress().status());
+			assertEquals("/download/t1.csv", tab.get(events - 1).progress().result());
+		}
+		NetworkProgressBroker.BrokerStats sender = nodes.get(0).stats();
+		assertEquals(events * 2L, sender.eventsSent(), "每个事件向每个对端各发送一次，与订阅者数量无关");
+		assertTrue(sender.batchesSent() < events * 2L, "事件应按批发送");
+		assertEquals(events, nodes.get(1).stats().eventsReceived());
+		assertEquals(0, registries.get(2).stats().size(), "无连接的节点不应创建用户 Sink");
+		subscriptions.forEach(Disposable::dispose);
+	}
+
+	@Test
+	void terminalEventsSurviveFullQueueAndUnreachablePeer() throws Exception {
+		NetworkProgressBroker sender = startNode("sender", SECRET, 4);
+		NetworkProgressBroker live = startNode("live", SECRET, 10_000);
+		int downPort;
+		try (ServerSocket reserved = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			downPort = reserved.getLocalPort();
+		}
+		sender.addPeer(new InetSocketAddress(InetAddress.getLoopbackAddress(), downPort));
+		sender.addPeer(new InetSocketAddress(InetAddress.getLoopbackAddress(), live.localPort()));
+		List<ProgressEvent> onLive = new CopyOnWriteArrayList<>();
+		Disposable liveSubscription = live.subscribe("u1", -1).subscribe(onLive::add);
+
+		for (int step = 1; step <= 100; step++) {
+			sender.publish(TaskProgress.processing("t1", "u1", step, 100, "step"));
+		}
+		sender.publish(TaskProgress.completed("t1", "u1", "/download/t1.csv"));
+
+		// 不可达的对端不影响其他对端
+		waitUntil(() -> !onLive.isEmpty() && onLive.get(onLive.size() - 1).progress().isTerminal());
+		assertTrue(sender.stats().eventsDropped() > 0, "队列满时应丢弃中间进度");
+
+		// 对端恢复后，重试中的批次与排队的终态事件都会送达（先订阅再监听，避免重连抢在订阅之前）
+		UserSinkRegistry recovered = newRegistry();
+		List<ProgressEvent> onRecovered = new CopyOnWriteArrayList<>();
+		Disposable recoveredSubscription = recovered.stream("u1", -1).subscribe(onRecovered::add);
+		startNode("recovered", recovered, SECRET, 10_000, new InetSocketAddress(InetAddress.getLoopbackAddress(), downPort));
+		waitUntil(() -> !onRecovered.isEmpty() && onRecovered.get(onRecovered.size() - 1).progress().isTerminal());
+
+		assertEquals("/download/t1.csv", onRecovered.get(onRecovered.size() - 1).progress().result());
+		assertTrue(onRecovered.size() <= 5, "不可达期间最多保留 queue-capacity 条中间进度与终态事件");
+		liveSubscription.dispose();
+		recoveredSubscription.dispose();
+	}
+
+	@Test
+	void idsAssignedAfterReceivingFromAPeerAreGreaterThanThePeersIds() throws Exception {
+		// b 先启动、序号起点更小；a 启动晚且推送量大，未同步时 b 分配的序号会小于 a 的
+		UserSinkRegistry registryB = newRegistry();
+		List<ProgressEvent> onB = new CopyOnWriteArrayList<>();
+		Disposable subscriptionB = registryB.stream("u1", -1).subscribe(onB::add);
+		NetworkProgressBroker b = startNode("b", registryB, SECRET, 10_000,
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		Thread.sleep(5);
+		UserSinkRegistry registryA = newRegistry();
+		NetworkProgressBroker a = startNode("a", registryA, SECRET, 10_000,
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		a.addPeer(new InetSocketAddress(InetAddress.getLoopbackAddress(), b.localPort()));
+
+		for (int step = 1; step <= 1000; step++) {
+			a.publish(TaskProgress.processing("t1", "u1", step, 1000, "step"));
+		}
+		waitUntil(() -> b.stats().eventsReceived() == 1000);
+		long lastIdOnA = registryA.currentSequence();
+
+		// 客户端带着 a 上的 Last-Event-ID 切换到 b：b 之后分配的序号必须更大
+		b.publish(TaskProgress.completed("t2", "u1", "/download/t2.csv"));
+		assertTrue(onB.get(onB.size() - 1).seq() > lastIdOnA);
+		List<ProgressEvent> resumedOnB = new CopyOnWriteArrayList<>();
+		Disposable resumed = b.subscribe("u1", lastIdOnA).subscribe(resumedOnB::add);
+		// 从 a 转发来的事件在 b 上的序号也更大，会被重复补发（至少一次），但 b 的新事件一定在其中
+		assertEquals("t2", resumedOnB.get(resumedOnB.size() - 1).progress().taskId());
+		subscriptionB.dispose();
+		resumed.dispose();
+	}
+
+	@Test
+	void peerWithWrongSecretIsRejected() throws Exception {
+		NetworkProgressBroker receiver = startNode("receiver", SECRET);
+		NetworkProgressBroker intruder = startNode("intruder", "wrong-secret".getBytes(StandardCharsets.UTF_8));
+		intruder.addPeer(new InetSocketAddress(InetAddress.getLoopbackAddress(), receiver.localPort()));
+		List<ProgressEvent> received = new CopyOnWriteArrayList<>();
+		Disposable subscription = receiver.subscribe("u1", -1).subscribe(received::add);
+
+		intruder.publish(TaskProgress.completed("t1", "u1", "/download/evil.csv"));
+		Thread.sleep(300);
+
+		assertTrue(received.isEmpty());
+		assertEquals(0, receiver.stats().eventsReceived());
+		subscription.dispose();
+	}
+
+	@Test
+	void oversizedFrameClosesTheConnectionWithoutAllocating() throws Exception {
+		NetworkProgressBroker receiver = startNode("receiver", SECRET);
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), receiver.localPort())) {
+			socket.setSoTimeout(5_000);
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			byte[] nonce = new byte[16];
+			in.readFully(nonce);
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(SECRET, "HmacSHA256"));
+			out.write(mac.doFinal(nonce));
+			assertEquals(1, in.read(), "认证应通过");
+
+			out.writeInt(Integer.MAX_VALUE);
+			out.flush();
+			assertEquals(-1, in.read(), "声明的帧长度超过上限时应直接关闭连接");
+		}
+		assertEquals(0, receiver.stats().eventsReceived());
+	}
+
+	@Test
+	void blankSecretIsRefused() {
+		assertThrows(IllegalArgumentException.class, () -> startNode("no-secret", new byte[0]));
+	}
+
+	private NetworkProgressBroker startNode(String nodeId, byte[] secret) throws Exception {
+		return startNode(nodeId, secret, 10_000);
+	}
+
+	private NetworkProgressBroker startNode(String nodeId, byte[] secret, int queueCapacity) throws Exception {
+		return startNode(nodeId, newRegistry(), secret, queueCapacity,
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+	}
+
+	private NetworkProgressBroker startNode(String nodeId, UserSinkRegistry registry, byte[] secret, int queueCapacity,
+			InetSocketAddress listenAddress) throws Exception {
+		NetworkProgressBroker node = new NetworkProgressBroker(nodeId, registry, objectMapper, listenAddress, 64, 5,
+				queueCapacity, secret, 1 << 20);
+		registries.add(registry);
+		nodes.add(node);
+		return node;
+	}
+
+	private UserSinkRegistry newRegistry() {
+		return new UserSinkRegistry(100, Duration.ofMinutes(1), 1024, 64,
+				new ProgressFrameEncoder(objectMapper), OverflowPolicy.LATEST_PER_TASK, Duration.ofSeconds(30));
+	}
+
+	private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(condition.getAsBoolean(), "等待超时");
+	}
+}
@@ -0,0 +1,37 @@
+package com.example.demo.controller;
+
+import com.example.demo.export.ExportStorage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class DownloadControllerTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void servesWholeFileAndByteRanges() throws Exception {
+		Files.writeString(tempDir.resolve("export-1.csv"), "0123456789", StandardCharsets.UTF_8);
+		WebTestClient client = WebTestClient.bindToController(new DownloadController(new ExportStorage(tempDir))).build();
+
+		client.get().uri("/download/export-1.csv").exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentTypeCompatibleWith("text/csv")
+				.expectBody(String.class).isEqualTo("0123456789");
+
+		client.get().uri("/download/export-1.csv").header(HttpHeaders.RANGE, "bytes=2-5").exchange()
+				.expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+				.expectHeader().valueEquals(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10")
+				.expectBody(String.class).isEqualTo("2345");
+
+		client.get().uri("/download/missing.csv").exchange()
+				.expectStatus().isNotFound();
+	}
+}
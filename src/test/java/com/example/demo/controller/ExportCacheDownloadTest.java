@@ -0,0 +1,91 @@
+package com.example.demo.controller;
+
+import com.example.demo.bo.ExportTaskRequest;
+import com.example.demo.export.ExportResultCache;
+import com.example.demo.journal.TaskJournal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "export.cache.ttl=1s")
+class ExportCacheDownloadTest {
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@Autowired
+	private ExportResultCache exportResultCache;
+
+	@TempDir
+	static Path dataDir;
+
+	@DynamicPropertySource
+	static void dataDirs(DynamicPropertyRegistry registry) {
+		// 每个测试上下文独立的导出目录与任务日志，不会命中之前运行留下的缓存文件
+		registry.add("export.storage.dir", () -> dataDir.resolve("exports").toString());
+		registry.add("export.journal.dir", () -> dataDir.resolve("journal").toString());
+	}
+
+	@Test
+	void cachedDownloadUrlStillWorksAfterTtlExpiry() throws Exception {
+		ExportTaskRequest request = new ExportTaskRequest("cache-user", "CSV", "all", 2000);
+		String taskId = submit(request).taskId();
+		String exportedUrl = awaitCompleted(taskId);
+
+		TaskController.TaskSubmissionResponse cached = submit(request);
+		assertEquals(exportedUrl, cached.downloadUrl());
+		assertEquals(exportedUrl, awaitCompleted(cached.taskId()));
+
+		// 过期后不再复用，但已发出的地址仍可下载
+		Thread.sleep(1100);
+		exportResultCache.evictExpired();
+		assertNull(submit(request).downloadUrl());
+
+		String body = webTestClient.get().uri(cached.downloadUrl())
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody(String.class)
+				.returnResult()
+				.getResponseBody();
+		assertNotNull(body);
+		assertTrue(body.lines().count() >= 2000);
+	}
+
+	private TaskController.TaskSubmissionResponse submit(ExportTaskRequest request) {
+		return webTestClient.post().uri("/api/tasks/export")
+				.bodyValue(request)
+				.exchange()
+				.expectStatus().is2xxSuccessful()
+				.expectBody(TaskController.TaskSubmissionResponse.class)
+				.returnResult()
+				.getResponseBody();
+	}
+
+	private String awaitCompleted(String taskId) throws InterruptedException {
+		for (int i = 0; i < 300; i++) {
+			TaskJournal.TaskRecord record = webTestClient.get().uri("/api/tasks/{taskId}", taskId)
+					.exchange()
+					.expectBody(TaskJournal.TaskRecord.class)
+					.returnResult()
+					.getResponseBody();
+			if (record != null && "completed".equals(record.progress().status())) {
+				String url = (String) record.progress().result();
+				assertTrue(url.startsWith("/download/export-"), url);
+				return url;
+			}
+			Thread.sleep(100);
+		}
+		throw new AssertionError("等待任务完成超时: " + taskId);
+	}
+}
@@ -0,0 +1,112 @@
+package com.example.demo.controller;
+
+import com.example.demo.bo.ExportTaskRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.Disposable;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class MultiplexControllerTest {
+
+	@TempDir
+	static Path dataDir;
+
+	@DynamicPropertySource
+	static void dataDirs(DynamicPropertyRegistry registry) {
+		// 每个测试上下文独立的导出目录与任务日志，不会命中之前运行留下的缓存文件
+		registry.add("export.storage.dir", () -> dataDir.resolve("exports").toString());
+		registry.add("export.journal.dir", () -> dataDir.resolve("journal").toString());
+	}
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void progressAndClockShareOneConnectionAndTopicsCanBeUnsubscribed() throws Exception {
+		BlockingQueue<ServerSentEvent<String>> events = new LinkedBlockingQueue<>();
+		Disposable connection = webTestClient.get()
+				.uri("/api/mux/stream?userId=mux-user&topics=clock")
+				.accept(MediaType.TEXT_EVENT_STREAM)
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {
+				})
+				.getResponseBody()
+				.filter(event -> event.data() != null)
+				.subscribe(events::add);
+
+		ServerSentEvent<String> session = next(events, event -> "session".equals(event.event()));
+		String sessionId = objectMapper.readTree(session.data()).get("sessionId").asText();
+
+		webTestClient.post().uri("/api/mux/{sessionId}/topics?userId=mux-user", sessionId)
+				.bodyValue(Map.of("type", "progress"))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.topic").isEqualTo("progress");
+		webTestClient.post().uri("/api/mux/{sessionId}/topics?userId=mux-user", sessionId)
+				.bodyValue(Map.of("type", "progress"))
+				.exchange()
+				.expectStatus().isEqualTo(409);
+		webTestClient.post().uri("/api/mux/{sessionId}/topics?userId=other-user", sessionId)
+				.bodyValue(Map.of("type", "clock"))
+				.exchange()
+				.expectStatus().isNotFound();
+
+		webTestClient.post().uri("/api/tasks/export")
+				.bodyValue(new ExportTaskRequest("mux-user", "CSV", "all", 5000))
+				.exchange()
+				.expectStatus().is2xxSuccessful();
+
+		ServerSentEvent<String> complete = next(events, event -> "complete".equals(event.event()));
+		JsonNode envelope = objectMapper.readTree(complete.data());
+		assertEquals("progress", envelope.get("topic").asText());
+		assertEquals("completed", envelope.get("data").get("status").asText());
+		assertNotNull(envelope.get("id"));
+
+		ServerSentEvent<String> tick = next(events, event -> "clock".equals(event.event()));
+		assertEquals("clock", objectMapper.readTree(tick.data()).get("topic").asText());
+
+		webTestClient.delete().uri("/api/mux/{sessionId}/topics/clock?userId=mux-user", sessionId)
+				.exchange()
+				.expectStatus().isNoContent();
+		ServerSentEvent<String> end = next(events, event -> "end".equals(event.event()));
+		assertEquals("clock", objectMapper.readTree(end.data()).get("topic").asText());
+		assertEquals("unsubscribed", objectMapper.readTree(end.data()).get("data").asText());
+
+		connection.dispose();
+	}
+
+	private static ServerSentEvent<String> next(BlockingQueue<ServerSentEvent<String>> events,
+												Predicate<ServerSentEvent<String>> condition) throws InterruptedException {
+		while (true) {
+			ServerSentEvent<String> event = events.poll(30, TimeUnit.SECONDS);
+			assertNotNull(event, "等待事件超时");
+			if (condition.test(event)) {
+				return event;
+			}
+		}
+	}
+}
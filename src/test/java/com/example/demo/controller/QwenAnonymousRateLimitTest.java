@@ -0,0 +1,54 @@
+package com.example.demo.controller;
+
+import com.example.demo.qwen.FakeQwenClient;
+import com.example.demo.qwen.QwenClient;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 未提供 userId 的调用方按客户端地址各自限流，不共用同一个桶
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"qwen.admission.user-rate=0.1",
+		"qwen.admission.user-burst=1",
+		// 通过 X-Forwarded-For 模拟不同的客户端地址
+		"server.forward-headers-strategy=framework"
+})
+class QwenAnonymousRateLimitTest {
+
+	@TestConfiguration
+	static class FastUpstream {
+		@Bean
+		@Primary
+		QwenClient fastQwenClient() {
+			return new FakeQwenClient(List.of("answer"), 0, 0);
+		}
+	}
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@Test
+	void anonymousCallersFromDifferentAddressesDoNotShareARateLimitBucket() {
+		ask("10.0.0.1").expectStatus().isOk();
+		ask("10.0.0.1").expectStatus().isEqualTo(429).expectHeader().exists(HttpHeaders.RETRY_AFTER);
+		// 另一个匿名调用方不受前者限流影响
+		ask("10.0.0.2").expectStatus().isOk();
+	}
+
+	private WebTestClient.ResponseSpec ask(String clientAddress) {
+		return webTestClient.post().uri("/api/qwen/ask")
+				.header("X-Forwarded-For", clientAddress)
+				.bodyValue(Map.of("question", "anonymous question"))
+				.exchange();
+	}
+}
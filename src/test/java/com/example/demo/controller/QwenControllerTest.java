@@ -0,0 +1,76 @@
+package com.example.demo.controller;
+
+import com.example.demo.qwen.FakeQwenClient;
+import com.example.demo.qwen.QwenClient;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"qwen.blocking.thread-cap=25",
+		"qwen.blocking.queue-cap=100"
+})
+class QwenControllerTest {
+
+	@TestConfiguration
+	static class SlowUpstream {
+		@Bean
+		@Primary
+		QwenClient slowQwenClient() {
+			return new FakeQwenClient(List.of("slow answer"), 0, 500);
+		}
+	}
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private QwenClient qwenClient;
+
+	@Test
+	void timeStreamKeepsTickingWhileSlowAskCallsAreInFlight() {
+		WebClient client = WebClient.create("http://localhost:" + port);
+
+		Mono<List<Long>> ticks = client.get().uri("/sseApi/time-stream")
+				.accept(MediaType.TEXT_EVENT_STREAM)
+				.retrieve()
+				.bodyToFlux(String.class)
+				.map(tick -> System.nanoTime())
+				.take(4)
+				.collectList();
+
+		Mono<List<Integer>> asks = Flux.range(0, 100)
+				.flatMap(i -> client.post().uri("/api/qwen/ask?userId=user-" + i)
+						.bodyValue(Map.of("question", "slow question " + i))
+						.exchangeToMono(response -> Mono.just(response.statusCode().value())), 100)
+				.collectList();
+
+		List<Long> tickTimes = new ArrayList<>();
+		List<Integer> statuses = new ArrayList<>();
+		Mono.zip(ticks.doOnNext(tickTimes::addAll), asks.doOnNext(statuses::addAll)).block(Duration.ofSeconds(30));
+
+		for (int i = 1; i < tickTimes.size(); i++) {
+			long gapMillis = (tickTimes.get(i) - tickTimes.get(i - 1)) / 1_000_000;
+			assertTrue(gapMillis < 1_500, "时间流被阻塞，相邻两次推送间隔 " + gapMillis + "ms");
+		}
+		assertEquals(100, statuses.size());
+		assertTrue(statuses.stream().allMatch(status -> status == 200), "全部慢调用应成功: " + statuses);
+		assertEquals(100, ((FakeQwenClient) qwenClient).calls.get());
+	}
+}
@@ -0,0 +1,130 @@
+package com.example.demo.controller;
+
+import com.example.demo.bo.ExportTaskRequest;
+import com.example.demo.bo.TaskProgress;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class TaskControllerTest {
+
+	@TempDir
+	static Path dataDir;
+
+	@DynamicPropertySource
+	static void dataDirs(DynamicPropertyRegistry registry) {
+		// 每个测试上下文独立的导出目录与任务日志，不会命中之前运行留下的缓存文件
+		registry.add("export.storage.dir", () -> dataDir.resolve("exports").toString());
+		registry.add("export.journal.dir", () -> dataDir.resolve("journal").toString());
+	}
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@Test
+	void exportProgressIsStreamedAsPreEncodedSseFrames() {
+		Flux<ServerSentEvent<TaskProgress>> stream = webTestClient.get()
+				.uri("/api/tasks/progress/stream?userId=stream-user")
+				.accept(MediaType.TEXT_EVENT_STREAM)
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(new ParameterizedTypeReference<ServerSentEvent<TaskProgress>>() {
+				})
+				.getResponseBody();
+
+		webTestClient.post().uri("/api/tasks/export")
+				.bodyValue(new ExportTaskRequest("stream-user", "CSV", "all", 5000))
+				.exchange()
+				.expectStatus().is2xxSuccessful();
+
+		List<ServerSentEvent<TaskProgress>> events = stream
+				.filter(event -> event.data() != null)
+				.takeUntil(event -> "complete".equals(event.event()))
+				.collectList()
+				.block(Duration.ofSeconds(30));
+
+		ServerSentEvent<TaskProgress> last = events.get(events.size() - 1);
+		assertEquals("complete", last.event());
+		assertEquals("completed", last.data().status());
+		assertTrue(((String) last.data().result()).startsWith("/download/export-"));
+		long previousId = 0;
+		for (ServerSentEvent<TaskProgress> event : events) {
+			long id = Long.parseLong(event.id());
+			assertTrue(id > previousId, "事件 id 必须单调递增");
+			previousId = id;
+		}
+		webTestClient.get().uri("/api/tasks/{taskId}", last.data().taskId())
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.progress.status").isEqualTo("completed")
+				.jsonPath("$.progress.result").isEqualTo(last.data().result());
+		webTestClient.get().uri("/api/tasks?userId=stream-user")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$[0].progress.taskId").isEqualTo(last.data().taskId());
+	}
+
+	@Test
+	void cancellingARunningExportEmitsCancelledStatus() {
+		Flux<ServerSentEvent<TaskProgress>> stream = webTestClient.get()
+				.uri("/api/tasks/progress/stream?userId=cancel-user")
+				.accept(MediaType.TEXT_EVENT_STREAM)
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(new ParameterizedTypeReference<ServerSentEvent<TaskProgress>>() {
+				})
+				.getResponseBody();
+
+		TaskController.TaskSubmissionResponse submitted = webTestClient.post().uri("/api/tasks/export")
+				.bodyValue(new ExportTaskRequest("cancel-user", "CSV", "all", 50_000_000))
+				.exchange()
+				.expectStatus().is2xxSuccessful()
+				.expectBody(TaskController.TaskSubmissionResponse.class)
+				.returnResult()
+				.getResponseBody();
+
+		AtomicBoolean cancelRequested = new AtomicBoolean();
+		List<ServerSentEvent<TaskProgress>> events = stream
+				.filter(event -> event.data() != null)
+				.doOnNext(event -> {
+					// 收到第一条进度后取消（不能在事件循环线程上阻塞）
+					if ("progress".equals(event.event()) && cancelRequested.compareAndSet(false, true)) {
+						CompletableFuture.runAsync(() -> webTestClient.delete()
+								.uri("/api/tasks/{taskId}?userId=cancel-user", submitted.taskId())
+								.exchange()
+								.expectStatus().isNoContent());
+					}
+				})
+				.takeUntil(event -> "error".equals(event.event()) || "complete".equals(event.event()))
+				.collectList()
+				.block(Duration.ofSeconds(30));
+
+		ServerSentEvent<TaskProgress> last = events.get(events.size() - 1);
+		assertEquals("error", last.event());
+		assertEquals("cancelled", last.data().status());
+
+		webTestClient.delete().uri("/api/tasks/{taskId}?userId=cancel-user", submitted.taskId())
+				.exchange()
+				.expectStatus().isNotFound();
+	}
+}
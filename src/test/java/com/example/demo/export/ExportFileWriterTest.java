@@ -0,0 +1,103 @@
+package com.example.demo.export;
+
+import com.example.demo.bo.ExportTaskRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExportFileWriterTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void writesCsvInBatchesAndReportsRealProgress() throws Exception {
+		List<Object[]> rows = new ArrayList<>();
+		for (int i = 1; i <= 25; i++) {
+			rows.add(new Object[]{i, "name, \"" + i + "\"", "数据" + i});
+		}
+		ExportRowSource source = new InMemoryRowSource(new String[]{"id", "name", "remark"}, rows);
+		ExportFileWriter writer = new ExportFileWriter(source, new DirectBufferPool(4096, 2), new ExportStorage(tempDir), 10);
+		ExportTaskRequest request = new ExportTaskRequest("u1", "CSV", "all", 25);
+
+		List<long[]> progress = new ArrayList<>();
+		ExportFileWriter.ExportResult result = writer.write("export-test", request,
+				(batch, total, rowsWritten, bytesWritten) -> progress.add(new long[]{batch, total, rowsWritten}));
+
+		assertEquals("export-test.csv", result.fileName());
+		assertEquals(25, result.rowsWritten());
+		assertEquals(Files.size(result.path()), result.bytesWritten());
+		assertEquals(3, progress.size());
+		assertEquals(25, progress.get(2)[2]);
+		assertFalse(Files.exists(tempDir.resolve("export-test.csv.part")));
+
+		List<String> lines = Files.readAllLines(result.path(), StandardCharsets.UTF_8);
+		assertEquals(26, lines.size());
+		assertEquals("\uFEFFid,name,remark", lines.get(0));
+		assertEquals("1,\"name, \"\"1\"\"\",数据1", lines.get(1));
+	}
+
+	@Test
+	void generatedSourceStreamsLargeExportThroughSmallBuffer() throws Exception {
+		ExportFileWriter writer = new ExportFileWriter(new GeneratedRowSource(), new DirectBufferPool(1024, 1),
+				new ExportStorage(tempDir), 5000);
+		ExportTaskRequest request = new ExportTaskRequest("u1", "EXCEL", "2024", 50_000);
+
+		ExportFileWriter.ExportResult result = writer.write("export-big", request, (batch, total, rows, bytes) -> {
+		});
+
+		assertEquals(50_000, result.rowsWritten());
+		assertEquals(Files.size(result.path()), result.bytesWritten());
+		String content = Files.readString(result.path(), StandardCharsets.UTF_8);
+		assertTrue(content.startsWith("<?xml"));
+		assertTrue(content.endsWith("</Workbook>\n"));
+	}
+
+	@Test
+	void partitionedExportMatchesSequentialOutputAndReportsMonotonicProgress() throws Exception {
+		ExportTaskRequest request = new ExportTaskRequest("u1", "CSV", "2024", 10_500);
+		ExportFileWriter sequential = new ExportFileWriter(new GeneratedRowSource(), new DirectBufferPool(1024, 2),
+				new ExportStorage(tempDir), 500);
+		ExportFileWriter.ExportResult expected = sequential.write("export-seq", request, (batch, total, rows, bytes) -> {
+		});
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			// 分区行数 1200 取整为 1500，共 7 个分区
+			ExportFileWriter partitioned = new ExportFileWriter(new GeneratedRowSource(), new DirectBufferPool(1024, 2),
+					new ExportStorage(tempDir), 500, pool, 1200, 3);
+			List<long[]> progress = new ArrayList<>();
+			ExportFileWriter.ExportResult result = partitioned.write("export-par", request,
+					(batch, total, rows, bytes) -> progress.add(new long[]{batch, total, rows}));
+
+			assertEquals(10_500, result.rowsWritten());
+			assertEquals(Files.size(result.path()), result.bytesWritten());
+			assertEquals(Files.readString(expected.path(), StandardCharsets.UTF_8),
+					Files.readString(result.path(), StandardCharsets.UTF_8));
+			try (var files = Files.list(tempDir)) {
+				assertEquals(2, files.count(), "分区临时文件应全部清理");
+			}
+
+			long[] last = progress.get(progress.size() - 1);
+			assertEquals(21, last[0]);
+			assertEquals(21, last[1]);
+			assertEquals(10_500, last[2]);
+			for (int i = 1; i < progress.size(); i++) {
+				assertTrue(progress.get(i)[0] > progress.get(i - 1)[0], "批次进度必须单调递增");
+				assertTrue(progress.get(i)[2] >= progress.get(i - 1)[2], "行数进度必须单调递增");
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package com.example.demo.export;
+
+import com.example.demo.bo.ExportTaskRequest;
+import com.example.demo.bo.TaskProgress;
+import com.example.demo.journal.TaskJournal;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExportResultCacheTest {
+
+	@TempDir
+	Path tempDir;
+
+	private TaskJournal journal;
+
+	@AfterEach
+	void closeJournal() {
+		if (journal != null) {
+			journal.close();
+		}
+	}
+
+	private TaskJournal openJournal(ExportStorage storage, Duration retention) {
+		journal = new TaskJournal(new ObjectMapper(), tempDir.resolve("journal"), 4096, retention);
+		journal.open();
+		return journal;
+	}
+
+	@Test
+	void identicalSubmissionAttachesToInFlightTaskThenHitsStoredArtifact() throws Exception {
+		ExportStorage storage = new ExportStorage(tempDir);
+		ExportResultCache cache = new ExportResultCache(storage, openJournal(storage, Duration.ofDays(7)), true,
+				1024 * 1024, Duration.ofMinutes(10));
+		ExportTaskRequest request = new ExportTaskRequest("u1", "csv", "all", 100);
+
+		assertTrue(cache.lookupOrRegister(request, "t1", false).isMiss());
+		// fileType 不区分大小写
+		ExportResultCache.Lookup attached = cache.lookupOrRegister(new ExportTaskRequest("u1", "CSV", "all", 100), "t2", false);
+		assertEquals("t1", attached.taskId());
+		assertTrue(cache.lookupOrRegister(new ExportTaskRequest("u1", "CSV", "all", 101), "t3", false).isMiss());
+
+		Path exported = write(storage, "t1.csv", 100);
+		String fileName = cache.store("t1", exported);
+		cache.release("t1");
+		// 文件被改名交由缓存管理，磁盘上只有一份
+		assertTrue(fileName.matches("t1\\.[0-9a-f]{32}\\.csv"), fileName);
+		assertFalse(Files.exists(exported));
+		assertEquals(100, cache.stats().bytes());
+
+		ExportResultCache.Lookup hit = cache.lookupOrRegister(request, "t4", false);
+		assertNotNull(hit.artifact());
+		assertEquals(fileName, hit.artifact().fileName());
+		assertEquals(100, Files.size(storage.resolve(fileName)));
+
+		// 绕过缓存时重新导出
+		assertTrue(cache.lookupOrRegister(request, "t5", true).isMiss());
+
+		ExportResultCache.CacheStats stats = cache.stats();
+		assertEquals(1, stats.hits());
+		assertEquals(1, stats.inFlightHits());
+		assertEquals(2, stats.misses());
+		assertEquals(1, stats.bypasses());
+		assertEquals(0.5, stats.hitRate());
+	}
+
+	@Test
+	void evictionDeletesOnlyFilesNoJournaledTaskPointsAt() throws Exception {
+		ExportStorage storage = new ExportStorage(tempDir);
+		TaskJournal journal = openJournal(storage, Duration.ZERO);
+		ExportResultCache cache = new ExportResultCache(storage, journal, true, 250, Duration.ofMinutes(10));
+		ExportTaskRequest a = new ExportTaskRequest("u1", "CSV", "a", 10);
+		ExportTaskRequest b = new ExportTaskRequest("u1", "CSV", "b", 10);
+		ExportTaskRequest c = new ExportTaskRequest("u1", "CSV", "c", 10);
+
+		String fileA = storeCompleted(cache, storage, a, "ta", true);
+		String fileB = storeCompleted(cache, storage, b, "tb", false);
+		// 访问 a 后 b 成为最久未访问
+		assertNotNull(cache.lookupOrRegister(a, "x", false).artifact());
+		String fileC = storeCompleted(cache, storage, c, "tc", true);
+
+		// 超出容量：b 移出索引，没有任务指向它，立即删除
+		assertFalse(Files.exists(storage.resolve(fileB)));
+		assertNull(cache.lookupOrRegister(b, "y", false).artifact());
+		cache.release("y");
+		assertEquals(fileA, cache.lookupOrRegister(a, "x", false).artifact().fileName());
+		assertEquals(fileC, cache.lookupOrRegister(c, "z", false).artifact().fileName());
+		assertEquals(200, cache.stats().bytes());
+
+		// 重启后从磁盘恢复索引；a 已过期、移出索引，但原任务的下载地址仍在日志中，文件保留
+		Files.setLastModifiedTime(storage.resolve(fileA), FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+		ExportResultCache restarted = new ExportResultCache(storage, journal, true, 250, Duration.ofMinutes(10));
+		assertEquals(1, restarted.stats().entries());
+		assertEquals(1, restarted.stats().retained());
+		assertNull(restarted.lookupOrRegister(a, "x2", false).artifact());
+		restarted.release("x2");
+		assertTrue(Files.exists(storage.resolve(fileA)));
+		assertNotNull(restarted.lookupOrRegister(c, "z2", false).artifact());
+
+		// 日志按保留期丢弃任务后，下一次清理删除文件
+		Thread.sleep(5);
+		journal.compact();
+		restarted.evictExpired();
+		assertFalse(Files.exists(storage.resolve(fileA)));
+		assertEquals(0, restarted.stats().retained());
+		assertEquals(100, restarted.stats().bytes());
+	}
+
+	@Test
+	void expiredEntryIsNoLongerReusedButItsDownloadUrlKeepsWorking() throws Exception {
+		ExportStorage storage = new ExportStorage(tempDir);
+		ExportResultCache cache = new ExportResultCache(storage, openJournal(storage, Duration.ofDays(7)), true,
+				1024, Duration.ofMillis(1));
+		ExportTaskRequest request = new ExportTaskRequest("u1", "CSV", "all", 10);
+
+		String fileName = storeCompleted(cache, storage, request, "t1", true);
+		Thread.sleep(5);
+		cache.evictExpired();
+
+		assertTrue(cache.lookupOrRegister(request, "t2", false).isMiss());
+		assertTrue(Files.exists(storage.resolve(fileName)));
+		assertEquals(1, cache.stats().retained());
+	}
+
+	@Test
+	void externallyDeletedFileIsDroppedFromIndexBySweep() throws Exception {
+		ExportStorage storage = new ExportStorage(tempDir);
+		ExportResultCache cache = new ExportResultCache(storage, openJournal(storage, Duration.ofDays(7)), true,
+				1024, Duration.ofMinutes(10));
+		ExportTaskRequest request = new ExportTaskRequest("u1", "CSV", "all", 10);
+
+		String fileName = storeCompleted(cache, storage, request, "t1", true);
+		Files.delete(storage.resolve(fileName));
+		// 提交路径只查内存索引，文件缺失由定时清理发现
+		assertNotNull(cache.lookupOrRegister(request, "t2", false).artifact());
+		cache.evictExpired();
+
+		assertTrue(cache.lookupOrRegister(request, "t3", false).isMiss());
+		assertEquals(0, cache.stats().entries());
+		assertEquals(0, cache.stats().bytes());
+	}
+
+	@Test
+	void disabledCacheNeverDeduplicates() throws Exception {
+		ExportStorage storage = new ExportStorage(tempDir);
+		ExportResultCache cache = new ExportResultCache(storage, openJournal(storage, Duration.ofDays(7)), false,
+				1024, Duration.ofMinutes(10));
+		ExportTaskRequest request = new ExportTaskRequest("u1", "CSV", "all", 10);
+
+		assertTrue(cache.lookupOrRegister(request, "t1", false).isMiss());
+		assertTrue(cache.lookupOrRegister(request, "t2", false).isMiss());
+		assertEquals("t1.csv", cache.store("t1", write(storage, "t1.csv", 10)));
+		assertTrue(cache.lookupOrRegister(request, "t3", false).isMiss());
+		assertEquals(0, cache.stats().entries());
+	}
+
+	/**
+	 * 模拟任务成功：登记、写文件、交给缓存，journaled 为 true 时把下载地址写入任务日志
+	 */
+	private String storeCompleted(ExportResultCache cache, ExportStorage storage, ExportTaskRequest request,
+								  String taskId, boolean journaled) throws Exception {
+		assertTrue(cache.lookupOrRegister(request, taskId, false).isMiss());
+		String fileName = cache.store(taskId, write(storage, taskId + ".csv", 100));
+		if (journaled) {
+			journal.record(TaskProgress.completed(taskId, "u1", storage.downloadUrl(fileName)));
+		}
+		cache.release(taskId);
+		return fileName;
+	}
+
+	private static Path write(ExportStorage storage, String fileName, int bytes) throws Exception {
+		Path path = storage.resolve(fileName);
+		Files.write(path, new byte[bytes]);
+		return path;
+	}
+}
@@ -0,0 +1,76 @@
+package com.example.demo.export;
+
+import com.example.demo.bo.ExportTaskRequest;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 合成数据的大导出在 1..N 个分区并行度下的墙钟耗时（N 为 CPU 核数）
+ * <p>
+ * 运行：mvn test -Pbenchmark -Dtest=PartitionedExportBenchmarkTest [-Dexport.bench.rows=5000000]
+ */
+@Tag("benchmark")
+class PartitionedExportBenchmarkTest {
+
+	private static final int ROWS = Integer.getInteger("export.bench.rows", 3_000_000);
+	private static final int BATCH_SIZE = 1000;
+	private static final long PARTITION_ROWS = 100_000;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void wallClockScalesWithParallelism() throws Exception {
+		int cores = Runtime.getRuntime().availableProcessors();
+		List<Integer> levels = new ArrayList<>();
+		for (int p = 1; p < cores; p *= 2) {
+			levels.add(p);
+		}
+		levels.add(cores);
+
+		ExportTaskRequest request = new ExportTaskRequest("bench", "CSV", "2024", ROWS);
+		ForkJoinPool pool = new ForkJoinPool(cores);
+		try {
+			// 预热：JIT 与页缓存
+			run(pool, Math.min(2, cores), new ExportTaskRequest("bench", "CSV", "2024", ROWS / 10), "warmup");
+
+			System.out.printf("rows=%d, partition-rows=%d, cores=%d%n", ROWS, PARTITION_ROWS, cores);
+			System.out.println("parallelism  wall(ms)  rows/s        MB/s     speedup");
+			long baselineNanos = 0;
+			long expectedBytes = -1;
+			for (int parallelism : levels) {
+				long start = System.nanoTime();
+				ExportFileWriter.ExportResult result = run(pool, parallelism, request, "export-p" + parallelism);
+				long nanos = System.nanoTime() - start;
+				if (parallelism == 1) {
+					baselineNanos = nanos;
+					expectedBytes = result.bytesWritten();
+				}
+				assertEquals(ROWS, result.rowsWritten());
+				assertEquals(expectedBytes, result.bytesWritten(), "不同并行度的输出应完全一致");
+				System.out.printf("%11d  %8d  %12.0f  %6.1f  %8.2fx%n", parallelism, nanos / 1_000_000,
+						ROWS / (nanos / 1e9), result.bytesWritten() / 1e6 / (nanos / 1e9), (double) baselineNanos / nanos);
+				Files.delete(result.path());
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private ExportFileWriter.ExportResult run(ForkJoinPool pool, int parallelism, ExportTaskRequest request, String taskId)
+			throws Exception {
+		ExportFileWriter writer = new ExportFileWriter(new GeneratedRowSource(), new DirectBufferPool(65536, 16),
+				new ExportStorage(tempDir), BATCH_SIZE, pool, PARTITION_ROWS, parallelism);
+		return writer.write(taskId, request, (batch, total, rows, bytes) -> {
+		});
+	}
+}
@@ -0,0 +1,158 @@
+package com.example.demo.journal;
+
+import com.example.demo.bo.TaskProgress;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TaskJournalTest {
+
+	@TempDir
+	Path dir;
+
+	private TaskJournal open(Duration retention) {
+		TaskJournal journal = new TaskJournal(new ObjectMapper(), dir, 4096, retention);
+		journal.open();
+		return journal;
+	}
+
+	@Test
+	void restartRecoversIndexAndMarksInterruptedTasksFailed() {
+		TaskJournal journal = open(Duration.ofDays(7));
+		journal.record(TaskProgress.processing("t1", "u1", 1, 10, "running"));
+		journal.record(TaskProgress.completed("t1", "u1", "/download/t1.csv"));
+		journal.record(TaskProgress.processing("t2", "u1", 3, 10, "running"));
+		journal.record(TaskProgress.processing("t3", "u2", 1, 10, "running"));
+		journal.close();
+
+		TaskJournal restarted = open(Duration.ofDays(7));
+		assertEquals("/download/t1.csv", restarted.find("t1").progress().result());
+		assertEquals("failed", restarted.find("t2").progress().status());
+		assertEquals(2, restarted.findByUser("u1").size());
+		assertEquals("failed", restarted.findByUser("u2").get(0).progress().status());
+		assertNull(restarted.find("missing"));
+		restarted.close();
+	}
+
+	@Test
+	void onlyStatusTransitionsAreAppendedAndGrowthRemaps() {
+		TaskJournal journal = open(Duration.ofDays(7));
+		for (int i = 0; i < 200; i++) {
+			journal.record(TaskProgress.processing("task-" + i, "u", 1, 100, "x".repeat(50)));
+			for (int step = 2; step <= 20; step++) {
+				journal.record(TaskProgress.processing("task-" + i, "u", step, 100, "x".repeat(50)));
+			}
+			journal.record(TaskProgress.completed("task-" + i, "u", "/download/task-" + i));
+		}
+		TaskJournal.JournalStats stats = journal.stats();
+		assertEquals(400, stats.records());
+		assertTrue(stats.bytes() > 4096, "应超过初始映射大小并完成扩容");
+		journal.close();
+
+		TaskJournal restarted = open(Duration.ofDays(7));
+		assertEquals(200, restarted.stats().tasks());
+		assertEquals("completed", restarted.find("task-199").progress().status());
+		restarted.close();
+	}
+
+	@Test
+	void tornTailIsIgnoredOnReplay() throws Exception {
+		TaskJournal journal = open(Duration.ofDays(7));
+		journal.record(TaskProgress.completed("t1", "u1", "/download/t1.csv"));
+		long end = journal.stats().bytes();
+		journal.close();
+
+		// 模拟写到一半：长度已写入但内容校验不通过
+		try (RandomAccessFile file = new RandomAccessFile(dir.resolve("task-journal").toFile(), "rw")) {
+			file.seek(end);
+			file.writeInt(100);
+			file.writeInt(12345);
+			file.write(new byte[100]);
+		}
+
+		TaskJournal restarted = open(Duration.ofDays(7));
+		assertEquals(1, restarted.stats().records());
+		restarted.record(TaskProgress.completed("t2", "u1", "/download/t2.csv"));
+		restarted.close();
+
+		TaskJournal again = open(Duration.ofDays(7));
+		assertEquals("completed", again.find("t2").progress().status());
+		assertEquals(2, again.stats().tasks());
+		again.close();
+	}
+
+	@Test
+	void compactionKeepsLatestStateAndDropsExpiredTasks() throws Exception {
+		TaskJournal journal = open(Duration.ofMillis(50));
+		journal.record(TaskProgress.processing("old", "u1", 1, 10, "running"));
+		journal.record(TaskProgress.completed("old", "u1", "/download/old.csv"));
+		Thread.sleep(100);
+		journal.record(TaskProgress.processing("live", "u1", 1, 10, "running"));
+
+		journal.compact();
+
+		assertNull(journal.find("old"));
+		assertEquals(1, journal.stats().records());
+		assertEquals(1, journal.findByUser("u1").size());
+		journal.record(TaskProgress.completed("live", "u1", "/download/live.csv"));
+		journal.close();
+		assertTrue(Files.notExists(dir.resolve("task-journal.compact")));
+
+		TaskJournal restarted = open(Duration.ofDays(7));
+		assertEquals("completed", restarted.find("live").progress().status());
+		assertEquals(1, restarted.stats().tasks());
+		restarted.close();
+	}
+
+	@Test
+	void appendsDuringCompactionAreCarriedIntoTheNewJournal() throws Exception {
+		TaskJournal journal = open(Duration.ofDays(7));
+		int tasks = 2000;
+		Thread writer = new Thread(() -> {
+			for (int i = 0; i < tasks; i++) {
+				journal.record(TaskProgress.processing("task-" + i, "u", 1, 10, "running"));
+				journal.record(TaskProgress.processing("task-" + i, "u", 2, 10, "running"));
+				journal.record(TaskProgress.completed("task-" + i, "u", "/download/task-" + i));
+			}
+		});
+		writer.start();
+		while (writer.isAlive()) {
+			journal.compact();
+		}
+		writer.join();
+		journal.close();
+
+		TaskJournal restarted = open(Duration.ofDays(7));
+		assertEquals(tasks, restarted.stats().tasks());
+		for (int i = 0; i < tasks; i++) {
+			assertEquals("completed", restarted.find("task-" + i).progress().status(), "task-" + i);
+		}
+		restarted.close();
+	}
+
+	@Test
+	void progressAfterTerminalStatusIsRejected() {
+		TaskJournal journal = open(Duration.ofDays(7));
+		assertTrue(journal.record(TaskProgress.processing("t1", "u1", 1, 10, "running")));
+		assertTrue(journal.record(TaskProgress.cancelled("t1", "u1")));
+		// 取消后工作线程迟到的进度
+		assertFalse(journal.record(TaskProgress.processing("t1", "u1", 2, 10, "running")));
+		assertEquals("cancelled", journal.find("t1").progress().status());
+		assertEquals(2, journal.stats().records());
+		journal.close();
+
+		TaskJournal restarted = open(Duration.ofDays(7));
+		assertEquals("cancelled", restarted.find("t1").progress().status());
+		restarted.close();
+	}
+}
@@ -0,0 +1,191 @@
+package com.example.demo.loadtest;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地 DashScope 桩服务：模拟文本生成接口的同步与流式（SSE）响应，用于压测
+ * <p>
+ * - 片段内容为 "[序号@System.nanoTime()]"，同进程的客户端据此计算每个片段的投递延迟；
+ * - 可调：片段数、每秒片段数、首片段延迟；
+ * - 故障注入：按比例直接返回 500，或在流式响应中途断开连接；
+ * - 参数均可在运行时修改。
+ * <p>
+ * 单独启动（供独立运行的应用使用，dashscope.base-url 指向输出的地址）：
+ * java -cp target/test-classes:... -Dstub.port=18080 -Dstub.tokens-per-second=50 com.example.demo.loadtest.DashScopeStubServer
+ */
+public class DashScopeStubServer {
+
+	private volatile int tokens;
+	private volatile double tokensPerSecond;
+	private volatile Duration firstTokenDelay;
+	private volatile double failureRate;
+	private volatile double abortRate;
+
+	private final int port;
+	private DisposableServer server;
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong streamRequests = new AtomicLong();
+	private final AtomicLong injectedFailures = new AtomicLong();
+	private final AtomicLong abortedStreams = new AtomicLong();
+
+	public DashScopeStubServer(int port, int tokens, double tokensPerSecond, Duration firstTokenDelay,
+							   double failureRate, double abortRate) {
+		this.port = port;
+		this.tokens = tokens;
+		this.tokensPerSecond = tokensPerSecond;
+		this.firstTokenDelay = firstTokenDelay;
+		this.failureRate = failureRate;
+		this.abortRate = abortRate;
+	}
+
+	/**
+	 * 从系统属性读取配置：stub.port / stub.tokens / stub.tokens-per-second / stub.first-token-delay-ms /
+	 * stub.failure-rate / stub.abort-rate
+	 */
+	public static DashScopeStubServer fromSystemProperties() {
+		return new DashScopeStubServer(
+				Integer.getInteger("stub.port", 0),
+				Integer.getInteger("stub.tokens", 50),
+				Double.parseDouble(System.getProperty("stub.tokens-per-second", "100")),
+				Duration.ofMillis(Long.getLong("stub.first-token-delay-ms", 100)),
+				Double.parseDouble(System.getProperty("stub.failure-rate", "0")),
+				Double.parseDouble(System.getProperty("stub.abort-rate", "0")));
+	}
+
+	public static void main(String[] args) {
+		DashScopeStubServer stub = fromSystemProperties().start();
+		System.out.println("DashScope 桩服务已启动: " + stub.baseUrl());
+		stub.server.onDispose().block();
+	}
+
+	public DashScopeStubServer start() {
+		server = HttpServer.create()
+				.host("127.0.0.1")
+				.port(port)
+				.handle(this::handle)
+				.bindNow();
+		return this;
+	}
+
+	public void stop() {
+		if (server != null) {
+			server.disposeNow();
+		}
+	}
+
+	/**
+	 * 对应 dashscope.base-url
+	 */
+	public String baseUrl() {
+		return "http://127.0.0.1:" + server.port() + "/api/v1";
+	}
+
+	private Publisher<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+		requests.incrementAndGet();
+		boolean stream = "enable".equalsIgnoreCase(request.requestHeaders().get("X-DashScope-SSE"))
+				|| String.valueOf(request.requestHeaders().get("Accept")).contains("text/event-stream");
+		String requestId = "stub-" + requests.get();
+		// 读完请求体再响应
+		return request.receive().aggregate().then(Mono.defer(() -> {
+			if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+				injectedFailures.incrementAndGet();
+				return response.status(HttpResponseStatus.INTERNAL_SERVER_ERROR)
+						.header("Content-Type", "application/json")
+						.sendString(Mono.just("{\"code\":\"InternalError\",\"message\":\"injected failure\",\"request_id\":\""
+								+ requestId + "\"}"))
+						.then();
+			}
+			if (!stream) {
+				StringBuilder answer = new StringBuilder();
+				for (int i = 0; i < tokens; i++) {
+					answer.append(token(i));
+				}
+				return response.header("Content-Type", "application/json")
+						.sendString(Mono.delay(firstTokenDelay).map(tick -> result(requestId, answer.toString(), "stop")))
+						.then();
+			}
+			streamRequests.incrementAndGet();
+			return response.header("Content-Type", "text/event-stream;charset=UTF-8")
+					.sendString(events(requestId))
+					.then();
+		}));
+	}
+
+	private Flux<String> events(String requestId) {
+		int count = tokens;
+		Duration interval = tokensPerSecond > 0 ? Duration.ofNanos((long) (1_000_000_000L / tokensPerSecond)) : Duration.ZERO;
+		int abortAt = ThreadLocalRandom.current().nextDouble() < abortRate ? count / 2 : -1;
+		Flux<Integer> ticks = interval.isZero() ? Flux.range(0, count) : Flux.range(0, count).delayElements(interval);
+		return Mono.delay(firstTokenDelay).thenMany(ticks).map(i -> {
+			if (i == abortAt) {
+				abortedStreams.incrementAndGet();
+				throw new IllegalStateException("injected stream abort");
+			}
+			String finishReason = i == count - 1 ? "stop" : "null";
+			return "id:" + (i + 1) + "\nevent:result\n:HTTP_STATUS/200\ndata:"
+					+ result(requestId, token(i), finishReason) + "\n\n";
+		});
+	}
+
+	private static String token(int index) {
+		return "[" + index + "@" + System.nanoTime() + "]";
+	}
+
+	private static String result(String requestId, String content, String finishReason) {
+		return "{\"output\":{\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\"" + content
+				+ "\"},\"finish_reason\":\"" + finishReason + "\"}]},\"usage\":{\"input_tokens\":10,\"output_tokens\":1},"
+				+ "\"request_id\":\"" + requestId + "\"}";
+	}
+
+	public int tokens() {
+		return tokens;
+	}
+
+	public void setTokens(int tokens) {
+		this.tokens = tokens;
+	}
+
+	public void setTokensPerSecond(double tokensPerSecond) {
+		this.tokensPerSecond = tokensPerSecond;
+	}
+
+	public void setFirstTokenDelay(Duration firstTokenDelay) {
+		this.firstTokenDelay = firstTokenDelay;
+	}
+
+	public void setFailureRate(double failureRate) {
+		this.failureRate = failureRate;
+	}
+
+	public void setAbortRate(double abortRate) {
+		this.abortRate = abortRate;
+	}
+
+	public long requests() {
+		return requests.get();
+	}
+
+	public long streamRequests() {
+		return streamRequests.get();
+	}
+
+	public long injectedFailures() {
+		return injectedFailures.get();
+	}
+
+	public long abortedStreams() {
+		return abortedStreams.get();
+	}
+}
@@ -0,0 +1,325 @@
+package com.example.demo.loadtest;
+
+import com.example.demo.bo.TaskProgress;
+import com.example.demo.broker.ProgressBroker;
+import com.example.demo.sink.SharedClock;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SSE 连接规模压测：在随机端口启动应用，同进程内打开大量并发 SSE 连接
+ * <p>
+ * - /api/tasks/progress/stream：每个连接一个用户，直接经 ProgressBroker 发布带发送时间的进度；
+ * - /sseApi/time-stream：按共享时钟的 tick 时间计算投递延迟；
+ * - /api/qwen/ask/stream：上游指向 {@link DashScopeStubServer}，片段携带生成时间。
+ * 输出每连接内存（堆 + Netty 池化直接内存，含客户端侧）、投递延迟分位数、丢失事件数。
+ * <p>
+ * 运行：mvn test -Ploadtest
+ * 调整规模：-Dloadtest.progress-connections=20000 -Dloadtest.clock-connections=20000 -Dloadtest.qwen-connections=2000
+ * 桩服务参数：-Dstub.tokens=50 -Dstub.tokens-per-second=100 -Dstub.failure-rate=0.01 -Dstub.abort-rate=0.01
+ * 数万连接需要足够的文件句柄（ulimit -n）。
+ */
+@Tag("loadtest")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"dashscope.api-key=loadtest",
+		"qwen.cache.enabled=false",
+		"qwen.admission.user-rate=1000000",
+		"qwen.admission.user-burst=1000000",
+		"qwen.admission.max-queued=1000000",
+		"export.sink.max-size=1000000"
+})
+class SseConnectionLoadTest {
+
+	private static final int PROGRESS_CONNECTIONS = Integer.getInteger("loadtest.progress-connections", 10_000);
+	private static final int CLOCK_CONNECTIONS = Integer.getInteger("loadtest.clock-connections", 10_000);
+	private static final int QWEN_CONNECTIONS = Integer.getInteger("loadtest.qwen-connections", 1_000);
+	private static final int EVENTS_PER_CONNECTION = Integer.getInteger("loadtest.events-per-connection", 20);
+	private static final int CLOCK_SECONDS = Integer.getInteger("loadtest.clock-seconds", 10);
+	private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+	private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE = new ParameterizedTypeReference<>() {
+	};
+	private static final Pattern TOKEN = Pattern.compile("\\[(\\d+)@(\\d+)]");
+
+	private static final DashScopeStubServer STUB = DashScopeStubServer.fromSystemProperties().start();
+
+	@DynamicPropertySource
+	static void stubProperties(DynamicPropertyRegistry registry) {
+		registry.add("dashscope.base-url", STUB::baseUrl);
+	}
+
+	@AfterAll
+	static void stopStub() {
+		STUB.stop();
+	}
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private ProgressBroker progressBroker;
+
+	@Autowired
+	private SharedClock sharedClock;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private WebClient client;
+
+	@BeforeEach
+	void setUpClient() {
+		int maxConnections = Math.max(PROGRESS_CONNECTIONS, Math.max(CLOCK_CONNECTIONS, QWEN_CONNECTIONS));
+		ConnectionProvider provider = ConnectionProvider.builder("sse-loadtest")
+				.maxConnections(maxConnections)
+				.pendingAcquireMaxCount(-1)
+				.pendingAcquireTimeout(TIMEOUT)
+				.build();
+		client = WebClient.builder()
+				.baseUrl("http://127.0.0.1:" + port)
+				.clientConnector(new ReactorClientHttpConnector(HttpClient.create(provider)))
+				.build();
+	}
+
+	@Test
+	void progressStreams() throws Exception {
+		int connections = PROGRESS_CONNECTIONS;
+		LatencyHistogram latency = new LatencyHistogram();
+		AtomicLong received = new AtomicLong();
+		AtomicInteger transportErrors = new AtomicInteger();
+		CountDownLatch established = new CountDownLatch(connections);
+		CountDownLatch allReceived = new CountDownLatch(connections);
+
+		Memory before = Memory.snapshot();
+		List<Disposable> subscriptions = new ArrayList<>(connections);
+		for (int i = 0; i < connections; i++) {
+			AtomicInteger perConnection = new AtomicInteger();
+			subscriptions.add(stream("/api/tasks/progress/stream?userId={userId}", "load-u" + i)
+					// 首帧为 retry 帧，收到即视为连接已建立
+					.doOnNext(event -> {
+						if (event.retry() != null) {
+							established.countDown();
+						}
+					})
+					.filter(event -> "progress".equals(event.event()) && event.data() != null)
+					.subscribe(event -> {
+						long now = System.nanoTime();
+						latency.record(now - sentNanos(event.data()));
+						received.incrementAndGet();
+						if (perConnection.incrementAndGet() == EVENTS_PER_CONNECTION) {
+							allReceived.countDown();
+						}
+					}, error -> transportErrors.incrementAndGet()));
+		}
+		boolean allEstablished = established.await(TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+		Memory open = Memory.snapshot();
+
+		long publishStart = System.nanoTime();
+		for (int step = 1; step <= EVENTS_PER_CONNECTION; step++) {
+			for (int i = 0; i < connections; i++) {
+				progressBroker.publish(TaskProgress.processing("load-t" + i, "load-u" + i, step, EVENTS_PER_CONNECTION,
+						Long.toString(System.nanoTime())));
+			}
+		}
+		allReceived.await(TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+		long elapsedNanos = System.nanoTime() - publishStart;
+		subscriptions.forEach(Disposable::dispose);
+
+		long expected = (long) connections * EVENTS_PER_CONNECTION;
+		report("progress", connections, connections - established.getCount(), before, open, latency,
+				expected - received.get(), transportErrors.get(),
+				"throughput=%.0f events/s".formatted(received.get() / (elapsedNanos / 1e9)));
+		assertTrue(allEstablished, "部分进度流连接未能建立");
+	}
+
+	@Test
+	void clockStreams() throws Exception {
+		int connections = CLOCK_CONNECTIONS;
+		// tick 时间 "HH:mm:ss" -> {序号, 发出时间}
+		Map<String, long[]> ticks = new ConcurrentHashMap<>();
+		Disposable tickRecorder = sharedClock.ticks()
+				.subscribe(tick -> ticks.put(tick.time(), new long[]{tick.sequence(), tick.nanoTime()}));
+
+		LatencyHistogram latency = new LatencyHistogram();
+		AtomicInteger transportErrors = new AtomicInteger();
+		CountDownLatch established = new CountDownLatch(connections);
+		List<ClockConnection> states = new ArrayList<>(connections);
+
+		Memory before = Memory.snapshot();
+		List<Disposable> subscriptions = new ArrayList<>(connections);
+		for (int i = 0; i < connections; i++) {
+			ClockConnection state = new ClockConnection();
+			states.add(state);
+			subscriptions.add(stream("/sseApi/time-stream", null)
+					.filter(event -> event.data() != null)
+					.subscribe(event -> {
+						long now = System.nanoTime();
+						String data = event.data();
+						long[] tick = ticks.get(data.substring(data.length() - 8));
+						if (tick == null) {
+							return;
+						}
+						latency.record(now - tick[1]);
+						if (state.received.getAndIncrement() == 0) {
+							state.firstSeq = tick[0];
+							established.countDown();
+						}
+						state.lastSeq = tick[0];
+					}, error -> transportErrors.incrementAndGet()));
+		}
+		boolean allEstablished = established.await(TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+		Memory open = Memory.snapshot();
+
+		Thread.sleep(TimeUnit.SECONDS.toMillis(CLOCK_SECONDS));
+		subscriptions.forEach(Disposable::dispose);
+		tickRecorder.dispose();
+
+		long dropped = 0;
+		for (ClockConnection state : states) {
+			int count = state.received.get();
+			if (count > 0) {
+				dropped += state.lastSeq - state.firstSeq + 1 - count;
+			}
+		}
+		report("clock", connections, connections - established.getCount(), before, open, latency, dropped,
+				transportErrors.get(), "ticks=" + ticks.size());
+		assertTrue(allEstablished, "部分时间流连接未能建立");
+	}
+
+	@Test
+	void qwenStreams() throws Exception {
+		int connections = QWEN_CONNECTIONS;
+		int tokens = STUB.tokens();
+		LatencyHistogram tokenLatency = new LatencyHistogram();
+		LatencyHistogram timeToFirstToken = new LatencyHistogram();
+		AtomicLong dropped = new AtomicLong();
+		AtomicInteger failedStreams = new AtomicInteger();
+		AtomicInteger queuedStreams = new AtomicInteger();
+		CountDownLatch finished = new CountDownLatch(connections);
+		long stubFailuresBefore = STUB.injectedFailures() + STUB.abortedStreams();
+
+		Memory before = Memory.snapshot();
+		List<Disposable> subscriptions = new ArrayList<>(connections);
+		for (int i = 0; i < connections; i++) {
+			long start = System.nanoTime();
+			AtomicInteger received = new AtomicInteger();
+			AtomicInteger errors = new AtomicInteger();
+			subscriptions.add(client.get()
+					.uri("/api/qwen/ask/stream?question={question}&userId={userId}", "压测问题 " + i, "load-q" + i)
+					.accept(MediaType.TEXT_EVENT_STREAM)
+					.retrieve()
+					.bodyToFlux(SSE_TYPE)
+					.filter(event -> event.data() != null)
+					.doFinally(signal -> {
+						if (errors.get() > 0) {
+							failedStreams.incrementAndGet();
+						} else {
+							dropped.addAndGet(tokens - received.get());
+						}
+						finished.countDown();
+					})
+					.subscribe(event -> {
+						long now = System.nanoTime();
+						switch (String.valueOf(event.event())) {
+							case "message" -> {
+								Matcher matcher = TOKEN.matcher(event.data());
+								while (matcher.find()) {
+									if (received.getAndIncrement() == 0) {
+										timeToFirstToken.record(now - start);
+									}
+									tokenLatency.record(now - Long.parseLong(matcher.group(2)));
+								}
+							}
+							case "queued" -> queuedStreams.incrementAndGet();
+							default -> errors.incrementAndGet();
+						}
+					}, error -> errors.incrementAndGet()));
+		}
+		finished.await(TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+		Memory open = Memory.snapshot();
+		subscriptions.forEach(Disposable::dispose);
+
+		report("qwen", connections, connections - finished.getCount(), before, open, tokenLatency, dropped.get(),
+				failedStreams.get(), "ttft " + timeToFirstToken.summary()
+						+ " | queued-events=" + queuedStreams.get()
+						+ " injected-failures=" + (STUB.injectedFailures() + STUB.abortedStreams() - stubFailuresBefore));
+	}
+
+	private Flux<ServerSentEvent<String>> stream(String uri, String userId) {
+		return client.get()
+				.uri(uri, userId == null ? new Object[0] : new Object[]{userId})
+				.accept(MediaType.TEXT_EVENT_STREAM)
+				.retrieve()
+				.bodyToFlux(SSE_TYPE);
+	}
+
+	private long sentNanos(String progressJson) {
+		try {
+			return Long.parseLong(objectMapper.readTree(progressJson).get("message").asText());
+		} catch (Exception e) {
+			throw new IllegalStateException("无法解析进度事件: " + progressJson, e);
+		}
+	}
+
+	private static void report(String endpoint, int connections, long completed, Memory before, Memory open,
+							   LatencyHistogram latency, long dropped, int errors, String extra) {
+		long heapPerConnection = (open.heapBytes - before.heapBytes) / Math.max(1, connections);
+		long directPerConnection = (open.directBytes - before.directBytes) / Math.max(1, connections);
+		System.out.printf("[loadtest] %-8s connections=%d ok=%d heap/conn=%dB direct/conn=%dB dropped=%d errors=%d%n",
+				endpoint, connections, completed, heapPerConnection, directPerConnection, dropped, errors);
+		System.out.printf("[loadtest] %-8s latency %s%n", endpoint, latency.summary());
+		System.out.printf("[loadtest] %-8s %s%n", endpoint, extra);
+	}
+
+	private static final class ClockConnection {
+		final AtomicInteger received = new AtomicInteger();
+		// 只在该连接的事件循环线程中写入，测试线程在所有订阅取消后读取
+		volatile long firstSeq;
+		volatile long lastSeq;
+	}
+
+	/**
+	 * GC 后的堆占用与 Netty 池化直接内存占用（服务端与客户端共用同一个分配器）
+	 */
+	private record Memory(long heapBytes, long directBytes) {
+
+		static Memory snapshot() throws InterruptedException {
+			System.gc();
+			Thread.sleep(200);
+			return new Memory(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(),
+					PooledByteBufAllocator.DEFAULT.metric().usedDirectMemory());
+		}
+	}
+}
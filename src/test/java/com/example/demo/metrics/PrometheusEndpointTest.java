@@ -0,0 +1,63 @@
+package com.example.demo.metrics;
+
+import com.example.demo.bo.TaskProgress;
+import com.example.demo.sink.UserSinkRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 测试默认关闭指标导出，需要显式打开才会注册 /actuator/prometheus
+@AutoConfigureObservability
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class PrometheusEndpointTest {
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@Autowired
+	private SseMetrics sseMetrics;
+
+	@Autowired
+	private UserSinkRegistry userSinkRegistry;
+
+	@Test
+	void trackCountsActiveSubscribersPerEndpoint() {
+		Disposable first = sseMetrics.track("/test/stream", Flux.never()).subscribe();
+		Disposable second = sseMetrics.track("/test/stream", Flux.never()).subscribe();
+		assertEquals(2, sseMetrics.activeSubscribers("/test/stream"));
+
+		first.dispose();
+		assertEquals(1, sseMetrics.activeSubscribers("/test/stream"));
+		second.dispose();
+		assertEquals(0, sseMetrics.activeSubscribers("/test/stream"));
+	}
+
+	@Test
+	void scrapeExposesSinkExecutorAndSubscriberMetrics() {
+		Disposable subscription = sseMetrics.track("/test/scrape", Flux.never()).subscribe();
+		userSinkRegistry.emit("metrics-user", TaskProgress.processing("t1", "metrics-user", 1, 2, "step"));
+
+		String body = webTestClient.get().uri("/actuator/prometheus")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody(String.class)
+				.returnResult()
+				.getResponseBody();
+		subscription.dispose();
+
+		assertTrue(body.contains("sse_subscribers_active{application=\"demoproject\",endpoint=\"/test/scrape\"} 1.0"), body);
+		assertTrue(body.contains("sse_sink_emit_total{application=\"demoproject\",result=\"FAIL_ZERO_SUBSCRIBER\"}"));
+		assertTrue(body.contains("sse_sink_buffer_events"));
+		assertTrue(body.contains("executor_queued_tasks{application=\"demoproject\",name=\"exportTaskExecutor\"}"));
+		assertTrue(body.contains("export_rejected_total"));
+		assertTrue(body.contains("qwen_stream_ttft_seconds_bucket"));
+		assertTrue(body.contains("export_duration_seconds_bucket"));
+	}
+}
@@ -0,0 +1,101 @@
+package com.example.demo.mux;
+
+import com.example.demo.sink.ProgressFrameEncoder;
+import com.example.demo.sink.SseFrame;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultiplexSessionTest {
+
+	private final MultiplexFrameEncoder encoder = new MultiplexFrameEncoder(new ObjectMapper(),
+			new ProgressFrameEncoder(new ObjectMapper()));
+
+	@Test
+	void chattyTopicDoesNotStarveOtherTopics() {
+		AtomicBoolean closed = new AtomicBoolean();
+		MultiplexSession session = new MultiplexSession("s1", "u1", 8, 4, encoder, () -> closed.set(true));
+		FrameCollector collector = new FrameCollector();
+		session.frames().subscribe(collector);
+
+		// 话多的 LLM 流：随时有数据可发
+		Flux<SseFrame> chatty = Flux.range(1, 10_000).map(i -> encoder.qwen("qwen:q1", message("片段" + i)));
+		Sinks.Many<SseFrame> progress = Sinks.many().unicast().onBackpressureBuffer();
+		assertEquals(MultiplexSession.SubscribeResult.SUBSCRIBED, session.subscribe("qwen:q1", chatty));
+		assertEquals(MultiplexSession.SubscribeResult.SUBSCRIBED, session.subscribe("clock", progress.asFlux()));
+		for (int i = 0; i < 5; i++) {
+			progress.tryEmitNext(encoder.qwen("clock", message("tick" + i)));
+		}
+
+		collector.request(11);
+		List<String> frames = collector.frames();
+		assertTrue(frames.get(0).startsWith("event:session"));
+		assertEquals(5, frames.stream().filter(frame -> frame.contains("\"topic\":\"clock\"")).count());
+		assertEquals(5, frames.stream().filter(frame -> frame.contains("\"topic\":\"qwen:q1\"")).count());
+
+		collector.dispose();
+		assertTrue(closed.get());
+		assertEquals(MultiplexSession.SubscribeResult.CLOSED, session.subscribe("other", Flux.never()));
+	}
+
+	@Test
+	void finishedAndUnsubscribedTopicsEmitEndEvent() {
+		MultiplexSession session = new MultiplexSession("s2", "u1", 8, 2, encoder, () -> {
+		});
+		FrameCollector collector = new FrameCollector();
+		session.frames().subscribe(collector);
+		collector.request(Long.MAX_VALUE);
+
+		session.subscribe("qwen:a", Flux.just(encoder.qwen("qwen:a", message("答案"))));
+		assertEquals(MultiplexSession.SubscribeResult.SUBSCRIBED, session.subscribe("clock", Flux.never()));
+		assertEquals(MultiplexSession.SubscribeResult.DUPLICATE, session.subscribe("clock", Flux.never()));
+		assertEquals(MultiplexSession.SubscribeResult.SUBSCRIBED, session.subscribe("progress", Flux.never()));
+		assertEquals(MultiplexSession.SubscribeResult.LIMIT_EXCEEDED, session.subscribe("qwen:b", Flux.never()));
+
+		assertTrue(session.unsubscribe("clock"));
+		assertFalse(session.unsubscribe("clock"));
+
+		List<String> frames = collector.frames();
+		assertTrue(frames.contains("event:message\ndata:{\"topic\":\"qwen:a\",\"data\":\"答案\"}\n\n"), frames.toString());
+		assertTrue(frames.contains("event:end\ndata:{\"topic\":\"qwen:a\",\"data\":\"complete\"}\n\n"), frames.toString());
+		assertTrue(frames.contains("event:end\ndata:{\"topic\":\"clock\",\"data\":\"unsubscribed\"}\n\n"), frames.toString());
+		assertEquals(1, session.topicCount());
+		collector.dispose();
+	}
+
+	private static ServerSentEvent<String> message(String data) {
+		return ServerSentEvent.<String>builder().event("message").data(data).build();
+	}
+
+	/**
+	 * 按需请求的下游，模拟写出较慢的连接
+	 */
+	private static final class FrameCollector extends BaseSubscriber<SseFrame> {
+		private final List<String> frames = new CopyOnWriteArrayList<>();
+
+		@Override
+		protected void hookOnSubscribe(Subscription subscription) {
+		}
+
+		@Override
+		protected void hookOnNext(SseFrame frame) {
+			frames.add(frame.toString());
+		}
+
+		List<String> frames() {
+			return frames;
+		}
+	}
+}
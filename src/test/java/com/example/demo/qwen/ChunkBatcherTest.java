@@ -0,0 +1,68 @@
+package com.example.demo.qwen;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkBatcherTest {
+
+	private static ServerSentEvent<String> message(String data) {
+		return ServerSentEvent.<String>builder().event("message").data(data).build();
+	}
+
+	@Test
+	void firstTokenIsImmediateAndRestIsMergedWithinWindow() {
+		ChunkBatcher batcher = new ChunkBatcher(Duration.ofMillis(200), 1024);
+		Flux<ServerSentEvent<String>> tokens = Flux.interval(Duration.ofMillis(5))
+				.take(20)
+				.map(i -> message("t" + i));
+
+		long start = System.nanoTime();
+		List<Long> arrivals = new ArrayList<>();
+		List<ServerSentEvent<String>> frames = batcher.batch(tokens)
+				.doOnNext(frame -> arrivals.add(System.nanoTime() - start))
+				.collectList()
+				.block(Duration.ofSeconds(5));
+
+		assertEquals("t0", frames.get(0).data());
+		assertTrue(arrivals.get(0) < Duration.ofMillis(100).toNanos(), "首个片段不应等待合并窗口");
+		assertTrue(frames.size() <= 3, "20 个片段应合并为少量帧，实际 " + frames.size());
+		assertEquals(String.join("", Flux.range(0, 20).map(i -> "t" + i).collectList().block()),
+				String.join("", frames.stream().map(ServerSentEvent::data).toList()));
+
+		ChunkBatcher.BatchStats stats = batcher.stats();
+		assertEquals(20, stats.fragmentsIn());
+		assertEquals(frames.size(), stats.framesOut());
+		assertEquals(20 - frames.size(), stats.framesSaved());
+		assertTrue(stats.maxAddedLatencyMillis() > 0);
+	}
+
+	@Test
+	void byteBudgetFlushesBeforeWindowAndErrorsPassThroughInOrder() {
+		ChunkBatcher batcher = new ChunkBatcher(Duration.ofSeconds(10), 4);
+		Flux<ServerSentEvent<String>> events = Flux.just(
+				message("a"), message("bb"), message("cc"), message("d"),
+				ServerSentEvent.<String>builder().event("error").data("boom").build());
+
+		List<ServerSentEvent<String>> frames = batcher.batch(events)
+				.collectList()
+				.block(Duration.ofSeconds(1));
+
+		assertEquals(List.of("a", "bbcc", "d", "boom"), frames.stream().map(ServerSentEvent::data).toList());
+		assertEquals("error", frames.get(3).event());
+	}
+
+	@Test
+	void utf8LengthCountsMultiByteCharacters() {
+		assertEquals(1, ChunkBatcher.utf8Length("a"));
+		assertEquals(3, ChunkBatcher.utf8Length("中"));
+		assertEquals(4, ChunkBatcher.utf8Length("😀"));
+	}
+}
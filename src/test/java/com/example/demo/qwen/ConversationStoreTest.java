@@ -0,0 +1,73 @@
+package com.example.demo.qwen;
+
+import com.alibaba.dashscope.common.Message;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversationStoreTest {
+
+	@Test
+	void promptStaysWithinTokenBudgetAndOlderTurnsBecomeDigest() {
+		// 每轮约 100 token，预算 250：只能带最近两轮
+		ConversationStore store = new ConversationStore(100, 50, 1 << 20, 250, 1024, Duration.ofMinutes(30));
+		for (int i = 0; i < 10; i++) {
+			store.append("s", "question " + i, "x".repeat(390));
+		}
+
+		List<Message> prompt = store.buildPrompt("s", "system", "next");
+
+		assertEquals(1 + 1 + 2 * 2 + 1, prompt.size());
+		assertTrue(prompt.get(1).getContent().contains("question 0"));
+		assertTrue(prompt.get(1).getContent().contains("question 7"));
+		assertEquals("question 8", prompt.get(2).getContent());
+		assertEquals("question 9", prompt.get(4).getContent());
+		assertEquals("next", prompt.get(6).getContent());
+
+		ConversationStore.StoreStats stats = store.stats();
+		assertTrue(stats.tokensSaved() > stats.sentHistoryTokens(), "截断应节省大部分历史 token: " + stats);
+	}
+
+	@Test
+	void perSessionLimitsTruncateIntoBoundedDigest() {
+		ConversationStore store = new ConversationStore(100, 3, 1 << 20, 10_000, 64, Duration.ofMinutes(30));
+		for (int i = 0; i < 20; i++) {
+			store.append("s", "a fairly long question number " + i, "answer " + i);
+		}
+
+		ConversationStore.SessionStats session = store.sessionStats("s");
+		assertEquals(3, session.turns());
+		assertTrue(session.digestBytes() <= 64);
+		assertEquals(17, store.stats().turnsTruncated());
+
+		List<Message> prompt = store.buildPrompt("s", "system", "next");
+		assertTrue(prompt.get(1).getContent().contains("number 16"), prompt.get(1).getContent());
+	}
+
+	@Test
+	void idleAndExcessSessionsAreEvicted() throws InterruptedException {
+		ConversationStore store = new ConversationStore(10, 50, 1 << 20, 2000, 1024, Duration.ofMillis(50));
+		for (int i = 0; i < 10; i++) {
+			store.append("s" + i, "q", "a");
+		}
+		store.append("s10", "q", "a");
+		assertTrue(store.stats().sessions() <= 10);
+		assertTrue(store.stats().capacityEvictions() > 0);
+
+		Thread.sleep(100);
+		store.evictIdle();
+		assertEquals(0, store.stats().sessions());
+		assertNull(store.sessionStats("s10"));
+	}
+
+	@Test
+	void estimatesTokensForCjkAndAscii() {
+		assertEquals(2, ConversationStore.estimateTokens("你好"));
+		assertEquals(2, ConversationStore.estimateTokens("hello!!"));
+	}
+}
@@ -0,0 +1,80 @@
+package com.example.demo.qwen;
+
+import com.alibaba.dashscope.aigc.generation.GenerationParam;
+import com.alibaba.dashscope.aigc.generation.GenerationResult;
+import com.alibaba.dashscope.common.DashScopeResult;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import io.reactivex.Flowable;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地桩客户端：按固定片段和间隔返回结果，并统计上游调用次数
+ */
+public class FakeQwenClient implements QwenClient {
+
+	private final List<String> chunks;
+	private final long chunkDelayMillis;
+	private final long callDelayMillis;
+
+	public final AtomicInteger calls = new AtomicInteger();
+	public final AtomicInteger streamCalls = new AtomicInteger();
+	public final AtomicInteger activeStreams = new AtomicInteger();
+	public final AtomicInteger cancelledStreams = new AtomicInteger();
+	public volatile GenerationParam lastParam;
+
+	public FakeQwenClient(List<String> chunks, long chunkDelayMillis, long callDelayMillis) {
+		this.chunks = List.copyOf(chunks);
+		this.chunkDelayMillis = chunkDelayMillis;
+		this.callDelayMillis = callDelayMillis;
+	}
+
+	@Override
+	public GenerationResult call(GenerationParam param) {
+		calls.incrementAndGet();
+		lastParam = param;
+		if (callDelayMillis > 0) {
+			try {
+				Thread.sleep(callDelayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return result(String.join("", chunks), "stop");
+	}
+
+	@Override
+	public Flowable<GenerationResult> streamCall(GenerationParam param) {
+		streamCalls.incrementAndGet();
+		lastParam = param;
+		Flowable<String> source = Flowable.fromIterable(chunks);
+		if (chunkDelayMillis > 0) {
+			source = source.concatMap(chunk -> Flowable.just(chunk).delay(chunkDelayMillis, TimeUnit.MILLISECONDS));
+		}
+		return source.map(chunk -> result(chunk, "null"))
+				.doOnSubscribe(s -> activeStreams.incrementAndGet())
+				.doOnCancel(cancelledStreams::incrementAndGet)
+				.doFinally(activeStreams::decrementAndGet);
+	}
+
+	public static GenerationResult result(String content, String finishReason) {
+		JsonObject message = new JsonObject();
+		message.addProperty("role", "assistant");
+		message.addProperty("content", content);
+		JsonObject choice = new JsonObject();
+		choice.add("message", message);
+		choice.addProperty("finish_reason", finishReason);
+		JsonArray choices = new JsonArray();
+		choices.add(choice);
+		JsonObject output = new JsonObject();
+		output.add("choices", choices);
+
+		DashScopeResult result = new DashScopeResult();
+		result.setOutput(output);
+		result.setRequestId("fake-" + System.nanoTime());
+		return GenerationResult.fromDashScopeResult(result);
+	}
+}
@@ -0,0 +1,76 @@
+package com.example.demo.qwen;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpstreamAdmissionTest {
+
+	@Test
+	void tokenBucketAllowsBurstThenRejectsWithRetryAfter() {
+		UpstreamAdmission admission = new UpstreamAdmission(0.5, 3, 64, 200, Duration.ofSeconds(5));
+
+		for (int i = 0; i < 3; i++) {
+			admission.checkRate("heavy");
+		}
+		UpstreamAdmission.AdmissionRejectedException rejected =
+				assertThrows(UpstreamAdmission.AdmissionRejectedException.class, () -> admission.checkRate("heavy"));
+		assertTrue(rejected.retryAfterSeconds() >= 1);
+
+		// 其他用户不受影响
+		admission.checkRate("light");
+		assertEquals(1, admission.stats().rateLimited());
+	}
+
+	@Test
+	void interactiveTicketsJumpAheadOfBulkAndSeePositions() {
+		UpstreamAdmission admission = new UpstreamAdmission(1000, 1000, 1, 10, Duration.ofSeconds(5));
+		UpstreamAdmission.Ticket running = admission.reserve(UpstreamAdmission.Priority.BULK);
+		assertTrue(running.isGranted());
+
+		UpstreamAdmission.Ticket bulk = admission.reserve(UpstreamAdmission.Priority.BULK);
+		UpstreamAdmission.Ticket interactive = admission.reserve(UpstreamAdmission.Priority.INTERACTIVE);
+		List<String> events = new CopyOnWriteArrayList<>();
+		Disposable stream = interactive.run(() -> Flux.just(ServerSentEvent.<String>builder().event("message").data("answer").build()))
+				.subscribe(event -> events.add(event.event() + ":" + event.data()));
+
+		assertEquals(List.of("queued:1"), events);
+		assertEquals(1, admission.stats().queuedInteractive());
+		assertEquals(1, admission.stats().queuedBulk());
+
+		running.release();
+
+		assertEquals(List.of("queued:1", "message:answer"), events);
+		assertTrue(bulk.isGranted(), "交互式请求完成后批量请求获得许可");
+		stream.dispose();
+		bulk.release();
+		assertEquals(0, admission.stats().inFlight());
+	}
+
+	@Test
+	void fullQueueRejectsAndCancelledTicketsLeaveTheQueue() {
+		UpstreamAdmission admission = new UpstreamAdmission(1000, 1000, 1, 1, Duration.ofSeconds(7));
+		UpstreamAdmission.Ticket running = admission.reserve(UpstreamAdmission.Priority.INTERACTIVE);
+		UpstreamAdmission.Ticket waiting = admission.reserve(UpstreamAdmission.Priority.INTERACTIVE);
+
+		UpstreamAdmission.AdmissionRejectedException rejected = assertThrows(UpstreamAdmission.AdmissionRejectedException.class,
+				() -> admission.reserve(UpstreamAdmission.Priority.INTERACTIVE));
+		assertEquals(7, rejected.retryAfterSeconds());
+
+		waiting.release();
+		running.release();
+		assertFalse(waiting.isGranted());
+		assertEquals(0, admission.stats().inFlight());
+		assertEquals(0, admission.stats().queuedInteractive());
+	}
+}
@@ -0,0 +1,203 @@
+package com.example.demo.service;
+
+import com.alibaba.dashscope.common.Message;
+import com.example.demo.metrics.QwenMetrics;
+import com.example.demo.qwen.ChunkBatcher;
+import com.example.demo.qwen.ConversationStore;
+import com.example.demo.qwen.FakeQwenClient;
+import com.example.demo.qwen.QwenResponseCache;
+import com.example.demo.qwen.UpstreamAdmission;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QwenServiceTest {
+
+	private QwenService service(FakeQwenClient client, QwenResponseCache cache) {
+		return service(client, cache, Schedulers.boundedElastic());
+	}
+
+	private QwenService service(FakeQwenClient client, QwenResponseCache cache, Scheduler scheduler) {
+		return service(client, cache, scheduler, new UpstreamAdmission(1000, 1000, 64, 200, Duration.ofSeconds(5)));
+	}
+
+	private QwenService service(FakeQwenClient client, QwenResponseCache cache, Scheduler scheduler,
+								UpstreamAdmission admission) {
+		QwenService service = new QwenService(client, cache, scheduler, new ChunkBatcher(Duration.ZERO, 256),
+				new ConversationStore(100, 50, 65536, 2000, 1024, Duration.ofMinutes(30)), admission,
+				new QwenMetrics(new SimpleMeterRegistry()));
+		ReflectionTestUtils.setField(service, "apiKey", "test-key");
+		ReflectionTestUtils.setField(service, "model", "qwen3-max");
+		ReflectionTestUtils.setField(service, "systemPrompt", "You are a helpful assistant.");
+		ReflectionTestUtils.setField(service, "replaySpeed", 1.0);
+		return service;
+	}
+
+	@Test
+	void streamCacheHitReplaysRecordedChunksWithoutUpstreamCall() {
+		FakeQwenClient client = new FakeQwenClient(List.of("你", "好", "！"), 30, 0);
+		QwenService service = service(client, new QwenResponseCache(true, 1 << 20, Duration.ofMinutes(5)));
+
+		List<String> first = service.askQuestionStreamSSE("你好").map(ServerSentEvent::data).collectList().block();
+		long start = System.nanoTime();
+		List<String> replayed = service.askQuestionStreamSSE("  你好 ").map(ServerSentEvent::data).collectList().block();
+		long replayMillis = (System.nanoTime() - start) / 1_000_000;
+
+		assertEquals(List.of("你", "好", "！"), first);
+		assertEquals(first, replayed);
+		assertEquals(1, client.streamCalls.get());
+		assertTrue(replayMillis >= 40, "命中时应按记录的节奏回放，实际耗时 " + replayMillis + "ms");
+		assertEquals("你好！", assertHitAndGetAnswer(service));
+		assertEquals(0, client.calls.get());
+	}
+
+	private String assertHitAndGetAnswer(QwenService service) {
+		try {
+			return service.askQuestionSync("你好");
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Test
+	void cacheEvictsLeastRecentlyUsedEntriesBeyondByteCap() {
+		QwenResponseCache cache = new QwenResponseCache(true, 1_000, Duration.ofMinutes(5));
+		for (int i = 0; i < 10; i++) {
+			cache.put(QwenResponseCache.CacheKey.of("question " + i, "m", "s"),
+					QwenResponseCache.CachedAnswer.of(List.of("answer " + i), new long[]{0}));
+		}
+		QwenResponseCache.CacheStats stats = cache.stats();
+		assertTrue(stats.bytes() <= 1_000);
+		assertTrue(stats.evictions() > 0);
+		assertTrue(cache.get(QwenResponseCache.CacheKey.of("question 9", "m", "s")) != null);
+		assertEquals(null, cache.get(QwenResponseCache.CacheKey.of("question 0", "m", "s")));
+		assertEquals(1, cache.stats().hits());
+		assertEquals(1, cache.stats().misses());
+	}
+
+	@Test
+	void concurrentIdenticalStreamsShareOneUpstreamAndLateJoinerGetsEarlierChunks() throws Exception {
+		FakeQwenClient client = new FakeQwenClient(List.of("a", "b", "c", "d", "e"), 50, 0);
+		QwenService service = service(client, new QwenResponseCache(false, 1 << 20, Duration.ofMinutes(5)));
+
+		CompletableFuture<List<String>> leader = service.askQuestionStreamSSE("same question")
+				.map(ServerSentEvent::data).collectList().toFuture();
+		Thread.sleep(130);
+		List<String> follower = service.askQuestionStreamSSE("same question")
+				.map(ServerSentEvent::data).collectList().block(Duration.ofSeconds(5));
+
+		assertEquals(List.of("a", "b", "c", "d", "e"), leader.get(5, TimeUnit.SECONDS));
+		assertEquals(List.of("a", "b", "c", "d", "e"), follower);
+		assertEquals(1, client.streamCalls.get());
+		assertEquals(1, service.getInFlightStats().followers());
+		assertEquals(0, service.getInFlightStats().inFlight());
+	}
+
+	@Test
+	void followerReturnsItsReservationAsSoonAsItJoins() throws Exception {
+		FakeQwenClient client = new FakeQwenClient(List.of("a", "b", "c"), 100, 0);
+		UpstreamAdmission admission = new UpstreamAdmission(1000, 1000, 64, 10, Duration.ofSeconds(5));
+		QwenService service = service(client, new QwenResponseCache(false, 1 << 20, Duration.ofMinutes(5)),
+				Schedulers.boundedElastic(), admission);
+
+		// 两个请求都在订阅之前做合并检查，各自预约了许可
+		Flux<ServerSentEvent<String>> leader = service.askQuestionStreamSSE("q", null, "u1");
+		Flux<ServerSentEvent<String>> follower = service.askQuestionStreamSSE("q", null, "u2");
+		assertEquals(2, admission.stats().inFlight());
+
+		CompletableFuture<List<String>> leaderResult = leader.map(ServerSentEvent::data).collectList().toFuture();
+		CompletableFuture<List<String>> followerResult = follower.map(ServerSentEvent::data).collectList().toFuture();
+		// 后订阅的一方成为 follower，预约立即归还，而不是等到流结束
+		assertEquals(1, admission.stats().inFlight());
+
+		assertEquals(List.of("a", "b", "c"), followerResult.get(5, TimeUnit.SECONDS));
+		assertEquals(List.of("a", "b", "c"), leaderResult.get(5, TimeUnit.SECONDS));
+		assertEquals(1, client.streamCalls.get());
+		assertEquals(0, admission.stats().inFlight());
+	}
+
+	@Test
+	void upstreamIsCancelledOnlyWhenLastSubscriberLeaves() throws Exception {
+		FakeQwenClient client = new FakeQwenClient(List.of("a", "b", "c", "d", "e"), 100, 0);
+		QwenService service = service(client, new QwenResponseCache(false, 1 << 20, Duration.ofMinutes(5)));
+
+		Disposable first = service.askQuestionStreamSSE("q").subscribe();
+		Disposable second = service.askQuestionStreamSSE("q").subscribe();
+		Thread.sleep(50);
+		first.dispose();
+		Thread.sleep(50);
+		assertEquals(0, client.cancelledStreams.get());
+		assertEquals(1, client.activeStreams.get());
+
+		second.dispose();
+		Thread.sleep(50);
+		assertEquals(1, client.cancelledStreams.get());
+		assertEquals(1, client.streamCalls.get());
+	}
+
+	@Test
+	void blockingCallsFailFastWhenBulkheadIsFull() {
+		FakeQwenClient client = new FakeQwenClient(List.of("answer"), 0, 300);
+		Scheduler bulkhead = Schedulers.newBoundedElastic(1, 1, "test-bulkhead");
+		QwenService service = service(client, new QwenResponseCache(false, 1 << 20, Duration.ofMinutes(5)), bulkhead);
+
+		List<CompletableFuture<String>> calls = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			calls.add(service.askQuestion("q" + i).toFuture());
+		}
+
+		ExecutionException error = assertThrows(ExecutionException.class, () -> calls.get(3).get(1, TimeUnit.SECONDS));
+		assertTrue(error.getCause() instanceof RejectedExecutionException);
+		assertEquals("answer", calls.get(0).join());
+		bulkhead.dispose();
+	}
+
+	@Test
+	void sessionStreamsCarryHistoryAndBypassTheCache() {
+		FakeQwenClient client = new FakeQwenClient(List.of("答", "案"), 0, 0);
+		QwenService service = service(client, new QwenResponseCache(true, 1 << 20, Duration.ofMinutes(5)));
+
+		service.askQuestionStreamSSE("第一个问题", "s1", "u1").blockLast();
+		service.askQuestionStreamSSE("第一个问题", "s1", "u1").blockLast();
+
+		assertEquals(2, client.streamCalls.get());
+		List<String> roles = client.lastParam.getMessages().stream().map(Message::getRole).toList();
+		assertEquals(List.of("system", "user", "assistant", "user"), roles);
+		assertEquals(2, service.getSessionStats("s1").turns());
+		assertEquals(0, service.getCacheStats().entries());
+	}
+
+	@Test
+	void streamsBeyondTheInFlightCapAreQueuedWithPosition() {
+		FakeQwenClient client = new FakeQwenClient(List.of("a", "b", "c"), 100, 0);
+		UpstreamAdmission admission = new UpstreamAdmission(1000, 1000, 1, 10, Duration.ofSeconds(5));
+		QwenService service = service(client, new QwenResponseCache(false, 1 << 20, Duration.ofMinutes(5)),
+				Schedulers.boundedElastic(), admission);
+
+		CompletableFuture<List<String>> first = service.askQuestionStreamSSE("first", null, "u1")
+				.map(event -> event.event() + ":" + event.data()).collectList().toFuture();
+		List<String> second = service.askQuestionStreamSSE("second", null, "u2")
+				.map(event -> event.event() + ":" + event.data()).collectList().block(Duration.ofSeconds(5));
+
+		assertEquals(List.of("queued:1", "message:a", "message:b", "message:c"), second);
+		assertEquals(List.of("message:a", "message:b", "message:c"), first.join());
+		assertEquals(0, admission.stats().inFlight());
+	}
+}
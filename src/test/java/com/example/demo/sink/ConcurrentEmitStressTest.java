@@ -0,0 +1,84 @@
+package com.example.demo.sink;
+
+import com.example.demo.bo.TaskProgress;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 同一用户 64 个任务在各自线程中同时推送进度，每个事件都必须送达且同一任务内保持顺序
+ */
+class ConcurrentEmitStressTest {
+
+	private static final int TASKS = 64;
+	private static final int STEPS = 200;
+
+	@Test
+	void everyEventFromConcurrentTasksArrivesInPerTaskOrder() throws Exception {
+		UserSinkRegistry registry = new UserSinkRegistry(10, Duration.ofMinutes(1), TASKS * (STEPS + 1), 64,
+				new ProgressFrameEncoder(new ObjectMapper()), OverflowPolicy.DISCONNECT, Duration.ofMinutes(1));
+		long base = registry.currentSequence();
+		List<ProgressEvent> received = new CopyOnWriteArrayList<>();
+		Disposable subscription = registry.stream("u1", -1).subscribe(received::add);
+
+		ExecutorService workers = Executors.newFixedThreadPool(TASKS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < TASKS; t++) {
+			String taskId = "task-" + t;
+			futures.add(workers.submit(() -> {
+				start.await();
+				for (int step = 1; step <= STEPS; step++) {
+					assertEquals(Sinks.EmitResult.OK,
+							registry.emit("u1", TaskProgress.processing(taskId, "u1", step, STEPS, "step")));
+				}
+				assertEquals(Sinks.EmitResult.OK, registry.emit("u1", TaskProgress.completed(taskId, "u1", "url")));
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+		workers.shutdown();
+
+		assertEquals(TASKS * (STEPS + 1), received.size());
+		assertEquals(0, registry.emitCount(Sinks.EmitResult.FAIL_NON_SERIALIZED));
+		assertEquals(0, registry.slowConsumerEvictionCount());
+
+		// 序号严格递增（只有一个用户，因此也是连续的）
+		for (int i = 0; i < received.size(); i++) {
+			assertEquals(base + i + 1, received.get(i).seq());
+		}
+		// 每个任务的进度按步骤顺序到达，终态最后到达
+		Map<String, List<TaskProgress>> byTask = new HashMap<>();
+		for (ProgressEvent event : received) {
+			byTask.computeIfAbsent(event.progress().taskId(), id -> new ArrayList<>()).add(event.progress());
+		}
+		assertEquals(TASKS, byTask.size());
+		byTask.forEach((taskId, progresses) -> {
+			assertEquals(STEPS + 1, progresses.size(), taskId);
+			for (int step = 1; step <= STEPS; step++) {
+				assertEquals(step, progresses.get(step - 1).currentStep(), taskId);
+			}
+			assertTrue(progresses.get(STEPS).isTerminal(), taskId);
+		});
+		subscription.dispose();
+	}
+}
@@ -0,0 +1,75 @@
+package com.example.demo.sink;
+
+import com.example.demo.bo.TaskProgress;
+import com.example.demo.broker.LocalProgressBroker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProgressConflatorTest {
+
+	@Test
+	void burstIsConflatedButTerminalEventIsAlwaysDelivered() throws Exception {
+		UserSinkRegistry registry = new UserSinkRegistry(10, Duration.ofMinutes(1), 1024, 64, new ProgressFrameEncoder(new ObjectMapper()),
+				OverflowPolicy.LATEST_PER_TASK, Duration.ofSeconds(30));
+		ProgressConflator conflator = new ProgressConflator(new LocalProgressBroker(registry), 10, Duration.ofMinutes(1));
+		List<TaskProgress> received = new CopyOnWriteArrayList<>();
+		registry.stream("u1", -1).subscribe(event -> received.add(event.progress()));
+
+		for (int step = 1; step <= 10_000; step++) {
+			conflator.publish(TaskProgress.processing("t1", "u1", step, 10_000, "step"));
+		}
+		Thread.sleep(250);
+		conflator.publish(TaskProgress.processing("t1", "u1", 10_000, 10_000, "last step"));
+		conflator.publish(TaskProgress.completed("t1", "u1", "url"));
+
+		assertTrue(received.size() <= 4, "10/s 限频下 250ms 内最多推送 4 次，实际: " + received.size());
+		assertEquals(10_000, received.get(1).currentStep(), "到期后应推送最新进度");
+		assertEquals("completed", received.get(received.size() - 1).status());
+		assertEquals(0, conflator.activeTasks());
+	}
+
+	@Test
+	void pendingProgressIsFlushedByTimer() throws Exception {
+		UserSinkRegistry registry = new UserSinkRegistry(10, Duration.ofMinutes(1), 1024, 64, new ProgressFrameEncoder(new ObjectMapper()),
+				OverflowPolicy.LATEST_PER_TASK, Duration.ofSeconds(30));
+		ProgressConflator conflator = new ProgressConflator(new LocalProgressBroker(registry), 20, Duration.ofMinutes(1));
+		List<TaskProgress> received = new CopyOnWriteArrayList<>();
+		registry.stream("u1", -1).subscribe(event -> received.add(event.progress()));
+
+		conflator.publish(TaskProgress.processing("t1", "u1", 1, 3, "step"));
+		conflator.publish(TaskProgress.processing("t1", "u1", 2, 3, "step"));
+		Thread.sleep(150);
+
+		assertEquals(List.of(1, 2), received.stream().map(TaskProgress::currentStep).toList());
+	}
+
+	@Test
+	void lateProgressAfterTerminalIsDroppedAndLeavesNoSlot() throws Exception {
+		UserSinkRegistry registry = new UserSinkRegistry(10, Duration.ofMinutes(1), 1024, 64, new ProgressFrameEncoder(new ObjectMapper()),
+				OverflowPolicy.LATEST_PER_TASK, Duration.ofSeconds(30));
+		ProgressConflator conflator = new ProgressConflator(new LocalProgressBroker(registry), 20, Duration.ofMillis(100));
+		List<TaskProgress> received = new CopyOnWriteArrayList<>();
+		registry.stream("u1", -1).subscribe(event -> received.add(event.progress()));
+
+		conflator.publish(TaskProgress.processing("t1", "u1", 1, 3, "step"));
+		conflator.publish(TaskProgress.cancelled("t1", "u1"));
+		// 取消后工作线程仍在进度回调中
+		conflator.publish(TaskProgress.processing("t1", "u1", 2, 3, "step"));
+		Thread.sleep(80);
+
+		assertEquals(List.of("processing", "cancelled"), received.stream().map(TaskProgress::status).toList());
+		assertEquals(0, conflator.activeTasks());
+		assertEquals(1, conflator.tombstones());
+
+		// 墓碑到期后移除
+		Thread.sleep(100);
+		assertEquals(0, conflator.tombstones());
+	}
+}
@@ -0,0 +1,62 @@
+package com.example.demo.sink;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SharedClockTest {
+
+	private final SharedClock clock = new SharedClock(Duration.ofMillis(20), Duration.ofMillis(100));
+
+	{
+		clock.start();
+	}
+
+	@AfterEach
+	void stop() {
+		clock.stop();
+	}
+
+	@Test
+	void everySubscriberSeesTheSameTickInstance() {
+		Flux<SharedClock.Tick> first = clock.ticks().take(3);
+		Flux<SharedClock.Tick> second = clock.ticks().take(3);
+
+		List<SharedClock.Tick> ticks = Flux.zip(first, second)
+				.map(pair -> {
+					assertSame(pair.getT1(), pair.getT2());
+					assertSame(pair.getT1().timeFrame(), pair.getT2().timeFrame());
+					return pair.getT1();
+				})
+				.collectList()
+				.block(Duration.ofSeconds(2));
+
+		assertEquals(3, ticks.size());
+		assertTrue(ticks.get(0).timeFrame().toString().startsWith("data: 当前服务器时间: "));
+	}
+
+	@Test
+	void heartbeatsAreInjectedOnlyWhileIdleAndStopWithTheSource() {
+		// 前 300ms 每 30ms 一条事件（不空闲），之后静默 400ms，再发一条后结束
+		Flux<String> busyThenIdle = Flux.concat(
+				Flux.interval(Duration.ofMillis(30)).take(10).map(i -> "event"),
+				Flux.just("last").delaySubscription(Duration.ofMillis(400)));
+
+		List<String> received = clock.withHeartbeat(busyThenIdle, "ping")
+				.collectList()
+				.block(Duration.ofSeconds(3));
+
+		int firstPing = received.indexOf("ping");
+		assertEquals(10, firstPing, "繁忙期间不应插入心跳: " + received);
+		long pings = received.stream().filter("ping"::equals).count();
+		assertTrue(pings >= 2 && pings <= 5, "静默 400ms、阈值 100ms 应插入 2~4 次心跳: " + received);
+		assertEquals("last", received.get(received.size() - 1));
+	}
+}
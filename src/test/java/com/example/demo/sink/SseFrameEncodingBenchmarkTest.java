@@ -0,0 +1,105 @@
+package com.example.demo.sink;
+
+import com.example.demo.bo.TaskProgress;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBufAllocator;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.codec.ServerSentEventHttpMessageWriter;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import reactor.core.publisher.Flux;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 对比进度推送的两种编码方式：
+ * - builder：TaskController 旧路径，每个订阅者各自构建 ServerSentEvent 并由 Jackson 编码；
+ * - shared：每个事件编码一次为 SseFrame，订阅者共享同一份字节。
+ * <p>
+ * 运行：mvn test -Pbenchmark -Dtest=SseFrameEncodingBenchmarkTest
+ */
+@Tag("benchmark")
+class SseFrameEncodingBenchmarkTest {
+
+	private static final Logger log = LoggerFactory.getLogger(SseFrameEncodingBenchmarkTest.class);
+
+	private static final int EVENTS = 5_000;
+	private static final int SUBSCRIBERS = 8;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void compareEncodingPaths() {
+		// 预热
+		builderPath(500);
+		sharedPath(500);
+
+		Result builder = measure("builder", () -> builderPath(EVENTS));
+		Result shared = measure("shared", () -> sharedPath(EVENTS));
+
+		log.info("\npath     frames/s     bytes-allocated/frame\n{}\n{}", builder, shared);
+
+		assertTrue(shared.bytesPerFrame < builder.bytesPerFrame);
+	}
+
+	private void builderPath(int events) {
+		ServerSentEventHttpMessageWriter writer = new ServerSentEventHttpMessageWriter(new Jackson2JsonEncoder(objectMapper));
+		ResolvableType type = ResolvableType.forClassWithGenerics(ServerSentEvent.class, TaskProgress.class);
+		for (int i = 1; i <= events; i++) {
+			TaskProgress progress = TaskProgress.processing("export-1234", "u1", i, events, "正在导出 CSV 数据");
+			for (int s = 0; s < SUBSCRIBERS; s++) {
+				ServerSentEvent<TaskProgress> event = ServerSentEvent.<TaskProgress>builder()
+						.id(progress.taskId() + "-" + System.currentTimeMillis())
+						.event("progress")
+						.data(progress)
+						.build();
+				MockServerHttpResponse response = new MockServerHttpResponse();
+				writer.write(Flux.just(event), type, MediaType.TEXT_EVENT_STREAM, response, Collections.emptyMap()).block();
+			}
+		}
+	}
+
+	private void sharedPath(int events) {
+		ProgressFrameEncoder encoder = new ProgressFrameEncoder(objectMapper);
+		NettyDataBufferFactory factory = new NettyDataBufferFactory(ByteBufAllocator.DEFAULT);
+		for (int i = 1; i <= events; i++) {
+			TaskProgress progress = TaskProgress.processing("export-1234", "u1", i, events, "正在导出 CSV 数据");
+			SseFrame frame = encoder.frame(i, progress, encoder.encodeData(progress));
+			for (int s = 0; s < SUBSCRIBERS; s++) {
+				DataBuffer buffer = frame.toDataBuffer(factory);
+				DataBufferUtils.release(buffer);
+			}
+		}
+	}
+
+	private Result measure(String name, Runnable path) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		path.run();
+		long elapsed = System.nanoTime() - start;
+		long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+		long frames = (long) EVENTS * SUBSCRIBERS;
+		return new Result(name, frames / (elapsed / 1e9), allocated / frames);
+	}
+
+	private record Result(String name, double framesPerSecond, long bytesPerFrame) {
+		@Override
+		public String toString() {
+			return "%-8s %10.0f   %10d".formatted(name, framesPerSecond, bytesPerFrame);
+		}
+	}
+}
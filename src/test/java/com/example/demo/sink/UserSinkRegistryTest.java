@@ -0,0 +1,254 @@
+package com.example.demo.sink;
+
+import com.example.demo.bo.TaskProgress;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserSinkRegistryTest {
+
+	@Test
+	void idleSinkIsEvictedAndRecreatedOnNextUse() throws Exception {
+		UserSinkRegistry registry = new UserSinkRegistry(10, Duration.ofMillis(10), 16, 8, new ProgressFrameEncoder(new ObjectMapper()),
+				OverflowPolicy.LATEST_PER_TASK, Duration.ofSeconds(30));
+		registry.emit("u1", TaskProgress.processing("t1", "u1", 1, 2, "step"));
+		assertEquals(1, registry.stats().size());
+
+		Thread.sleep(20);
+		registry.evictIdle();
+		assertEquals(0, registry.stats().size());
+		assertEquals(1, registry.stats().idleEvictions());
+
+		List<ProgressEvent> received = new CopyOnWriteArrayList<>();
+		Disposable subscription = registry.stream("u1", -1).subscribe(received::add);
+		assertEquals(Sinks.EmitResult.OK, registry.emit("u1", TaskProgress.completed("t1", "u1", "url")));
+		assertEquals(1, received.size());
+		assertEquals(2, registry.stats().created());
+		subscription.dispose();
+	}
+
+	@Test
+	void subscribedSinkSurvivesSweepAndCapacityEviction() throws Exception {
+		UserSinkRegistry registry = new UserSinkRegistry(3, Duration.ofMillis(10), 16, 8, new ProgressFrameEncoder(new ObjectMapper()),
+				OverflowPolicy.LATEST_PER_TASK, Duration.ofSeconds(30));
+		Disposable subscription = registry.stream("busy", -1).subscribe();
+		for (String userId : List.of("a", "b", "c")) {
+			registry.emit(userId, TaskProgress.processing("t", userId, 1, 1, "step"));
+			Thread.sleep(2);
+		}
+
+		Thread.sleep(20);
+		registry.evictIdle();
+		UserSinkRegistry.RegistryStats stats = registry.stats();
+		assertEquals(1, stats.size());
+		assertEquals(2, stats.capacityEvictions());
+		assertEquals(1, stats.idleEvictions());
+		subscription.dispose();
+	}
+
+	@Test
+	void reconnectWithLastEventIdReplaysOnlyMissedEvents() {
+		UserSinkRegistry registry = new UserSinkRegistry(10, Duration.ofMinutes(1), 16, 8, new ProgressFrameEncoder(new ObjectMapper()),
+				OverflowPolicy.LATEST_PER_TASK, Duration.ofSeconds(30));
+		long base = registry.currentSequence();
+		List<ProgressEvent> first = new CopyOnWriteArrayList<>();
+		Disposable subscription = registry.stream("u1", -1).subscribe(first::add);
+		registry.emit("u1", TaskProgress.processing("t1", "u1", 1, 4, "step"));
+		registry.emit("u1", TaskProgress.processing("t1", "u1", 2, 4, "step"));
+		subscription.dispose();
+
+		registry.emit("u1", TaskProgress.processing("t1", "u1", 3, 4, "step"));
+		registry.emit("u1", TaskProgress.processing("t1", "u1", 4, 4, "step"));
+
+		List<ProgressEvent> resumed = new CopyOnWriteArrayList<>();
+		registry.stream("u1", first.get(first.size() - 1).seq()).subscribe(resumed::add);
+		registry.emit("u1", TaskProgress.completed("t1", "u1", "url"));
+
+		assertEquals(List.of(1L, 2L), seqs(base, first));
+		assertEquals(List.of(3L, 4L, 5L), seqs(base, resumed));
+	}
+
+	@Test
+	void sequenceStaysMonotonicAcrossSinkEviction() throws Exception {
+		UserSinkRegistry registry = new UserSinkRegistry(10, Duration.ofMillis(10), 16, 8, new ProgressFrameEncoder(new ObjectMapper()),
+				OverflowPolicy.LATEST_PER_TASK, Duration.ofSeconds(30));
+		long base = registry.currentSequence();
+		List<ProgressEvent> first = new CopyOnWriteArrayList<>();
+		Disposable subscription = registry.stream("u1", -1).subscribe(first::add);
+		registry.emit("u1", TaskProgress.processing("t1", "u1", 1, 3, "step"));
+		registry.emit("u1", TaskProgress.processing("t1", "u1", 2, 3, "step"));
+		subscription.dispose();
+
+		Thread.sleep(20);
+		registry.evictIdle();
+		assertEquals(0, registry.stats().size());
+
+		// 回收后重建的 Sink 接着分配更大的序号，旧的 Last-Event-ID 只补发其后的事件
+		registry.emit("u1", TaskProgress.processing("t1", "u1", 3, 3, "step"));
+		List<ProgressEvent> resumed = new CopyOnWriteArrayList<>();
+		registry.stream("u1", first.get(first.size() - 1).seq()).subscribe(resumed::add);
+		registry.emit("u1", TaskProgress.completed("t1", "u1", "url"));
+
+		assertEquals(List.of(1L, 2L), seqs(base, first));
+		assertEquals(List.of(3L, 4L), seqs(base, resumed));
+	}
+
+	@Test
+	void sequenceKeepsIncreasingAcrossRestart() throws Exception {
+		UserSinkRegistry beforeRestart = new UserSinkRegistry(10, Duration.ofMinutes(1), 16, 8, new ProgressFrameEncoder(new ObjectMapper()),
+				OverflowPolicy.LATEST_PER_TASK, Duration.ofSeconds(30));
+		List<ProgressEvent> first = new CopyOnWriteArrayList<>();
+		beforeRestart.stream("u1", -1).subscribe(first::add);
+		beforeRestart.emit("u1", TaskProgress.processing("t1", "u1", 1, 2, "step"));
+		beforeRestart.shutdown();
+
+		// 重启后序号不从 0 开始，客户端带着重启前的 Last-Event-ID 重连仍能收到新事件
+		Thread.sleep(5);
+		UserSinkRegistry afterRestart = new UserSinkRegistry(10, Duration.ofMinutes(1), 16, 8, new ProgressFrameEncoder(new ObjectMapper()),
+				OverflowPolicy.LATEST_PER_TASK, Duration.ofSeconds(30));
+		List<ProgressEvent> resumed = new CopyOnWriteArrayList<>();
+		afterRestart.stream("u1", first.get(0).seq()).subscribe(resumed::add);
+		afterRestart.emit("u1", TaskProgress.completed("t1", "u1", "url"));
+
+		assertEquals(1, resumed.size());
+		assertTrue(resumed.get(0).seq() > first.get(0).seq());
+		afterRestart.shutdown();
+	}
+
+	@Test
+	void replayIsBoundedByRingCapacity() {
+		UserSinkRegistry registry = new UserSinkRegistry(10, Duration.ofMinutes(1), 16, 8, new ProgressFrameEncoder(new ObjectMapper()),
+				OverflowPolicy.LATEST_PER_TASK, Duration.ofSeconds(30));
+		long base = registry.currentSequence();
+		for (int i = 1; i <= 20; i++) {
+			registry.emit("u1", TaskProgress.processing("t1", "u1", i, 20, "step"));
+		}
+		List<ProgressEvent> resumed = new CopyOnWriteArrayList<>();
+		registry.stream("u1", base + 2).subscribe(resumed::add);
+		assertEquals(8, resumed.size());
+		assertEquals(base + 13, resumed.get(0).seq());
+		assertEquals(base + 20, resumed.get(7).seq());
+	}
+
+	@Test
+	void slowSubscriberIsDisconnectedWithoutAffectingProducerOrOtherSubscribers() {
+		UserSinkRegistry registry = new UserSinkRegistry(10, Duration.ofMinutes(1), 4, 64, new ProgressFrameEncoder(new ObjectMapper()),
+				OverflowPolicy.LATEST_PER_TASK, Duration.ofSeconds(30));
+		List<ProgressEvent> fast = new CopyOnWriteArrayList<>();
+		Disposable fastSubscription = registry.stream("u1", -1).subscribe(fast::add);
+		SlowSubscriber slow = new SlowSubscriber();
+		registry.stream("u1", -1, OverflowPolicy.DISCONNECT).subscribe(slow);
+
+		for (int i = 1; i <= 10; i++) {
+			assertEquals(Sinks.EmitResult.OK, registry.emit("u1", TaskProgress.processing("t1", "u1", i, 10, "step")));
+		}
+		slow.request(Long.MAX_VALUE);
+
+		assertEquals(10, fast.size());
+		assertEquals(List.of(SubscriberQueue.RECONNECT_EVENT), slow.received);
+		assertTrue(slow.completed);
+		assertEquals(1, registry.slowConsumerEvictionCount());
+		assertEquals(1, registry.subscriberCount());
+		fastSubscription.dispose();
+	}
+
+	@Test
+	void latestPerTaskKeepsNewestProgressAndTerminalEvent() {
+		UserSinkRegistry registry = new UserSinkRegistry(10, Duration.ofMinutes(1), 4, 64, new ProgressFrameEncoder(new ObjectMapper()),
+				OverflowPolicy.LATEST_PER_TASK, Duration.ofSeconds(30));
+		long base = registry.currentSequence();
+		SlowSubscriber slow = new SlowSubscriber();
+		registry.stream("u1", -1).subscribe(slow);
+
+		for (int i = 1; i <= 10; i++) {
+			registry.emit("u1", TaskProgress.processing("t1", "u1", i, 10, "step"));
+		}
+		registry.emit("u1", TaskProgress.completed("t1", "u1", "url"));
+		slow.request(Long.MAX_VALUE);
+
+		assertEquals(List.of(8L, 9L, 10L, 11L), seqs(base, slow.received));
+		assertTrue(slow.received.get(3).progress().isTerminal());
+		assertEquals(7, registry.conflatedCount());
+		slow.dispose();
+	}
+
+	@Test
+	void dropOldestKeepsMostRecentEvents() {
+		UserSinkRegistry registry = new UserSinkRegistry(10, Duration.ofMinutes(1), 4, 64, new ProgressFrameEncoder(new ObjectMapper()),
+				OverflowPolicy.DROP_OLDEST, Duration.ofSeconds(30));
+		long base = registry.currentSequence();
+		SlowSubscriber slow = new SlowSubscriber();
+		registry.stream("u1", -1).subscribe(slow);
+
+		for (int i = 1; i <= 6; i++) {
+			registry.emit("u1", TaskProgress.processing("t" + i, "u1", 1, 1, "step"));
+		}
+		slow.request(Long.MAX_VALUE);
+
+		assertEquals(List.of(3L, 4L, 5L, 6L), seqs(base, slow.received));
+		assertEquals(2, registry.droppedCount());
+		slow.dispose();
+	}
+
+	@Test
+	void stalledSubscriberIsEvictedBySweepAfterMaxLag() throws Exception {
+		UserSinkRegistry registry = new UserSinkRegistry(10, Duration.ofMinutes(1), 16, 64, new ProgressFrameEncoder(new ObjectMapper()),
+				OverflowPolicy.LATEST_PER_TASK, Duration.ofMillis(10));
+		long base = registry.currentSequence();
+		SlowSubscriber slow = new SlowSubscriber();
+		registry.stream("u1", -1).subscribe(slow);
+		registry.emit("u1", TaskProgress.processing("t1", "u1", 1, 2, "step"));
+
+		Thread.sleep(20);
+		registry.evictIdle();
+		slow.request(Long.MAX_VALUE);
+
+		assertEquals(List.of(SubscriberQueue.RECONNECT_EVENT), slow.received);
+		assertTrue(slow.completed);
+
+		// 客户端按 Last-Event-ID 重连后补发被清掉的事件
+		List<ProgressEvent> resumed = new CopyOnWriteArrayList<>();
+		Disposable subscription = registry.stream("u1", base).subscribe(resumed::add);
+		assertEquals(List.of(1L), seqs(base, resumed));
+		subscription.dispose();
+	}
+
+	/**
+	 * 相对于测试开始时序号的偏移，序号起点取决于注册表创建时刻
+	 */
+	private static List<Long> seqs(long base, List<ProgressEvent> events) {
+		return events.stream().map(event -> event.seq() - base).toList();
+	}
+
+	/**
+	 * 订阅后不请求数据，模拟读取停滞的连接
+	 */
+	private static final class SlowSubscriber extends BaseSubscriber<ProgressEvent> {
+		final List<ProgressEvent> received = new CopyOnWriteArrayList<>();
+		volatile boolean completed;
+
+		@Override
+		protected void hookOnSubscribe(Subscription subscription) {
+		}
+
+		@Override
+		protected void hookOnNext(ProgressEvent value) {
+			received.add(value);
+		}
+
+		@Override
+		protected void hookOnComplete() {
+			completed = true;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.example.demo.thread;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 对比 pool 与 virtual 两种执行模式的吞吐量与提交延迟 p99
+ * <p>
+ * 运行：mvn test -Pbenchmark -Dtest=ExportTaskDispatcherBenchmarkTest
+ */
+@Tag("benchmark")
+class ExportTaskDispatcherBenchmarkTest {
+
+	private static final Logger log = LoggerFactory.getLogger(ExportTaskDispatcherBenchmarkTest.class);
+
+	private static final int TASKS = 2_000;
+	private static final long TASK_MILLIS = 5;
+
+	@Test
+	void compareModes() throws Exception {
+		Result pool = run(ExportTaskDispatcher.Mode.POOL);
+		Result virtual = run(ExportTaskDispatcher.Mode.VIRTUAL);
+
+		log.info("\nmode     accepted  rejected  throughput(task/s)  submit-p99(us)\n{}\n{}", pool, virtual);
+
+		assertEquals(TASKS, virtual.accepted);
+		assertTrue(pool.rejected > 0, "pool 模式在队列满后应拒绝提交");
+	}
+
+	private Result run(ExportTaskDispatcher.Mode mode) throws Exception {
+		ThreadPoolTaskExecutor pool = (ThreadPoolTaskExecutor) new TaskExecutorConfig().exportTaskExecutor();
+		ExportTaskDispatcher dispatcher = new ExportTaskDispatcher(mode, pool,
+				new TaskExecutorConfig().exportTaskThreadFactory(), 8, TASKS);
+
+		CountDownLatch done = new CountDownLatch(TASKS);
+		AtomicInteger completed = new AtomicInteger();
+		long[] submitNanos = new long[TASKS];
+		int rejected = 0;
+
+		long start = System.nanoTime();
+		for (int i = 0; i < TASKS; i++) {
+			long t0 = System.nanoTime();
+			ExportTaskDispatcher.Admission admission = dispatcher.dispatch(() -> {
+				sleepQuietly();
+				completed.incrementAndGet();
+				done.countDown();
+			});
+			submitNanos[i] = System.nanoTime() - t0;
+			if (admission == ExportTaskDispatcher.Admission.REJECTED) {
+				rejected++;
+				done.countDown();
+			}
+		}
+		done.await(60, TimeUnit.SECONDS);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		pool.shutdown();
+
+		Arrays.sort(submitNanos);
+		return new Result(mode, TASKS - rejected, rejected, completed.get() / seconds,
+				submitNanos[(int) (TASKS * 0.99)] / 1_000);
+	}
+
+	private static void sleepQuietly() {
+		try {
+			Thread.sleep(TASK_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private record Result(ExportTaskDispatcher.Mode mode, int accepted, int rejected, double throughput, long p99Micros) {
+		@Override
+		public String toString() {
+			return "%-8s %8d  %8d  %18.1f  %14d".formatted(mode, accepted, rejected, throughput, p99Micros);
+		}
+	}
+}
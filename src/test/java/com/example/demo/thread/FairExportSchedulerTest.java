@@ -0,0 +1,250 @@
+package com.example.demo.thread;
+
+import com.example.demo.bo.ExportPriority;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FairExportSchedulerTest {
+
+	private static final Logger log = LoggerFactory.getLogger(FairExportSchedulerTest.class);
+
+	private static ExportTaskDispatcher perThreadDispatcher() {
+		return new ExportTaskDispatcher(ExportTaskDispatcher.Mode.VIRTUAL, null, Thread::new, 64, 1000);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 偏斜负载：一个重度用户先提交 20 个任务，随后 3 个轻度用户各提交 2 个。
+	 * 单槽位下派发顺序是确定的：同一优先级内按用户轮询，轻度用户的任务穿插在重度用户之间，而不是排在其全部任务之后
+	 */
+	@Test
+	void lightUsersAreInterleavedWithHeavyUserUnderSkewedLoad() throws InterruptedException {
+		FairExportScheduler scheduler = new FairExportScheduler(perThreadDispatcher(), 1, 1000, 1000);
+		List<String> order = new CopyOnWriteArrayList<>();
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(26);
+
+		// 先占住唯一的槽位，保证后续任务全部进入队列
+		scheduler.submit("blocker", "blocker", ExportPriority.NORMAL, () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		List<String> users = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			users.add("heavy");
+		}
+		for (int i = 0; i < 3; i++) {
+			users.add("light-" + i);
+			users.add("light-" + i);
+		}
+		for (int i = 0; i < users.size(); i++) {
+			String user = users.get(i);
+			assertEquals(ExportTaskDispatcher.Admission.QUEUED,
+					scheduler.submit("task-" + i, user, ExportPriority.NORMAL, () -> {
+						order.add(user);
+						done.countDown();
+					}));
+		}
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+
+		List<String> expected = new ArrayList<>(List.of(
+				"heavy", "light-0", "light-1", "light-2",
+				"heavy", "light-0", "light-1", "light-2"));
+		while (expected.size() < users.size()) {
+			expected.add("heavy");
+		}
+		assertEquals(expected, order);
+	}
+
+	/**
+	 * 偏斜负载模拟：一个重度用户先提交 60 个任务，随后 6 个轻度用户各提交 2 个，
+	 * 比较 FIFO 与公平调度下各用户最后一个任务的完成延迟（尾延迟）
+	 * <p>
+	 * 基于实际耗时，默认不执行。运行：mvn test -Pbenchmark -Dtest=FairExportSchedulerTest
+	 */
+	@Test
+	@Tag("benchmark")
+	void lightUsersTailLatencyStaysLowUnderSkewedLoad() throws InterruptedException {
+		int slots = 4;
+		long taskMillis = 10;
+		List<String> users = new ArrayList<>();
+		for (int i = 0; i < 60; i++) {
+			users.add("heavy");
+		}
+		for (int i = 0; i < 6; i++) {
+			users.add("light-" + i);
+			users.add("light-" + i);
+		}
+
+		// FIFO 基线：单一线程池按提交顺序执行
+		Map<String, Long> fifoTail = new ConcurrentHashMap<>();
+		ExecutorService fifo = Executors.newFixedThreadPool(slots);
+		CountDownLatch fifoDone = new CountDownLatch(users.size());
+		long fifoStart = System.nanoTime();
+		for (String user : users) {
+			fifo.execute(() -> {
+				sleep(taskMillis);
+				fifoTail.merge(user, (System.nanoTime() - fifoStart) / 1_000_000, Math::max);
+				fifoDone.countDown();
+			});
+		}
+		assertTrue(fifoDone.await(10, TimeUnit.SECONDS));
+		fifo.shutdown();
+
+		// 公平调度
+		Map<String, Long> fairTail = new ConcurrentHashMap<>();
+		FairExportScheduler scheduler = new FairExportScheduler(perThreadDispatcher(), slots, 1000, 1000);
+		CountDownLatch fairDone = new CountDownLatch(users.size());
+		long fairStart = System.nanoTime();
+		for (int i = 0; i < users.size(); i++) {
+			String user = users.get(i);
+			scheduler.submit("task-" + i, user, ExportPriority.NORMAL, () -> {
+				sleep(taskMillis);
+				fairTail.merge(user, (System.nanoTime() - fairStart) / 1_000_000, Math::max);
+				fairDone.countDown();
+			});
+		}
+		assertTrue(fairDone.await(10, TimeUnit.SECONDS));
+
+		long fifoLight = users.stream().filter(u -> u.startsWith("light")).mapToLong(fifoTail::get).max().orElseThrow();
+		long fairLight = users.stream().filter(u -> u.startsWith("light")).mapToLong(fairTail::get).max().orElseThrow();
+		log.info("轻度用户尾延迟: FIFO {} ms, 公平调度 {} ms；重度用户尾延迟: FIFO {} ms, 公平调度 {} ms",
+				fifoLight, fairLight, fifoTail.get("heavy"), fairTail.get("heavy"));
+
+		assertTrue(fairLight * 2 < fifoLight, "公平调度应显著降低轻度用户的尾延迟");
+		assertTrue(fairLight * 2 < fairTail.get("heavy"), "轻度用户不应排在重度用户全部任务之后");
+	}
+
+	@Test
+	void cancellingARunningTaskInterruptsItAndFreesTheSlotImmediately() throws InterruptedException {
+		FairExportScheduler scheduler = new FairExportScheduler(perThreadDispatcher(), 1, 10, 10);
+		CountDownLatch interrupted = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch secondRan = new CountDownLatch(1);
+
+		assertEquals(ExportTaskDispatcher.Admission.ACCEPTED, scheduler.submit("t1", "u1", ExportPriority.NORMAL, () -> {
+			started.countDown();
+			try {
+				Thread.sleep(10_000);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+		}));
+		assertEquals(ExportTaskDispatcher.Admission.QUEUED,
+				scheduler.submit("t2", "u2", ExportPriority.NORMAL, secondRan::countDown));
+		assertTrue(started.await(1, TimeUnit.SECONDS));
+
+		assertEquals(FairExportScheduler.CancelOutcome.NOT_FOUND, scheduler.cancel("t1", "someone-else"));
+		assertEquals(FairExportScheduler.CancelOutcome.INTERRUPTED, scheduler.cancel("t1", "u1"));
+
+		assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+		assertTrue(secondRan.await(1, TimeUnit.SECONDS));
+		assertEquals(FairExportScheduler.CancelOutcome.NOT_FOUND, scheduler.cancel("t1", "u1"));
+	}
+
+	@Test
+	void terminalTransitionIsWonByExactlyOneOfFinishAndCancel() throws InterruptedException {
+		FairExportScheduler scheduler = new FairExportScheduler(perThreadDispatcher(), 2, 10, 10);
+
+		// 工作线程先取得终态：之后的取消不生效
+		AtomicBoolean finished = new AtomicBoolean();
+		CountDownLatch finishing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		scheduler.submit("t1", "u1", ExportPriority.NORMAL, () -> {
+			finished.set(scheduler.tryFinish("t1"));
+			finishing.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertTrue(finishing.await(1, TimeUnit.SECONDS));
+		assertTrue(finished.get());
+		assertEquals(FairExportScheduler.CancelOutcome.NOT_FOUND, scheduler.cancel("t1", "u1"));
+		release.countDown();
+
+		// 取消先取得终态：工作线程不得再推送
+		AtomicBoolean lost = new AtomicBoolean();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch exited = new CountDownLatch(1);
+		scheduler.submit("t2", "u1", ExportPriority.NORMAL, () -> {
+			started.countDown();
+			try {
+				Thread.sleep(10_000);
+			} catch (InterruptedException e) {
+				// 按取消请求停止
+			}
+			lost.set(!scheduler.tryFinish("t2"));
+			exited.countDown();
+		});
+		assertTrue(started.await(1, TimeUnit.SECONDS));
+		assertEquals(FairExportScheduler.CancelOutcome.INTERRUPTED, scheduler.cancel("t2", "u1"));
+		assertTrue(exited.await(1, TimeUnit.SECONDS));
+		assertTrue(lost.get());
+	}
+
+	@Test
+	void queuedTasksCanBeCancelledAndPrioritiesShareSlotsByWeight() throws InterruptedException {
+		FairExportScheduler scheduler = new FairExportScheduler(perThreadDispatcher(), 1, 100, 100);
+		CountDownLatch release = new CountDownLatch(1);
+		scheduler.submit("blocker", "u0", ExportPriority.NORMAL, () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		List<ExportPriority> order = new CopyOnWriteArrayList<>();
+		CountDownLatch done = new CountDownLatch(20);
+		for (int i = 0; i < 10; i++) {
+			scheduler.submit("low-" + i, "low-user", ExportPriority.LOW, () -> {
+				order.add(ExportPriority.LOW);
+				done.countDown();
+			});
+			scheduler.submit("high-" + i, "high-user", ExportPriority.HIGH, () -> {
+				order.add(ExportPriority.HIGH);
+				done.countDown();
+			});
+		}
+		scheduler.submit("doomed", "low-user", ExportPriority.LOW, () -> order.add(null));
+		assertEquals(FairExportScheduler.CancelOutcome.DEQUEUED, scheduler.cancel("doomed", "low-user"));
+		assertEquals(20, scheduler.stats().queued());
+
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+
+		long highInFirstTen = order.subList(0, 10).stream().filter(p -> p == ExportPriority.HIGH).count();
+		assertTrue(highInFirstTen >= 7, "HIGH 权重为 LOW 的 4 倍，前 10 个中应占多数: " + order);
+		assertTrue(order.subList(0, 10).contains(ExportPriority.LOW), "LOW 不应被饿死: " + order);
+		assertEquals(20, order.size());
+	}
+}